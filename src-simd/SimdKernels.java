@@ -0,0 +1,72 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Kernels on the incubating Vector API (JDK 16+). This file is compiled apart
+// from src by the -post-compile target in build.xml, and only loaded when the
+// JVM runs with --add-modules jdk.incubator.vector; see Kernels.
+//
+// The loops work SPECIES.length() doubles at a time, with scalar code for the
+// elements left over at the end. axpy and zScore round each element exactly
+// as the scalar loops do (a multiply then an add, never a fused multiply-add).
+// dot keeps one partial sum per lane and adds the lanes at the end.
+public class SimdKernels extends Kernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public String name() {
+        return "simd (" + SPECIES.length() + " x double)";
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        int i = 0;
+        double sum = 0.0;
+        int bound = SPECIES.loopBound(length);
+        if (bound > 0) {
+            DoubleVector sums = DoubleVector.zero(SPECIES);
+            for (; i < bound; i += SPECIES.length()) {
+                DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+                DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+                sums = sums.add(va.mul(vb));
+            }
+            sum = sums.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+            vy.add(vx.mul(alpha)).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void zScore(double[] data, int offset, double[] means, double[] stdDevs, int length) {
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector value = DoubleVector.fromArray(SPECIES, data, offset + i);
+            DoubleVector mean = DoubleVector.fromArray(SPECIES, means, i);
+            DoubleVector stdDev = DoubleVector.fromArray(SPECIES, stdDevs, i);
+            VectorMask<Double> constant = stdDev.compare(VectorOperators.EQ, 0.0);
+            value.sub(mean).div(stdDev).blend(mean, constant).intoArray(data, offset + i);
+        }
+        for (; i < length; i++) {
+            data[offset + i] = stdDevs[i] == 0 ? means[i] : (data[offset + i] - means[i]) / stdDevs[i];
+        }
+    }
+}
@@ -1,9 +1,12 @@
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.Reader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class AustraliaWeather {
 
@@ -11,16 +14,48 @@ public class AustraliaWeather {
         return Double.NaN;
     }
 
-    private static Weather.Date parseDate(String value) {
+    static boolean isValidTemperature(double temperature) {
+        return !(temperature < -100.0 || temperature > 100.0);
+    }
+
+    static boolean isValidHumidity(double humidity) {
+        return !(humidity < 0.0 || humidity > 100.0);
+    }
+
+    static boolean isValidPressure(double pressure) {
+        return !(pressure <= 0.0);
+    }
+
+    static boolean isValidWindSpeed(double speed) {
+        return !(speed < -40.0);
+    }
+
+    static boolean isValidHoursOfSunshine(double sunshine) {
+        return !(sunshine < 0.0 || sunshine > 24.0);
+    }
+
+    static boolean isValidCloudCover(int cloudCover) {
+        return !(cloudCover < 0 || cloudCover > 9);
+    }
+
+    static boolean isValidRainfall(double rainfall) {
+        return !(rainfall < 0.0);
+    }
+
+    static boolean isValidEvaporationRate(double evaporationRate) {
+        return !(evaporationRate < 0.0);
+    }
+
+    static Weather.Date parseDate(String value) {
         return Weather.Date.valueOf(value);
     }
 
-    private static double parseTemperature(String value) {
+    static double parseTemperature(String value) {
         if (value.equals("NA")) {
             return notAvailable();
         } else {
             double temperature = Double.parseDouble(value);
-            if (temperature < -100.0 || temperature > 100.0) {
+            if (!isValidTemperature(temperature)) {
                 throw new IllegalArgumentException("Bad temperature: " + value);
             } else {
                 return temperature;
@@ -28,12 +63,12 @@ public class AustraliaWeather {
         }
     }
 
-    private static double parseHumidity(String value) {
+    static double parseHumidity(String value) {
         if (value.equals("NA")) {
             return notAvailable();
         } else {
             double humidity = Double.parseDouble(value);
-            if (humidity < 0.0 || humidity > 100.0) {
+            if (!isValidHumidity(humidity)) {
                 throw new IllegalArgumentException("Bad humidity: " + value);
             } else {
                 return humidity;
@@ -41,12 +76,12 @@ public class AustraliaWeather {
         }
     }
 
-    private static double parsePressure(String value) {
+    static double parsePressure(String value) {
         if (value.equals("NA")) {
             return notAvailable();
         } else {
             double pressure = Double.parseDouble(value);
-            if (pressure <= 0.0) {
+            if (!isValidPressure(pressure)) {
                 throw new IllegalArgumentException("Bad pressure: " + value);
             } else {
                 return pressure;
@@ -54,12 +89,12 @@ public class AustraliaWeather {
         }
     }
 
-    private static double parseWindSpeed(String value) {
+    static double parseWindSpeed(String value) {
         if (value.equals("NA")) {
             return notAvailable();
         } else {
             double speed = Double.parseDouble(value);
-            if (speed < -40.0) {
+            if (!isValidWindSpeed(speed)) {
                 throw new IllegalArgumentException("Bad speed: " + value);
             } else {
                 return speed;
@@ -67,19 +102,19 @@ public class AustraliaWeather {
         }
     }
 
-    private static Weather.Direction parseWindDirection(String value) {
+    static Weather.Direction parseWindDirection(String value) {
         if (value.equals("NA")) {
             value = "MISSING";
         }
         return Weather.Direction.valueOf(value);
     }
 
-    private static double parseHoursOfSunshine(String value) {
+    static double parseHoursOfSunshine(String value) {
         if (value.equals("NA")) {
             return notAvailable();
         } else {
             double sunshine = Double.parseDouble(value);
-            if (sunshine < 0.0 || sunshine > 24.0) {
+            if (!isValidHoursOfSunshine(sunshine)) {
                 throw new IllegalArgumentException("Bad sunshine: " + value);
             } else {
                 return sunshine;
@@ -87,12 +122,12 @@ public class AustraliaWeather {
         }
     }
 
-    private static int parseCloudCover(String value) {
+    static int parseCloudCover(String value) {
         if (value.equals("NA")) {
             return -1;
         } else {
             int cloudCover = Integer.parseInt(value);
-            if (cloudCover < 0 || cloudCover > 9) {
+            if (!isValidCloudCover(cloudCover)) {
                 throw new IllegalArgumentException("Bad cloud cover: " + value);
             } else {
                 return cloudCover;
@@ -100,12 +135,12 @@ public class AustraliaWeather {
         }
     }
 
-    private static double parseRainfall(String value) {
+    static double parseRainfall(String value) {
         if (value.equals("NA")) {
             return notAvailable();
         } else {
             double rainfall = Double.parseDouble(value);
-            if (rainfall < 0.0) {
+            if (!isValidRainfall(rainfall)) {
                 throw new IllegalArgumentException("Bad rainfall: " + value);
             } else {
                 return rainfall;
@@ -113,12 +148,12 @@ public class AustraliaWeather {
         }
     }
 
-    private static double parseEvaporationRate(String value) {
+    static double parseEvaporationRate(String value) {
         if (value.equals("NA")) {
             return notAvailable();
         } else {
             double evaporationRate = Double.parseDouble(value);
-            if (evaporationRate < 0.0) {
+            if (!isValidEvaporationRate(evaporationRate)) {
                 throw new IllegalArgumentException("Bad evaporation rate: " + value);
             } else {
                 return evaporationRate;
@@ -126,7 +161,7 @@ public class AustraliaWeather {
         }
     }
 
-    private static Boolean parseBoolean(String value) {
+    static Boolean parseBoolean(String value) {
         switch (value.toLowerCase()) {
             case "yes":
             case "true":
@@ -144,7 +179,7 @@ public class AustraliaWeather {
         }
     }
 
-    private static Weather.DataPoint processLine(String line) {
+    static Weather.DataPoint processLine(String line) {
         String[] fields = line.split(",");
 
         if (fields.length < 24) {
@@ -197,16 +232,100 @@ public class AustraliaWeather {
         return count;
     }
 
+    public static int cullMissingData(WeatherFrame dataset, String field) {
+        // Remove data points that have missing values for a given field.
+        return dataset.cullMissing(WeatherFrame.column(field));
+    }
+
     public static void readDataFile(Reader reader, ArrayList<Weather.DataPoint> dataset, int limit) throws IOException {
-        BufferedReader input = new BufferedReader(reader);
-        String line = input.readLine();
-        if (limit <= 0) {
-            limit = Integer.MAX_VALUE;
+        new CharDataReader(reader).read(dataset, limit);
+    }
+
+    public static void readDataFile(Reader reader, WeatherFrame dataset, int limit) throws IOException {
+        new CharDataReader(reader).read(dataset::add, limit);
+    }
+
+    // Same result as readDataFile(Reader, ArrayList, int), but parses straight
+    // from a memory-mapped view of the file without a String per line or field.
+    public static void readMappedDataFile(String filename, ArrayList<Weather.DataPoint> dataset, int limit) throws IOException {
+        MappedDataReader.readDataFile(filename, dataset, limit);
+    }
+
+    // Parses the memory-mapped file on the given number of threads, keeping
+    // the rows in file order.
+    public static void readMappedDataFile(String filename, ArrayList<Weather.DataPoint> dataset, int limit, int threads) throws IOException {
+        MappedDataReader.readDataFile(filename, dataset, limit, threads);
+    }
+
+    public static void readMappedDataFile(String filename, WeatherFrame dataset, int limit) throws IOException {
+        MappedDataReader.readDataFile(filename, dataset, limit);
+    }
+
+    // Loads the file's binary snapshot if it is up to date. Otherwise parses the
+    // file and writes a fresh snapshot for the next run.
+    public static WeatherFrame loadDataFile(String filename, int threads) throws IOException {
+        File source = new File(filename);
+        File snapshot = WeatherSnapshot.snapshotFile(filename);
+        WeatherFrame frame = WeatherSnapshot.load(snapshot, source);
+        if (frame == null) {
+            frame = new WeatherFrame();
+            MappedDataReader.readDataFile(filename, frame, 0, threads);
+            try {
+                WeatherSnapshot.write(frame, snapshot, source);
+            } catch (IOException e) {
+                System.err.println("Could not write snapshot " + snapshot + ": " + e.getMessage());
+            }
         }
-        int i = 0;
-        while (i++ < limit && line != null) {
-            dataset.add(processLine(line));
-            line = input.readLine();
+        return frame;
+    }
+
+    // Data points of a file read on demand, so a file larger than the heap can
+    // be trained on. Each iterator reads the file again from the start and
+    // closes it once the end (or the limit) is reached. Read errors surface as
+    // UncheckedIOException.
+    public static Iterable<Weather.DataPoint> streamDataFile(String filename, int limit) {
+        return () -> new Iterator<Weather.DataPoint>() {
+            private final FileReader file = open(filename);
+            private final CharDataReader reader = new CharDataReader(this.file);
+            private int count = 0;
+            private Weather.DataPoint next = this.advance();
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Weather.DataPoint next() {
+                if (this.next == null) {
+                    throw new NoSuchElementException();
+                }
+                Weather.DataPoint current = this.next;
+                this.next = this.advance();
+                return current;
+            }
+
+            private Weather.DataPoint advance() {
+                try {
+                    Weather.DataPoint dataPoint = limit <= 0 || this.count < limit ? this.reader.next() : null;
+                    if (dataPoint == null) {
+                        this.file.close();
+                    } else {
+                        this.count++;
+                    }
+                    return dataPoint;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private static FileReader open(String filename) {
+        try {
+            return new FileReader(filename);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -227,8 +346,13 @@ public class AustraliaWeather {
         return result;
     }
 
+    // Reads the files named in args and prints statistics for each field given
+    // as -field, over every value present, with the number of values missing.
+    // The counts of records removed for missing any of those fields are
+    // printed first. -json prints the statistics as a JSON array instead.
     public static void main(String[] args) {
-        ArrayList<Weather.DataPoint> dataset = new ArrayList<>();
+        WeatherFrame dataset = new WeatherFrame();
+        boolean json = false;
         // Read the data files.
         for (String arg : args) {
             if (arg.length() > 0 && arg.charAt(0) != '-') {
@@ -237,44 +361,37 @@ public class AustraliaWeather {
                 } catch (IOException e) {
                     System.err.println("Could not read file " + arg + ": " + e.getMessage());
                 }
+            } else if (arg.equals("-json")) {
+                json = true;
             }
         }
 
-        // Cull records with missing data.
+        // Gather statistics, for every field in one pass, before culling
+        // removes the missing values they count.
+        ArrayList<String> fields = new ArrayList<>();
         for (String arg : args) {
-            if (arg.length() > 0 && arg.charAt(0) == '-') {
-                String field = arg.substring(1);
-                int missing = cullMissingData(dataset, field);
-                System.out.println(field + ": " + missing + " records removed");
+            if (arg.length() > 0 && arg.charAt(0) == '-' && !arg.equals("-json")) {
+                fields.add(arg.substring(1));
             }
         }
-        // Gather and print statistics.
-        for (String arg : args) {
-            double min = Double.MAX_VALUE;
-            double max = Double.MIN_VALUE;
-            double sum = 0.0;
-            int count = 0;
-
-            if (arg.length() > 0 && arg.charAt(0) == '-') {
-                String field = arg.substring(1);
-                for (Weather.DataPoint item : dataset) {
-                    double value = item.getNumber(field);
-                    if (value < min) {
-                        min = value;
-                    }
-                    if (value > max) {
-                        max = value;
-                    }
-                    sum += value;
-                    count++;
-                }
+        int[] columns = new int[fields.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = WeatherFrame.column(fields.get(i));
+        }
+        ColumnStatistics[] statistics = ColumnStatistics.of(dataset, columns, Runtime.getRuntime().availableProcessors());
 
-                System.out.println("Field: " + field);
-                System.out.println("  Minimum: " + min);
-                System.out.println("  Maximum: " + max);
-                System.out.println("  Average: " + (sum / count));
-                System.out.println("  Values:  " + count);
-                System.out.println();
+        // Cull records with missing data.
+        for (String field : fields) {
+            int missing = cullMissingData(dataset, field);
+            if (!json) {
+                System.out.println(field + ": " + missing + " records removed");
+            }
+        }
+        if (json) {
+            System.out.println(ColumnStatistics.toJson(statistics));
+        } else {
+            for (ColumnStatistics column : statistics) {
+                System.out.println(column);
             }
         }
     }
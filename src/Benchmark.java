@@ -0,0 +1,579 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+// Benchmark suite over deterministic synthetic data, so it runs offline:
+//   java Benchmark [all|parse|matrix|gram|crossover|dot|kernels|epoch|scaling|closed|predict|tree|inference|forest|boost|memory] [sizes...]
+// or "ant bench -Dbench.args=..." from the project directory.
+//
+// Each benchmark is warmed up, then timed for up to ITERATIONS runs or
+// TIME_BUDGET, whichever comes first. The best and mean time per unit of work
+// are printed, with bytes allocated per unit when the JVM can count them.
+public class Benchmark {
+
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+    private static final long TIME_BUDGET = 2000000000L; // ns
+
+    private static final int[] PARSE_ROWS = {100000};
+    private static final int[] MATRIX_SIZES = {16, 64, 256};
+    private static final int[] GRAM_ROWS = {100000};
+    private static final int[] CROSSOVER_SIZES = {16, 32, 64, 128, 256, 512};
+    private static final int[] VECTOR_LENGTHS = {25, 1024, 1 << 20};
+    private static final int[] KERNEL_WIDTHS = {25, 1024, 1 << 16}; // 25 is the width of a data matrix row
+    private static final int KERNEL_ELEMENTS = 1 << 22;
+    private static final int[] EPOCH_ROWS = {1000, 100000, 1000000};
+    private static final int[] SCALING_ROWS = {1000000};
+    private static final int[] CLOSED_ROWS = {100000, 1000000};
+    private static final int[] PREDICT_ROWS = {10000};
+    private static final int[] TREE_ROWS = {200000};
+    private static final int[] INFERENCE_ROWS = {200000};
+    private static final int[] FOREST_TREES = {500};
+    private static final int FOREST_ROWS = 20000;
+    private static final int[] BOOST_ROWS = {145000}; // About the size of the full dataset
+    private static final int[] MEMORY_ROWS = {1000000};
+
+    // Results are accumulated here so the JIT cannot drop the measured work.
+    private static volatile long sink;
+
+    public static void main(String[] args) throws IOException {
+        String name = args.length > 0 ? args[0] : "all";
+        int[] sizes = null;
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = Integer.parseInt(args[i + 1]);
+            }
+        }
+        switch (name) {
+            case "all":
+                parse(PARSE_ROWS);
+                matrix(MATRIX_SIZES);
+                gram(GRAM_ROWS);
+                crossover(CROSSOVER_SIZES);
+                dot(VECTOR_LENGTHS);
+                kernels(KERNEL_WIDTHS);
+                epoch(EPOCH_ROWS);
+                scaling(SCALING_ROWS);
+                closed(CLOSED_ROWS);
+                predict(PREDICT_ROWS);
+                tree(TREE_ROWS);
+                inference(INFERENCE_ROWS);
+                forest(FOREST_TREES);
+                boost(BOOST_ROWS);
+                break;
+
+            case "parse":
+                parse(sizes != null ? sizes : PARSE_ROWS);
+                break;
+
+            case "matrix":
+                matrix(sizes != null ? sizes : MATRIX_SIZES);
+                break;
+
+            case "gram":
+                gram(sizes != null ? sizes : GRAM_ROWS);
+                break;
+
+            case "crossover":
+                crossover(sizes != null ? sizes : CROSSOVER_SIZES);
+                break;
+
+            case "dot":
+                dot(sizes != null ? sizes : VECTOR_LENGTHS);
+                break;
+
+            case "kernels":
+                kernels(sizes != null ? sizes : KERNEL_WIDTHS);
+                break;
+
+            case "epoch":
+                epoch(sizes != null ? sizes : EPOCH_ROWS);
+                break;
+
+            case "scaling":
+                scaling(sizes != null ? sizes : SCALING_ROWS);
+                break;
+
+            case "closed":
+                closed(sizes != null ? sizes : CLOSED_ROWS);
+                break;
+
+            case "predict":
+                predict(sizes != null ? sizes : PREDICT_ROWS);
+                break;
+
+            case "tree":
+                tree(sizes != null ? sizes : TREE_ROWS);
+                break;
+
+            case "inference":
+                inference(sizes != null ? sizes : INFERENCE_ROWS);
+                break;
+
+            case "forest":
+                forest(sizes != null ? sizes : FOREST_TREES);
+                break;
+
+            case "boost":
+                boost(sizes != null ? sizes : BOOST_ROWS);
+                break;
+
+            case "memory":
+                memory((sizes != null ? sizes : MEMORY_ROWS)[0]);
+                break;
+
+            default:
+                System.err.println("Unknown benchmark: " + name);
+        }
+    }
+
+    // Heap retained by the same rows held as ArrayList<Weather.DataPoint> and as a WeatherFrame.
+    private static void memory(int rows) {
+        long before = usedMemory();
+        ArrayList<Weather.DataPoint> list = new ArrayList<>();
+        SyntheticWeather generator = new SyntheticWeather(42);
+        for (int i = 0; i < rows; i++) {
+            list.add(generator.next());
+        }
+        long listBytes = usedMemory() - before;
+        int listSize = list.size();
+        list = null;
+
+        before = usedMemory();
+        WeatherFrame frame = frame(rows);
+        long frameBytes = usedMemory() - before;
+
+        System.out.println("Rows:          " + rows);
+        System.out.println("ArrayList:     " + listBytes / 1024 + " KiB (" + listBytes / Math.max(1, listSize) + " bytes/row)");
+        System.out.println("WeatherFrame:  " + frameBytes / 1024 + " KiB (" + frameBytes / Math.max(1, frame.size()) + " bytes/row)");
+        System.out.println("Ratio:         " + String.format("%.2f", (double) listBytes / Math.max(1, frameBytes)));
+    }
+
+    // Per-row cost of readLine() + processLine() against the in-place char parser,
+    // at a typical and at a heavy density of "NA" fields.
+    private static void parse(int[] sizes) throws IOException {
+        for (int rows : sizes) {
+            for (double missingRate : new double[]{0.1, 0.6}) {
+                SyntheticWeather generator = new SyntheticWeather(42, missingRate);
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < rows; i++) {
+                    text.append(generator.nextLine()).append('\n');
+                }
+                final String csv = text.toString();
+                System.out.println("Parse, NA density " + missingRate + ", " + rows + " rows (per row):");
+                report("  readLine + split", rows, () -> {
+                    BufferedReader input = new BufferedReader(new StringReader(csv));
+                    ArrayList<Weather.DataPoint> dataset = new ArrayList<>(rows);
+                    for (String line = input.readLine(); line != null; line = input.readLine()) {
+                        dataset.add(AustraliaWeather.processLine(line));
+                    }
+                    return dataset.size();
+                });
+                report("  FieldParser", rows, () -> {
+                    ArrayList<Weather.DataPoint> dataset = new ArrayList<>(rows);
+                    AustraliaWeather.readDataFile(new StringReader(csv), dataset, 0);
+                    return dataset.size();
+                });
+            }
+        }
+    }
+
+    private static void matrix(int[] sizes) throws IOException {
+        Random random = new Random(42);
+        for (int n : sizes) {
+            Matrix a = randomMatrix(random, n, n);
+            Matrix b = randomMatrix(random, n, n);
+            System.out.println("Matrix " + n + " x " + n + " (per op):");
+            report("  times", 1, () -> (int) a.times(b).getAt(0, 0));
+            report("  transpose", 1, () -> (int) a.transpose().getAt(0, 0));
+            report("  invert", 1, () -> (int) a.invert().getAt(0, 0));
+            Vector v = randomVector(random, n);
+            report("  solve LU", 1, () -> (int) new LUDecomposition(a).solve(v).get(0));
+            report("  solve QR", 1, () -> (int) new QRDecomposition(a).solve(v).get(0));
+        }
+    }
+
+    // XT X for a tall N x 25 matrix, the shape of the training data.
+    private static void gram(int[] sizes) throws IOException {
+        Random random = new Random(42);
+        for (int rows : sizes) {
+            Matrix x = randomMatrix(random, rows, 25);
+            Matrix transposed = x.transpose();
+            System.out.println("XT X, " + rows + " x 25 (per op):");
+            report("  transpose().times()", 1, () -> (int) x.transpose().times(x).getAt(0, 0));
+            report("  times() only", 1, () -> (int) transposed.times(x).getAt(0, 0));
+            report("  transposeTimes()", 1, () -> (int) x.transposeTimes(x).getAt(0, 0));
+            report("  gram()", 1, () -> (int) x.gram().getAt(0, 0));
+        }
+    }
+
+    // Each Matrix operation with the parallel threshold forced off and on, to
+    // show the size from which the common pool pays off on this machine.
+    private static void crossover(int[] sizes) throws IOException {
+        Random random = new Random(42);
+        long threshold = Matrix.getParallelThreshold();
+        System.out.println("Matrix parallel crossover, common pool parallelism "
+                + java.util.concurrent.ForkJoinPool.getCommonPoolParallelism() + ", threshold " + threshold + ":");
+        try {
+            for (int n : sizes) {
+                Matrix a = randomMatrix(random, n, n);
+                Matrix b = randomMatrix(random, n, n);
+                String[] names = {"scale", "transpose", "times", "invert"};
+                Operation[] operations = {
+                    () -> (int) a.scale(2.0).getAt(0, 0),
+                    () -> (int) a.transpose().getAt(0, 0),
+                    () -> (int) a.times(b).getAt(0, 0),
+                    () -> (int) a.invert().getAt(0, 0)
+                };
+                for (int i = 0; i < names.length; i++) {
+                    Matrix.setParallelThreshold(Long.MAX_VALUE);
+                    double sequential = report("  " + n + " " + names[i] + " sequential", 1, operations[i]);
+                    Matrix.setParallelThreshold(0);
+                    double parallel = report("  " + n + " " + names[i] + " parallel", 1, operations[i]);
+                    System.out.println(String.format("  %-22s speedup %.2f", n + " " + names[i], sequential / parallel));
+                }
+            }
+        } finally {
+            Matrix.setParallelThreshold(threshold);
+        }
+    }
+
+    private static void dot(int[] lengths) throws IOException {
+        Random random = new Random(42);
+        for (int length : lengths) {
+            Vector a = randomVector(random, length);
+            Vector b = randomVector(random, length);
+            System.out.println("Vector length " + length + " (per op):");
+            report("  dot", 1, () -> (int) a.dot(b));
+        }
+    }
+
+    // Each kernel over rows of the given width, scalar against Kernels.get(),
+    // with the largest difference between their dot products in ulps.
+    private static void kernels(int[] widths) throws IOException {
+        Kernels scalar = Kernels.scalar();
+        Kernels kernels = Kernels.get();
+        System.out.println("Kernels: " + kernels.name());
+        Random random = new Random(42);
+        for (int width : widths) {
+            int rows = Math.max(1, KERNEL_ELEMENTS / width);
+            double[] data = randomVector(random, rows * width).getVectorComponents();
+            double[] weights = randomVector(random, width).getVectorComponents();
+            double[] means = randomVector(random, width).getVectorComponents();
+            double[] stdDevs = randomVector(random, width).getVectorComponents();
+            double[] sums = new double[width];
+            System.out.println(rows + " rows of width " + width + " (per row):");
+
+            double ulps = 0.0;
+            for (int i = 0; i < rows; i++) {
+                double expected = scalar.dot(data, i * width, weights, 0, width);
+                double actual = kernels.dot(data, i * width, weights, 0, width);
+                ulps = Math.max(ulps, Math.abs(actual - expected) / Math.ulp(expected));
+            }
+            System.out.println(String.format("  dot differs by at most %.0f ulps", ulps));
+
+            Kernels[] implementations = kernels == scalar ? new Kernels[]{scalar} : new Kernels[]{scalar, kernels};
+            double[][] times = new double[implementations.length][3];
+            for (int k = 0; k < implementations.length; k++) {
+                Kernels implementation = implementations[k];
+                String name = "  " + implementation.name().split(" ")[0];
+                times[k][0] = report(name + " dot", rows, () -> {
+                    double sum = 0.0;
+                    for (int i = 0; i < rows; i++) {
+                        sum += implementation.dot(data, i * width, weights, 0, width);
+                    }
+                    return (int) sum;
+                });
+                times[k][1] = report(name + " axpy", rows, () -> {
+                    for (int i = 0; i < rows; i++) {
+                        implementation.axpy(1e-9, data, i * width, sums, 0, width);
+                    }
+                    return (int) sums[0];
+                });
+                // z-scores a copy, so every run starts from the same values
+                double[] copy = data.clone();
+                times[k][2] = report(name + " zScore", rows, () -> {
+                    System.arraycopy(data, 0, copy, 0, data.length);
+                    for (int i = 0; i < rows; i++) {
+                        implementation.zScore(copy, i * width, means, stdDevs, width);
+                    }
+                    return (int) copy[0];
+                });
+            }
+            if (implementations.length > 1) {
+                System.out.println(String.format("  speedup  dot %.2f  axpy %.2f  zScore %.2f",
+                        times[0][0] / times[1][0], times[0][1] / times[1][1], times[0][2] / times[1][2]));
+            }
+        }
+    }
+
+    // One call to updateWeights() over the whole training matrix. The learning
+    // rate and penalty are zero so the weights, and so the work, stay the same
+    // from run to run.
+    private static void epoch(int[] sizes) throws IOException {
+        for (int rows : sizes) {
+            LinearRegression model = new LinearRegression(frame(rows), 0.0, 0, LinearRegression.Regularization.LASSO, 0.0);
+            System.out.println("Training epoch, " + rows + " rows (per row):");
+            report("  updateWeights", rows, () -> {
+                model.updateWeights();
+                return 1;
+            });
+        }
+    }
+
+    // The same epoch on 1, 2, 4, ... threads up to the number of cores.
+    private static void scaling(int[] sizes) throws IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int rows : sizes) {
+            WeatherFrame frame = frame(rows);
+            System.out.println("Training epoch scaling, " + rows + " rows, " + cores + " cores (per row):");
+            for (int threads = 1; ; threads = Math.min(cores, threads * 2)) {
+                LinearRegression model = new LinearRegression(frame, 0.0, 0, LinearRegression.Regularization.LASSO, 0.0, threads);
+                report("  " + threads + (threads == 1 ? " thread" : " threads"), rows, () -> {
+                    model.updateWeights();
+                    return 1;
+                });
+                if (threads == cores) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // A whole closed-form fit: the statistics pass, the XT X pass and the solve.
+    private static void closed(int[] sizes) throws IOException {
+        for (int rows : sizes) {
+            ArrayList<Weather.DataPoint> data = new ArrayList<>(rows);
+            SyntheticWeather generator = new SyntheticWeather(42);
+            for (int i = 0; i < rows; i++) {
+                data.add(generator.next());
+            }
+            System.out.println("Closed-form fit, " + rows + " rows (per row):");
+            report("  ridge + Cholesky", rows, () -> {
+                new LinearRegression(data, 0.8);
+                return 1;
+            });
+        }
+    }
+
+    // Latency of a single rainTomorrow() call on a trained model.
+    private static void predict(int[] sizes) throws IOException {
+        int batch = 1000;
+        for (int rows : sizes) {
+            LinearRegression model = new LinearRegression(frame(rows), 0.1, 1, LinearRegression.Regularization.LASSO, 0.8);
+            SyntheticWeather generator = new SyntheticWeather(7);
+            Weather.DataPoint[] points = new Weather.DataPoint[batch];
+            for (int i = 0; i < batch; i++) {
+                points[i] = generator.next();
+            }
+            System.out.println("Prediction, model trained on " + rows + " rows (per call):");
+            report("  rainTomorrow", batch, () -> {
+                int rain = 0;
+                for (Weather.DataPoint point : points) {
+                    rain += model.rainTomorrow(point) ? 1 : 0;
+                }
+                return rain;
+            });
+        }
+    }
+
+    // Binning the features and growing a default-sized DecisionTree on 1, 2,
+    // 4, ... threads up to the number of cores. Every run grows the same tree.
+    private static void tree(int[] sizes) throws IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int rows : sizes) {
+            WeatherFrame frame = frame(rows);
+            double[] labels = DecisionTree.labels(frame);
+            int[] labeled = DecisionTree.labeledRows(frame);
+            System.out.println("Decision tree scaling, " + rows + " rows, " + cores + " cores (per row):");
+            for (int threads = 1; ; threads = Math.min(cores, threads * 2)) {
+                final int count = threads;
+                String suffix = threads == 1 ? " thread" : " threads";
+                report("  bin, " + threads + suffix, rows, () -> BinnedFeatures.of(frame, count).numFeatures());
+                BinnedFeatures binned = BinnedFeatures.of(frame, threads);
+                report("  grow, " + threads + suffix, rows, () -> new DecisionTree(binned, labels, labeled.clone(),
+                        DecisionTree.DEFAULT_MAX_DEPTH, DecisionTree.DEFAULT_MIN_LEAF_SIZE, count).numLeaves());
+                if (threads == cores) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // Rows per second scored by a default DecisionTree grown on the given
+    // number of rows: walking its Node objects, walking the CompiledTree a row
+    // at a time, and walking it a batch of rows at a time.
+    private static void inference(int[] sizes) throws IOException {
+        int batch = 10000;
+        SyntheticWeather generator = new SyntheticWeather(7);
+        double[][] points = new double[batch][];
+        for (int i = 0; i < batch; i++) {
+            points[i] = WeatherFeatures.of(generator.next());
+        }
+        for (int rows : sizes) {
+            DecisionTree tree = new DecisionTree(frame(rows));
+            DecisionTree.Node root = tree.root();
+            System.out.println("Decision tree inference, " + tree.numNodes() + " nodes, depth " + tree.depth() + " (per row):");
+            double walk = report("  node walk", batch, () -> {
+                int rain = 0;
+                for (double[] point : points) {
+                    rain += root.leaf(point).value > 0.5 ? 1 : 0;
+                }
+                return rain;
+            });
+            double compiled = report("  compiled", batch, () -> {
+                int rain = 0;
+                for (double[] point : points) {
+                    rain += tree.probability(point) > 0.5 ? 1 : 0;
+                }
+                return rain;
+            });
+            double batched = report("  compiled, batched", batch, () -> {
+                int rain = 0;
+                for (double probability : tree.probabilities(points)) {
+                    rain += probability > 0.5 ? 1 : 0;
+                }
+                return rain;
+            });
+            System.out.println(String.format("  rows/s: node walk %.3g, compiled %.3g, batched %.3g", 1e9 / walk, 1e9 / compiled, 1e9 / batched));
+        }
+    }
+
+    // Latency of a single probability() call on a forest of the given number
+    // of trees, each grown on a bootstrap sample of FOREST_ROWS rows.
+    private static void forest(int[] sizes) throws IOException {
+        int batch = 1000;
+        WeatherFrame frame = frame(FOREST_ROWS);
+        SyntheticWeather generator = new SyntheticWeather(7);
+        double[][] points = new double[batch][];
+        for (int i = 0; i < batch; i++) {
+            points[i] = WeatherFeatures.of(generator.next());
+        }
+        for (int trees : sizes) {
+            RandomForest forest = new RandomForest(frame, trees, Runtime.getRuntime().availableProcessors());
+            System.out.println("Random forest, " + trees + " trees, " + forest.numNodes() + " nodes (per call):");
+            report("  probability", batch, () -> {
+                int rain = 0;
+                for (double[] point : points) {
+                    rain += forest.probability(point) > 0.5 ? 1 : 0;
+                }
+                return rain;
+            });
+            report("  probabilities, batched", batch, () -> {
+                int rain = 0;
+                for (double probability : forest.probabilities(points)) {
+                    rain += probability > 0.5 ? 1 : 0;
+                }
+                return rain;
+            });
+        }
+    }
+
+    // Training both boosted models, with early stopping, on all cores.
+    private static void boost(int[] sizes) throws IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int rows : sizes) {
+            WeatherFrame frame = frame(rows);
+            System.out.println("Gradient boosting, " + rows + " rows, " + cores + " cores (per row):");
+            for (GradientBoosting.Target target : GradientBoosting.Target.values()) {
+                int[] rounds = new int[1];
+                report("  " + target, rows, () -> {
+                    rounds[0] = new GradientBoosting(frame, target, cores).numRounds();
+                    return rounds[0];
+                });
+                System.out.println("  " + target + ": " + rounds[0] + " rounds");
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    interface Operation {
+
+        int run() throws IOException;
+    }
+
+    // Returns the best time per unit, in nanoseconds.
+    private static double report(String label, long units, Operation operation) throws IOException {
+        long deadline = System.nanoTime() + TIME_BUDGET / 2;
+        for (int i = 0; i < WARMUP && System.nanoTime() < deadline; i++) {
+            sink += operation.run();
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        int runs = 0;
+        long allocated = allocatedBytes();
+        deadline = System.nanoTime() + TIME_BUDGET;
+        while (runs < ITERATIONS && (runs == 0 || System.nanoTime() < deadline)) {
+            long start = System.nanoTime();
+            sink += operation.run();
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+            runs++;
+        }
+        allocated = allocatedBytes() - allocated;
+        String allocation = allocated < 0 ? "" : String.format("  %10.1f bytes/op", (double) allocated / runs / units);
+        System.out.println(String.format("%-24s best %14s  mean %14s%s  (%d runs)", label,
+                duration((double) best / units), duration((double) total / runs / units), allocation, runs));
+        return (double) best / units;
+    }
+
+    private static String duration(double nanos) {
+        if (nanos >= 1e6) {
+            return String.format("%.2f ms/op", nanos / 1e6);
+        } else if (nanos >= 1e3) {
+            return String.format("%.2f us/op", nanos / 1e3);
+        }
+        return String.format("%.1f ns/op", nanos);
+    }
+
+    private static WeatherFrame frame(int rows) {
+        WeatherFrame frame = new WeatherFrame();
+        SyntheticWeather generator = new SyntheticWeather(42);
+        for (int i = 0; i < rows; i++) {
+            frame.add(generator.next());
+        }
+        return frame;
+    }
+
+    private static Matrix randomMatrix(Random random, int rows, int columns) {
+        double[][] values = new double[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                values[i][j] = random.nextDouble();
+            }
+            if (i < columns) {
+                values[i][i] += columns; // Diagonally dominant, so square ones invert cleanly
+            }
+        }
+        return new Matrix(values);
+    }
+
+    private static Vector randomVector(Random random, int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextDouble();
+        }
+        return new Vector(values);
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+// The WeatherFeatures of a dataset (less the constant dummy variable) cut into
+// bins for tree training. Each feature's values are split at up to
+// MAX_BINS - 1 quantiles, and each row keeps one byte per feature: the number
+// of its bin. Bin 0 holds the missing (NaN) values, and bins 1 and up hold
+// ascending ranges of values. A split is then chosen from per-bin sums
+// (Histogram) instead of by sorting the rows of every node.
+//
+// A feature with at most MAX_BINS - 1 distinct values, such as a heading or
+// cloud cover, gets a bin per value, so nothing is lost by binning it.
+public class BinnedFeatures {
+
+    public static final int MAX_BINS = 256; // Bin numbers must fit in a byte
+    public static final int MISSING = 0;    // The bin of NaN values
+
+    private static final int BLOCK_SIZE = 8192; // Rows read per task
+
+    private final int numRows;
+    private final byte[][] bins;          // [feature][row], read as bins[f][row] & 0xff
+    private final double[][] upperBounds; // [feature][bin - 1], the largest value in each bin
+
+    private BinnedFeatures(int numRows, byte[][] bins, double[][] upperBounds) {
+        this.numRows = numRows;
+        this.bins = bins;
+        this.upperBounds = upperBounds;
+    }
+
+    public static BinnedFeatures of(WeatherFrame frame) {
+        return of(frame, 1);
+    }
+
+    // The features are read in blocks of rows and then binned a feature at a
+    // time, both spread over the given number of threads. Neither depends on
+    // the others' results, so the bins are the same for any number of threads.
+    public static BinnedFeatures of(WeatherFrame frame, int threads) {
+        int numRows = frame.size();
+        int numFeatures = WeatherFeatures.COUNT - 1;
+        double[][] columns = new double[numFeatures][numRows];
+        List<Callable<Void>> reads = new ArrayList<>();
+        for (int start = 0; start < numRows; start += BLOCK_SIZE) {
+            final int from = start;
+            final int to = Math.min(numRows, start + BLOCK_SIZE);
+            reads.add(() -> {
+                for (int row = from; row < to; row++) {
+                    double[] features = WeatherFeatures.of(frame, row);
+                    for (int f = 0; f < numFeatures; f++) {
+                        columns[f][row] = features[f + 1];
+                    }
+                }
+                return null;
+            });
+        }
+        ParallelTasks.run(reads, threads, "binning features");
+
+        byte[][] bins = new byte[numFeatures][numRows];
+        double[][] upperBounds = new double[numFeatures][];
+        List<Callable<Void>> binnings = new ArrayList<>(numFeatures);
+        for (int f = 0; f < numFeatures; f++) {
+            final int feature = f;
+            binnings.add(() -> {
+                upperBounds[feature] = upperBounds(columns[feature]);
+                for (int row = 0; row < numRows; row++) {
+                    bins[feature][row] = (byte) bin(upperBounds[feature], columns[feature][row]);
+                }
+                return null;
+            });
+        }
+        ParallelTasks.run(binnings, threads, "binning features");
+        return new BinnedFeatures(numRows, bins, upperBounds);
+    }
+
+    // The largest value of each bin. Every distinct value is its own bin if
+    // there are few enough; otherwise the bins end at evenly spaced quantiles,
+    // merging any that end on the same value.
+    private static double[] upperBounds(double[] column) {
+        double[] sorted = new double[column.length];
+        int count = 0;
+        for (double value : column) {
+            if (!Double.isNaN(value)) {
+                sorted[count++] = value;
+            }
+        }
+        Arrays.sort(sorted, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                distinct++;
+            }
+        }
+        int maxBins = MAX_BINS - 1;
+        if (distinct <= maxBins) {
+            double[] bounds = new double[distinct];
+            distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    bounds[distinct++] = sorted[i];
+                }
+            }
+            return bounds;
+        }
+
+        // Quantiles of the values with repeats, so common values get bins of their own.
+        double[] bounds = new double[maxBins];
+        int numBounds = 0;
+        for (int k = 1; k <= maxBins; k++) {
+            double bound = sorted[(int) ((long) k * count / maxBins) - 1];
+            if (numBounds == 0 || bound > bounds[numBounds - 1]) {
+                bounds[numBounds++] = bound;
+            }
+        }
+        return Arrays.copyOf(bounds, numBounds);
+    }
+
+    // The bin value falls in: MISSING for NaN, otherwise the first bin whose
+    // upper bound is at least value (the last bin for anything larger).
+    private static int bin(double[] upperBounds, double value) {
+        if (Double.isNaN(value)) {
+            return MISSING;
+        }
+        int index = Arrays.binarySearch(upperBounds, value);
+        if (index < 0) {
+            index = Math.min(-index - 1, upperBounds.length - 1);
+        }
+        return index + 1;
+    }
+
+    public int numRows() {
+        return this.numRows;
+    }
+
+    public int numFeatures() {
+        return this.bins.length;
+    }
+
+    // Feature f is WeatherFeatures index f + 1.
+    public String name(int feature) {
+        return WeatherFeatures.NAMES[feature + 1];
+    }
+
+    // The feature's bins including MISSING, so bin numbers run 0..numBins - 1.
+    public int numBins(int feature) {
+        return this.upperBounds[feature].length + 1;
+    }
+
+    public int bin(int feature, int row) {
+        return this.bins[feature][row] & 0xff;
+    }
+
+    // The bin column of a feature, indexed by row; read entries as & 0xff.
+    public byte[] binColumn(int feature) {
+        return this.bins[feature];
+    }
+
+    // The largest training value in a bin (not MISSING). Values up to it fall
+    // in that bin or an earlier one.
+    public double upperBound(int feature, int bin) {
+        return this.upperBounds[feature][bin - 1];
+    }
+}
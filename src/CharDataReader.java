@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+// Reads weather CSV rows from a Reader into a reusable char[] buffer and parses
+// each field in place with FieldParser, instead of going through readLine()
+// and String.split(). Lines end at '\n', '\r' or "\r\n" like
+// BufferedReader.readLine(), and results and errors match
+// AustraliaWeather.processLine.
+public class CharDataReader {
+
+    private static final int NUM_FIELDS = 24;
+
+    private final Reader reader;
+    private char[] buffer = new char[1 << 16];
+    private int position;  // First unread char
+    private int limit;     // End of the chars read so far
+    private int lineStart;
+    private boolean endOfInput;
+    private boolean skipLineFeed; // Previous line ended with '\r'
+    private final int[] starts = new int[NUM_FIELDS];
+    private final int[] lengths = new int[NUM_FIELDS];
+
+    public CharDataReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    public int read(ArrayList<Weather.DataPoint> dataset, int limit) throws IOException {
+        return this.read((Consumer<Weather.DataPoint>) dataset::add, limit);
+    }
+
+    public int read(Consumer<Weather.DataPoint> dataset, int limit) throws IOException {
+        if (limit <= 0) {
+            limit = Integer.MAX_VALUE;
+        }
+        int count = 0;
+        while (count < limit) {
+            int end = this.nextLine();
+            if (end < 0) {
+                break;
+            }
+            dataset.accept(this.processLine(this.lineStart, end));
+            count++;
+        }
+        return count;
+    }
+
+    // Returns the next data point, or null at the end of the input.
+    public Weather.DataPoint next() throws IOException {
+        int end = this.nextLine();
+        return end < 0 ? null : this.processLine(this.lineStart, end);
+    }
+
+    // Finds the next line, leaving its first char in lineStart. Returns the
+    // index just past its last char, or -1 at the end of the input.
+    private int nextLine() throws IOException {
+        if (this.skipLineFeed) {
+            if (this.position == this.limit) {
+                this.fill();
+            }
+            if (this.position < this.limit && this.buffer[this.position] == '\n') {
+                this.position++;
+            }
+            this.skipLineFeed = false;
+        }
+        int scan = this.position;
+        while (true) {
+            for (int i = scan; i < this.limit; i++) {
+                char c = this.buffer[i];
+                if (c == '\n' || c == '\r') {
+                    this.lineStart = this.position;
+                    this.position = i + 1;
+                    this.skipLineFeed = c == '\r';
+                    return i;
+                }
+            }
+            if (this.endOfInput) {
+                if (this.position == this.limit) {
+                    return -1;
+                }
+                this.lineStart = this.position;
+                this.position = this.limit;
+                return this.limit;
+            }
+            scan = this.limit - this.position;
+            this.fill();
+            scan += this.position;
+        }
+    }
+
+    // Moves the unread chars to the front of the buffer (growing it if a single
+    // line fills it) and reads more input after them.
+    private void fill() throws IOException {
+        int unread = this.limit - this.position;
+        if (this.position > 0) {
+            System.arraycopy(this.buffer, this.position, this.buffer, 0, unread);
+        } else if (unread == this.buffer.length) {
+            char[] larger = new char[this.buffer.length * 2];
+            System.arraycopy(this.buffer, 0, larger, 0, unread);
+            this.buffer = larger;
+        }
+        this.position = 0;
+        this.limit = unread;
+        int read = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+        if (read < 0) {
+            this.endOfInput = true;
+        } else {
+            this.limit += read;
+        }
+    }
+
+    private Weather.DataPoint processLine(int start, int end) {
+        // Split on commas the way String.split(",") does, which drops trailing empty fields.
+        int field = 0;
+        int lastNonEmpty = -1;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || this.buffer[i] == ',') {
+                if (field < NUM_FIELDS) {
+                    this.starts[field] = fieldStart;
+                    this.lengths[field] = i - fieldStart;
+                }
+                if (i > fieldStart) {
+                    lastNonEmpty = field;
+                }
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        if (lastNonEmpty < NUM_FIELDS - 1) {
+            throw new IllegalArgumentException("Too few fields: " + new String(this.buffer, start, end - start));
+        }
+
+        char[] line = this.buffer;
+        int[] at = this.starts;
+        int[] length = this.lengths;
+        return new Weather.DataPoint(
+                FieldParser.parseEpochDay(line, at[0], length[0]),
+                FieldParser.parseLocationId(line, at[1], length[1]),
+                FieldParser.parseTemperature(line, at[2], length[2]),
+                FieldParser.parseTemperature(line, at[3], length[3]),
+                FieldParser.parseRainfall(line, at[4], length[4]),
+                FieldParser.parseEvaporationRate(line, at[5], length[5]),
+                FieldParser.parseHoursOfSunshine(line, at[6], length[6]),
+                FieldParser.parseWindSpeed(line, at[8], length[8]),
+                FieldParser.parseWindDirection(line, at[7], length[7]),
+                FieldParser.parseTemperature(line, at[19], length[19]),
+                FieldParser.parseHumidity(line, at[13], length[13]),
+                FieldParser.parsePressure(line, at[15], length[15]),
+                FieldParser.parseCloudCover(line, at[17], length[17]),
+                FieldParser.parseWindSpeed(line, at[11], length[11]),
+                FieldParser.parseWindDirection(line, at[9], length[9]),
+                FieldParser.parseTemperature(line, at[20], length[20]),
+                FieldParser.parseHumidity(line, at[14], length[14]),
+                FieldParser.parsePressure(line, at[16], length[16]),
+                FieldParser.parseCloudCover(line, at[18], length[18]),
+                FieldParser.parseWindSpeed(line, at[12], length[12]),
+                FieldParser.parseWindDirection(line, at[10], length[10]),
+                FieldParser.parseBoolean(line, at[21], length[21]),
+                FieldParser.parseBoolean(line, at[23], length[23]),
+                FieldParser.parseRainfall(line, at[22], length[22])
+        );
+    }
+}
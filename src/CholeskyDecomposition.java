@@ -0,0 +1,85 @@
+// Cholesky decomposition A = L L^T of a symmetric positive definite matrix,
+// used to solve A x = b by two triangular substitutions. Only the lower
+// triangle of A is read.
+public class CholeskyDecomposition {
+
+    private final double[][] lower;
+    private final double norm1; // ||A||1, for the condition estimate
+
+    public CholeskyDecomposition(Matrix input) {
+        int n = input.numDataPoints();
+        if (input.numFeatures() != n) {
+            throw new IllegalArgumentException("Matrix is not square.");
+        }
+        this.lower = new double[n][n];
+        double[] columnSums = new double[n];
+        for (int i = 0; i < n; i++) {
+            double[] row = this.lower[i];
+            for (int j = 0; j <= i; j++) {
+                double[] other = this.lower[j];
+                double sum = input.getAt(i, j);
+                columnSums[j] += Math.abs(sum);
+                if (j < i) {
+                    columnSums[i] += Math.abs(sum);
+                }
+                for (int k = 0; k < j; k++) {
+                    sum -= row[k] * other[k];
+                }
+                if (i == j) {
+                    if (!(sum > 0.0)) {
+                        throw new IllegalArgumentException("Matrix is not positive definite.");
+                    }
+                    row[i] = Math.sqrt(sum);
+                } else {
+                    row[j] = sum / other[j];
+                }
+            }
+        }
+        double norm = 0.0;
+        for (double sum : columnSums) {
+            norm = Math.max(norm, sum);
+        }
+        this.norm1 = norm;
+    }
+
+    // An estimate of ||A||1 ||A^−1||1. Solutions of A x = b can lose about
+    // log10 of it in significant digits.
+    public double conditionEstimate() {
+        return this.norm1 * ConditionEstimator.inverseNorm1(this.lower.length, this::solveInPlace, this::solveInPlace);
+    }
+
+    public Matrix getL() {
+        return new Matrix(this.lower);
+    }
+
+    // Returns x such that A x = b.
+    public Vector solve(Vector b) {
+        int n = this.lower.length;
+        if (b.length() != n) {
+            throw new IllegalArgumentException("Vector length does not match the matrix.");
+        }
+        double[] x = b.getVectorComponents();
+        this.solveInPlace(x);
+        return Vector.wrap(x);
+    }
+
+    // x ← A^−1 x
+    private void solveInPlace(double[] x) {
+        int n = this.lower.length;
+        for (int i = 0; i < n; i++) { // Forward substitution: L y = b
+            double[] row = this.lower[i];
+            double sum = x[i];
+            for (int k = 0; k < i; k++) {
+                sum -= row[k] * x[k];
+            }
+            x[i] = sum / row[i];
+        }
+        for (int i = n - 1; i >= 0; i--) { // Back substitution: L^T x = y
+            double sum = x[i];
+            for (int k = i + 1; k < n; k++) {
+                sum -= this.lower[k][i] * x[k];
+            }
+            x[i] = sum / this.lower[i][i];
+        }
+    }
+}
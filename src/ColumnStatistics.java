@@ -0,0 +1,231 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+// Summary statistics of the numeric columns of a WeatherFrame: values, missing
+// values, min, max, mean, standard deviation and percentiles. Every requested
+// column is read in the same pass over the rows, straight from the frame's
+// primitive arrays and missing-value bitmaps.
+//
+// The rows are split into fixed blocks of BLOCK_SIZE, summed in parallel and
+// merged in block order, so the results do not depend on the number of
+// threads. Each block also copies out its column values, which are sorted
+// afterwards for exact percentiles.
+public class ColumnStatistics {
+
+    public static final double[] PERCENTILES = {5.0, 25.0, 50.0, 75.0, 95.0};
+
+    private static final int BLOCK_SIZE = 1 << 16; // Rows per task, a multiple of the 64 rows in a bitmap word
+
+    private final int column;
+    private final FeatureStats stats;
+    private final int missing;
+    private final double[] percentiles; // At PERCENTILES, or NaN without values
+
+    private ColumnStatistics(int column, FeatureStats stats, int missing, double[] percentiles) {
+        this.column = column;
+        this.stats = stats;
+        this.missing = missing;
+        this.percentiles = percentiles;
+    }
+
+    // The statistics of one block of rows for every column.
+    private static class Block {
+
+        private final FeatureStats[] stats;
+        private final int[] missing;
+
+        private Block(int columns) {
+            this.stats = new FeatureStats[columns];
+            this.missing = new int[columns];
+        }
+    }
+
+    // Statistics for each of the given columns, which must be numeric
+    // (WeatherFrame.isNumeric), in the same order.
+    public static ColumnStatistics[] of(WeatherFrame frame, int[] columns, int threads) {
+        for (int column : columns) {
+            if (column <= 0 || column >= WeatherFrame.NUM_COLUMNS || !WeatherFrame.isNumeric(column)) {
+                throw new IllegalArgumentException("Not a numeric field: " + (column > 0 && column < WeatherFrame.NUM_COLUMNS ? Weather.fields[column] : column));
+            }
+        }
+        int rows = frame.size();
+        double[][] values = new double[columns.length][rows]; // Each block's values at its own rows, then packed
+        int numBlocks = Math.max(1, (rows + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        List<Callable<Block>> tasks = new ArrayList<>(numBlocks);
+        for (int block = 0; block < numBlocks; block++) {
+            final int from = block * BLOCK_SIZE;
+            final int to = Math.min(rows, from + BLOCK_SIZE);
+            tasks.add(() -> scan(frame, columns, from, to, values));
+        }
+        List<Block> blocks = ParallelTasks.run(tasks, threads, "gathering statistics");
+
+        FeatureStats[] stats = new FeatureStats[columns.length];
+        int[] missing = new int[columns.length];
+        int[] counts = new int[columns.length];
+        for (int j = 0; j < columns.length; j++) {
+            stats[j] = new FeatureStats(Weather.fields[columns[j]]);
+            for (int block = 0; block < numBlocks; block++) {
+                Block result = blocks.get(block);
+                int kept = (int) result.stats[j].getNumValues();
+                System.arraycopy(values[j], block * BLOCK_SIZE, values[j], counts[j], kept);
+                counts[j] += kept;
+                stats[j].merge(result.stats[j]);
+                missing[j] += result.missing[j];
+            }
+        }
+
+        List<Callable<Void>> sorts = new ArrayList<>(columns.length);
+        for (int j = 0; j < columns.length; j++) {
+            final int index = j;
+            sorts.add(() -> {
+                Arrays.sort(values[index], 0, counts[index]);
+                return null;
+            });
+        }
+        ParallelTasks.run(sorts, threads, "gathering statistics");
+
+        ColumnStatistics[] result = new ColumnStatistics[columns.length];
+        for (int j = 0; j < columns.length; j++) {
+            double[] percentiles = new double[PERCENTILES.length];
+            for (int p = 0; p < PERCENTILES.length; p++) {
+                percentiles[p] = percentile(values[j], counts[j], PERCENTILES[p]);
+            }
+            result[j] = new ColumnStatistics(columns[j], stats[j], missing[j], percentiles);
+        }
+        return result;
+    }
+
+    // Statistics of rows from..to-1, whose present values are copied to
+    // values[j][from..] in row order.
+    private static Block scan(WeatherFrame frame, int[] columns, int from, int to, double[][] values) {
+        Block block = new Block(columns.length);
+        for (int j = 0; j < columns.length; j++) {
+            int column = columns[j];
+            FeatureStats stats = new FeatureStats(Weather.fields[column]);
+            long[] missing = frame.missingBitmap(column);
+            double[] doubles = WeatherFrame.isDoubleColumn(column) ? frame.doubleColumn(column) : null;
+            byte[] bytes = doubles == null ? frame.byteColumn(column) : null;
+            double[] out = values[j];
+            int kept = from;
+            for (int start = from; start < to; start += 64) {
+                int end = Math.min(to, start + 64);
+                long word = missing[start >>> 6];
+                for (int row = start; row < end; row++) {
+                    if ((word & (1L << row)) == 0) {
+                        double value = doubles != null ? doubles[row] : bytes[row];
+                        stats.update(value);
+                        out[kept++] = value;
+                    }
+                }
+            }
+            block.stats[j] = stats;
+            block.missing[j] = (to - from) - (kept - from);
+        }
+        return block;
+    }
+
+    // Linear interpolation between the two closest ranks of sorted[0..count-1],
+    // so the 50th percentile of an even count is the mean of the middle two.
+    private static double percentile(double[] sorted, int count, double percent) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double rank = (count - 1) * percent / 100.0;
+        int lower = (int) rank;
+        if (lower + 1 >= count) {
+            return sorted[count - 1];
+        }
+        return sorted[lower] + (rank - lower) * (sorted[lower + 1] - sorted[lower]);
+    }
+
+    // ----------------------------------------------------------------------
+    public int column() {
+        return this.column;
+    }
+
+    public String field() {
+        return Weather.fields[this.column];
+    }
+
+    public int count() {
+        return (int) this.stats.getNumValues();
+    }
+
+    public int missing() {
+        return this.missing;
+    }
+
+    public double min() {
+        return this.count() == 0 ? Double.NaN : this.stats.getMin();
+    }
+
+    public double max() {
+        return this.count() == 0 ? Double.NaN : this.stats.getMax();
+    }
+
+    public double mean() {
+        return this.count() == 0 ? Double.NaN : this.stats.getMean();
+    }
+
+    public double stdDev() {
+        return this.count() == 0 ? Double.NaN : this.stats.getStdDev();
+    }
+
+    // The value at PERCENTILES[index].
+    public double percentile(int index) {
+        return this.percentiles[index];
+    }
+
+    @Override
+    public String toString() {
+        String result = "Field: " + this.field() + "\n"
+                + "  Minimum: " + this.min() + "\n"
+                + "  Maximum: " + this.max() + "\n"
+                + "  Average: " + this.mean() + "\n"
+                + "  Std dev: " + this.stdDev() + "\n"
+                + "  Values:  " + this.count() + "\n"
+                + "  Missing: " + this.missing() + "\n"
+                + "  Percentiles:";
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            result += " " + percentileName(p) + "%: " + this.percentiles[p];
+        }
+        return result + "\n";
+    }
+
+    // {"field": "MinTemperature", "count": 1000, ..., "percentiles": {"5": -1.2, ...}}
+    public String toJson() {
+        String result = "{\"field\": \"" + this.field() + "\""
+                + ", \"count\": " + this.count()
+                + ", \"missing\": " + this.missing()
+                + ", \"min\": " + json(this.min())
+                + ", \"max\": " + json(this.max())
+                + ", \"mean\": " + json(this.mean())
+                + ", \"stdDev\": " + json(this.stdDev())
+                + ", \"percentiles\": {";
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            result += (p > 0 ? ", " : "") + "\"" + percentileName(p) + "\": " + json(this.percentiles[p]);
+        }
+        return result + "}}";
+    }
+
+    public static String toJson(ColumnStatistics[] statistics) {
+        String result = "[";
+        for (int i = 0; i < statistics.length; i++) {
+            result += (i > 0 ? ",\n " : "") + statistics[i].toJson();
+        }
+        return result + "]";
+    }
+
+    // "5" for 5.0, "2.5" for 2.5
+    private static String percentileName(int index) {
+        double percent = PERCENTILES[index];
+        return percent == Math.rint(percent) ? Integer.toString((int) percent) : Double.toString(percent);
+    }
+
+    // JSON has no NaN or infinity; missing statistics are null.
+    private static String json(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// One or more decision trees compiled for prediction. The nodes are kept in
+// two parallel primitive arrays instead of as Node objects: a threshold (or a
+// leaf's value) and one int packing the split's feature, the side missing
+// values take and its left child, the right child being the node after it.
+// Each tree is laid out breadth first, so the top levels, which every row
+// passes through, share a few cache lines, and a split's two children sit
+// side by side.
+//
+// predict() can also walk a batch of rows through a tree together, a level at
+// a time, so the cache misses of different rows overlap instead of each row
+// waiting on its own. Either way each row adds up its trees in tree order, so
+// the results are the same.
+final class CompiledTree {
+
+    private static final int FEATURE_BITS = 5; // WeatherFeatures index of a split
+    private static final int FEATURE_MASK = (1 << FEATURE_BITS) - 1;
+    private static final int MISSING_LEFT = 1 << FEATURE_BITS;
+    private static final int CHILD_SHIFT = FEATURE_BITS + 1; // The left child's index takes the bits above
+    private static final int MAX_NODES = 1 << (32 - CHILD_SHIFT);
+    private static final int BATCH_SIZE = 256; // Rows walked through a tree together
+
+    private final int[] roots;
+    private final int[] links;         // Left child << CHILD_SHIFT | MISSING_LEFT | feature, or 0 for a leaf
+    private final double[] thresholds; // Values up to this go left; a leaf's value
+
+    private CompiledTree(int[] roots, int[] links, double[] thresholds) {
+        this.roots = roots;
+        this.links = links;
+        this.thresholds = thresholds;
+    }
+
+    static CompiledTree of(DecisionTree.Node root) {
+        List<DecisionTree.Node> roots = new ArrayList<>(1);
+        roots.add(root);
+        return of(roots);
+    }
+
+    static CompiledTree of(List<DecisionTree.Node> trees) {
+        return of(trees, 1.0);
+    }
+
+    // The trees with every leaf value multiplied by scale, as boosting shrinks them.
+    static CompiledTree of(List<DecisionTree.Node> trees, double scale) {
+        int numNodes = 0;
+        for (DecisionTree.Node root : trees) {
+            numNodes += root.numNodes();
+        }
+        if (numNodes > MAX_NODES || WeatherFeatures.COUNT > FEATURE_MASK + 1) {
+            throw new IllegalArgumentException("Too many nodes to compile: " + numNodes);
+        }
+        int[] roots = new int[trees.size()];
+        int[] links = new int[numNodes];
+        double[] thresholds = new double[numNodes];
+        int base = 0;
+        List<DecisionTree.Node> queue = new ArrayList<>();
+        for (int t = 0; t < roots.length; t++) {
+            roots[t] = base;
+            queue.clear();
+            queue.add(trees.get(t));
+            for (int i = 0; i < queue.size(); i++) { // Children are numbered as they are queued
+                DecisionTree.Node node = queue.get(i);
+                if (node.isLeaf()) {
+                    thresholds[base + i] = scale * node.value;
+                    continue;
+                }
+                int left = base + queue.size();
+                queue.add(node.left);
+                queue.add(node.right);
+                links[base + i] = left << CHILD_SHIFT | (node.missingLeft ? MISSING_LEFT : 0) | node.feature;
+                thresholds[base + i] = node.threshold;
+            }
+            base += queue.size();
+        }
+        return new CompiledTree(roots, links, thresholds);
+    }
+
+    // The sum of the trees' leaf values for one row of WeatherFeatures.
+    double predict(double[] features) {
+        double sum = 0.0;
+        for (int root : this.roots) {
+            int node = root;
+            int link;
+            while ((link = this.links[node]) != 0) {
+                node = this.child(node, link, features[link & FEATURE_MASK]);
+            }
+            sum += this.thresholds[node];
+        }
+        return sum;
+    }
+
+    // The same for each of rows[from..to-1], into sums[from..to-1].
+    void predict(double[][] rows, int from, int to, double[] sums) {
+        int[] nodes = new int[BATCH_SIZE];
+        int[] active = new int[BATCH_SIZE]; // Rows of the batch not yet at a leaf
+        for (int start = from; start < to; start += BATCH_SIZE) {
+            int size = Math.min(BATCH_SIZE, to - start);
+            for (int i = 0; i < size; i++) {
+                sums[start + i] = 0.0;
+            }
+            for (int root : this.roots) {
+                int count = this.links[root] != 0 ? size : 0; // A tree may be a single leaf
+                for (int i = 0; i < size; i++) {
+                    nodes[i] = root;
+                    active[i] = i;
+                }
+                while (count > 0) { // Down a level, dropping rows that reach a leaf
+                    int kept = 0;
+                    for (int k = 0; k < count; k++) {
+                        int i = active[k];
+                        int node = nodes[i];
+                        int link = this.links[node];
+                        node = this.child(node, link, rows[start + i][link & FEATURE_MASK]);
+                        nodes[i] = node;
+                        if (this.links[node] != 0) {
+                            active[kept++] = i;
+                        }
+                    }
+                    count = kept;
+                }
+                for (int i = 0; i < size; i++) {
+                    sums[start + i] += this.thresholds[nodes[i]];
+                }
+            }
+        }
+    }
+
+    // The child of split node that a row with the given feature value goes to.
+    private int child(int node, int link, double value) {
+        int left = link >>> CHILD_SHIFT;
+        return (Double.isNaN(value) ? (link & MISSING_LEFT) != 0 : value <= this.thresholds[node]) ? left : left + 1;
+    }
+
+    int numTrees() {
+        return this.roots.length;
+    }
+
+    int numNodes() {
+        return this.links.length;
+    }
+}
@@ -1,27 +1,179 @@
-
 import java.util.ArrayList;
+import java.util.Arrays;
 
-
+// A classification tree predicting RainTomorrow from the WeatherFeatures. It is
+// grown by TreeBuilder on the features cut into at most 256 bins
+// (BinnedFeatures): every node's split is found from per-bin sums rather than
+// by sorting its rows, and each split also learns which side the rows missing
+// that feature should go to. A leaf holds the fraction of its training rows
+// on which it rained the next day. Predictions are made by a CompiledTree
+// copy of the nodes.
+//
+// Given more than one thread, binning and growing are shared out between
+// them; the tree is the same whatever the number of threads.
 public class DecisionTree {
-    
-    private ArrayList<Weather.DataPoint> dataset;
-    
+
+    public static final int DEFAULT_MAX_DEPTH = 16;
+    public static final int DEFAULT_MIN_LEAF_SIZE = 20;
+
+    // A split or a leaf. A row goes left when its feature value is at most
+    // threshold (or it is missing the feature and missingLeft is set).
+    static final class Node {
+
+        final int feature;          // WeatherFeatures index, or -1 for a leaf
+        final int bin;              // The last BinnedFeatures bin going left
+        final double threshold;
+        final boolean missingLeft;
+        final Node left;
+        final Node right;
+        final double value;         // The prediction if the tree stopped here
+        final int count;            // Training rows that reached this node
+        final double gain;          // The loss reduction of the split
+
+        Node(double value, int count) {
+            this(-1, 0, Double.NaN, false, null, null, value, count, 0.0);
+        }
+
+        Node(int feature, int bin, double threshold, boolean missingLeft, Node left, Node right, double value, int count, double gain) {
+            this.feature = feature;
+            this.bin = bin;
+            this.threshold = threshold;
+            this.missingLeft = missingLeft;
+            this.left = left;
+            this.right = right;
+            this.value = value;
+            this.count = count;
+            this.gain = gain;
+        }
+
+        boolean isLeaf() {
+            return this.feature < 0;
+        }
+
+        // The leaf the given WeatherFeatures fall in.
+        Node leaf(double[] features) {
+            Node node = this;
+            while (!node.isLeaf()) {
+                double value = features[node.feature];
+                node = (Double.isNaN(value) ? node.missingLeft : value <= node.threshold) ? node.left : node.right;
+            }
+            return node;
+        }
+
+        // The leaf a row of the binned training data falls in.
+        Node leaf(BinnedFeatures data, int row) {
+            Node node = this;
+            while (!node.isLeaf()) {
+                int bin = data.bin(node.feature - 1, row);
+                node = (bin == BinnedFeatures.MISSING ? node.missingLeft : bin <= node.bin) ? node.left : node.right;
+            }
+            return node;
+        }
+
+        int depth() {
+            return this.isLeaf() ? 0 : 1 + Math.max(this.left.depth(), this.right.depth());
+        }
+
+        int numNodes() {
+            return this.isLeaf() ? 1 : 1 + this.left.numNodes() + this.right.numNodes();
+        }
+
+        int numLeaves() {
+            return this.isLeaf() ? 1 : this.left.numLeaves() + this.right.numLeaves();
+        }
+    }
+
+    private final Node root;
+    private final CompiledTree compiled;
+
     public DecisionTree(ArrayList<Weather.DataPoint> data) {
-        this.dataset = data;
-    }
-    
-    
-    // Information gain = Entropy(parent) - WeightedAvgEntropy(children)
-    // https://homes.cs.washington.edu/~shapiro/EE596/notes/InfoGain.pdf
-    public double getEntropy(String field) {
-        for (Weather.DataPoint dataPoint : this.dataset) {
-            try {
-                double value = dataPoint.getNumber(field);
-            } catch (IllegalArgumentException e) {
-                
+        this(WeatherFrame.of(data));
+    }
+
+    public DecisionTree(WeatherFrame data) {
+        this(data, DEFAULT_MAX_DEPTH, DEFAULT_MIN_LEAF_SIZE);
+    }
+
+    public DecisionTree(WeatherFrame data, int maxDepth, int minLeafSize) {
+        this(data, maxDepth, minLeafSize, 1);
+    }
+
+    public DecisionTree(WeatherFrame data, int maxDepth, int minLeafSize, int threads) {
+        this(BinnedFeatures.of(data, threads), labels(data), labeledRows(data), maxDepth, minLeafSize, threads);
+    }
+
+    // Grows the tree on the listed rows of data, whose labels are 0 or 1.
+    DecisionTree(BinnedFeatures data, double[] labels, int[] rows, int maxDepth, int minLeafSize, int threads) {
+        if (rows.length == 0) {
+            throw new IllegalArgumentException("No data points with a RainTomorrow to train on.");
+        }
+        // Squared error with g = −y and h = 1: leaves predict the mean label.
+        double[] gradients = new double[labels.length];
+        double[] hessians = new double[labels.length];
+        for (int row = 0; row < labels.length; row++) {
+            gradients[row] = -labels[row];
+            hessians[row] = 1.0;
+        }
+        this.root = new TreeBuilder(data, gradients, hessians, maxDepth, minLeafSize, 0.0, threads).build(rows);
+        this.compiled = CompiledTree.of(this.root);
+    }
+
+    // RainTomorrow as 1 or 0 (or NaN where it is missing).
+    static double[] labels(WeatherFrame data) {
+        double[] labels = new double[data.size()];
+        for (int row = 0; row < labels.length; row++) {
+            Boolean rain = data.getBooleanValue(row, WeatherFrame.RAIN_TOMORROW);
+            labels[row] = rain == null ? Double.NaN : rain ? 1.0 : 0.0;
+        }
+        return labels;
+    }
+
+    // The rows that have a RainTomorrow to learn from.
+    static int[] labeledRows(WeatherFrame data) {
+        int[] rows = new int[data.size()];
+        int count = 0;
+        for (int row = 0; row < rows.length; row++) {
+            if (!data.isMissing(row, WeatherFrame.RAIN_TOMORROW)) {
+                rows[count++] = row;
             }
         }
-        return 0;
+        return Arrays.copyOf(rows, count);
+    }
+
+    // The chance of rain tomorrow: the fraction of rainy days in the leaf.
+    public double probability(Weather.DataPoint dataPoint) {
+        return this.probability(WeatherFeatures.of(dataPoint));
+    }
+
+    public double probability(double[] features) {
+        return this.compiled.predict(features);
+    }
+
+    // probability() of each row of WeatherFeatures, walked through the tree
+    // in batches.
+    public double[] probabilities(double[][] features) {
+        double[] probabilities = new double[features.length];
+        this.compiled.predict(features, 0, features.length, probabilities);
+        return probabilities;
+    }
+
+    public boolean rainTomorrow(Weather.DataPoint dataPoint) {
+        return this.probability(dataPoint) > 0.5;
+    }
+
+    Node root() {
+        return this.root;
+    }
+
+    public int depth() {
+        return this.root.depth();
+    }
+
+    public int numNodes() {
+        return this.root.numNodes();
+    }
+
+    public int numLeaves() {
+        return this.root.numLeaves();
     }
-    
 }
@@ -0,0 +1,110 @@
+// Count, min, max, mean and standard deviation of a feature, accumulated one
+// value at a time in a single pass. NaNs (missing values) are skipped.
+//
+// The mean and the sum of squared deviations from it are updated by Welford's
+// method, which stays accurate where summing x and x^2 would cancel. Two
+// accumulators over separate parts of the data can be merged (Chan et al.),
+// so parts can be summed in parallel. The standard deviation is only worked
+// out, and its square root taken, when it is asked for.
+public class FeatureStats {
+
+    private final String field;
+    private long numValues;
+    private double min;
+    private double max;
+    private double mean;
+    private double sumOfSquaredDeviations; // SUM((x − mean)^2)
+    private double stdDev;                 // Cached, or NaN until getStdDev() is next called
+
+    public FeatureStats(String field) {
+        this.field = field;
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+        this.stdDev = Double.NaN;
+    }
+
+    public void update(double newValue) {
+        if (Double.isNaN(newValue)) {
+            return;
+        }
+        this.numValues++;
+        this.min = Math.min(this.min, newValue);
+        this.max = Math.max(this.max, newValue);
+        double delta = newValue - this.mean;
+        this.mean += delta / this.numValues;
+        this.sumOfSquaredDeviations += delta * (newValue - this.mean);
+        this.stdDev = Double.NaN;
+    }
+
+    // Adds in the values other has seen, as if they had been passed to update().
+    // The result can differ from that in the last bits; merging the same parts
+    // in the same order always gives the same result.
+    public void merge(FeatureStats other) {
+        if (other.numValues == 0) {
+            return;
+        }
+        if (this.numValues == 0) {
+            this.numValues = other.numValues;
+            this.mean = other.mean;
+            this.sumOfSquaredDeviations = other.sumOfSquaredDeviations;
+        } else {
+            double total = this.numValues + other.numValues;
+            double delta = other.mean - this.mean;
+            this.mean += delta * (other.numValues / total);
+            this.sumOfSquaredDeviations += other.sumOfSquaredDeviations
+                    + delta * delta * (this.numValues * (other.numValues / total));
+            this.numValues += other.numValues;
+        }
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+        this.stdDev = Double.NaN;
+    }
+
+    // The mean where the standard deviation is 0.
+    public double zScore(double x) {
+        double stdDev = this.getStdDev();
+        if (stdDev == 0) {
+            return this.mean;
+        }
+        return (x - this.mean) / stdDev;
+    }
+
+    public String getField() {
+        return this.field;
+    }
+
+    // Infinity until a value is seen.
+    public double getMin() {
+        return this.min;
+    }
+
+    // −Infinity until a value is seen.
+    public double getMax() {
+        return this.max;
+    }
+
+    public double getMean() {
+        return this.mean;
+    }
+
+    // The population variance, SUM((x − mean)^2) / n, or 0 without values.
+    public double getVariance() {
+        return this.numValues == 0 ? 0.0 : this.sumOfSquaredDeviations / this.numValues;
+    }
+
+    public double getStdDev() {
+        if (Double.isNaN(this.stdDev)) {
+            this.stdDev = Math.sqrt(this.getVariance());
+        }
+        return this.stdDev;
+    }
+
+    public double getNumValues() {
+        return this.numValues;
+    }
+
+    @Override
+    public String toString() {
+        return this.field + " (" + this.numValues + " values): µ = " + String.format("%.2f", this.mean) + " | σ = " + String.format("%.2f", this.getStdDev());
+    }
+}
@@ -0,0 +1,431 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+// Allocation-free versions of the AustraliaWeather.parse* methods that read a
+// field straight from a char[] or ByteBuffer slice (offset, length). Common
+// values - "NA", plain decimals, yyyy-MM-dd dates (as epoch days), compass
+// points, Yes/No, locations (as LocationDictionary ids) - are decoded in
+// place. Anything else, and any value that fails a range check, is turned into
+// a String and handed to the matching AustraliaWeather method, so the result or
+// the IllegalArgumentException is exactly what the String parser gives.
+public class FieldParser {
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final Weather.Direction[] DIRECTIONS = Weather.Direction.values();
+    private static final String[] DIRECTION_NAMES = new String[DIRECTIONS.length];
+
+    static {
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            DIRECTION_NAMES[i] = DIRECTIONS[i].name();
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // char[] slices
+    public static double parseTemperature(char[] text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidTemperature(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseTemperature(new String(text, offset, length));
+    }
+
+    public static double parseHumidity(char[] text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidHumidity(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseHumidity(new String(text, offset, length));
+    }
+
+    public static double parsePressure(char[] text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidPressure(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parsePressure(new String(text, offset, length));
+    }
+
+    public static double parseWindSpeed(char[] text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidWindSpeed(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseWindSpeed(new String(text, offset, length));
+    }
+
+    public static double parseHoursOfSunshine(char[] text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidHoursOfSunshine(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseHoursOfSunshine(new String(text, offset, length));
+    }
+
+    public static double parseRainfall(char[] text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidRainfall(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseRainfall(new String(text, offset, length));
+    }
+
+    public static double parseEvaporationRate(char[] text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidEvaporationRate(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseEvaporationRate(new String(text, offset, length));
+    }
+
+    public static int parseCloudCover(char[] text, int offset, int length) {
+        if (isNA(text, offset, length)) {
+            return -1;
+        }
+        int value = integer(text, offset, offset + length, true);
+        return AustraliaWeather.isValidCloudCover(value)
+                ? value : AustraliaWeather.parseCloudCover(new String(text, offset, length));
+    }
+
+    // The date as a Weather.Date epoch day.
+    public static int parseEpochDay(char[] text, int offset, int length) {
+        int end = offset + length;
+        int firstDash = indexOf(text, '-', offset, end);
+        int secondDash = firstDash < 0 ? -1 : indexOf(text, '-', firstDash + 1, end);
+        if (secondDash > 0) {
+            int year = integer(text, offset, firstDash, false);
+            int month = integer(text, firstDash + 1, secondDash, false);
+            int day = integer(text, secondDash + 1, end, false);
+            if (Weather.Date.isValid(year, month, day)) {
+                return Weather.Date.epochDay(year, month, day);
+            }
+        }
+        return AustraliaWeather.parseDate(new String(text, offset, length)).toEpochDay();
+    }
+
+    // The LocationDictionary id of the location.
+    public static int parseLocationId(char[] text, int offset, int length) {
+        return LocationDictionary.id(text, offset, length);
+    }
+
+    public static Weather.Direction parseWindDirection(char[] text, int offset, int length) {
+        if (isNA(text, offset, length)) {
+            return Weather.Direction.MISSING;
+        }
+        for (int i = 0; i < DIRECTION_NAMES.length; i++) {
+            if (matches(DIRECTION_NAMES[i], text, offset, length)) {
+                return DIRECTIONS[i];
+            }
+        }
+        return AustraliaWeather.parseWindDirection(new String(text, offset, length));
+    }
+
+    public static Boolean parseBoolean(char[] text, int offset, int length) {
+        if (matchesIgnoreCase("yes", text, offset, length) || matchesIgnoreCase("true", text, offset, length)) {
+            return true;
+        } else if (matchesIgnoreCase("no", text, offset, length) || matchesIgnoreCase("false", text, offset, length)) {
+            return false;
+        } else if (matchesIgnoreCase("na", text, offset, length)) {
+            return null;
+        }
+        return AustraliaWeather.parseBoolean(new String(text, offset, length));
+    }
+
+    // ----------------------------------------------------------------------
+    // ByteBuffer slices (offsets are absolute buffer indices)
+    public static double parseTemperature(ByteBuffer text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidTemperature(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseTemperature(string(text, offset, length));
+    }
+
+    public static double parseHumidity(ByteBuffer text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidHumidity(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseHumidity(string(text, offset, length));
+    }
+
+    public static double parsePressure(ByteBuffer text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidPressure(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parsePressure(string(text, offset, length));
+    }
+
+    public static double parseWindSpeed(ByteBuffer text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidWindSpeed(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseWindSpeed(string(text, offset, length));
+    }
+
+    public static double parseHoursOfSunshine(ByteBuffer text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidHoursOfSunshine(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseHoursOfSunshine(string(text, offset, length));
+    }
+
+    public static double parseRainfall(ByteBuffer text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidRainfall(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseRainfall(string(text, offset, length));
+    }
+
+    public static double parseEvaporationRate(ByteBuffer text, int offset, int length) {
+        double value = number(text, offset, length);
+        return AustraliaWeather.isValidEvaporationRate(value) && !Double.isNaN(value) || isNA(text, offset, length)
+                ? value : AustraliaWeather.parseEvaporationRate(string(text, offset, length));
+    }
+
+    public static int parseCloudCover(ByteBuffer text, int offset, int length) {
+        if (isNA(text, offset, length)) {
+            return -1;
+        }
+        int value = integer(text, offset, offset + length, true);
+        return AustraliaWeather.isValidCloudCover(value)
+                ? value : AustraliaWeather.parseCloudCover(string(text, offset, length));
+    }
+
+    public static int parseEpochDay(ByteBuffer text, int offset, int length) {
+        int end = offset + length;
+        int firstDash = indexOf(text, '-', offset, end);
+        int secondDash = firstDash < 0 ? -1 : indexOf(text, '-', firstDash + 1, end);
+        if (secondDash > 0) {
+            int year = integer(text, offset, firstDash, false);
+            int month = integer(text, firstDash + 1, secondDash, false);
+            int day = integer(text, secondDash + 1, end, false);
+            if (Weather.Date.isValid(year, month, day)) {
+                return Weather.Date.epochDay(year, month, day);
+            }
+        }
+        return AustraliaWeather.parseDate(string(text, offset, length)).toEpochDay();
+    }
+
+    public static int parseLocationId(ByteBuffer text, int offset, int length) {
+        return LocationDictionary.id(text, offset, length);
+    }
+
+    public static Weather.Direction parseWindDirection(ByteBuffer text, int offset, int length) {
+        if (isNA(text, offset, length)) {
+            return Weather.Direction.MISSING;
+        }
+        for (int i = 0; i < DIRECTION_NAMES.length; i++) {
+            if (matches(DIRECTION_NAMES[i], text, offset, length)) {
+                return DIRECTIONS[i];
+            }
+        }
+        return AustraliaWeather.parseWindDirection(string(text, offset, length));
+    }
+
+    public static Boolean parseBoolean(ByteBuffer text, int offset, int length) {
+        if (matchesIgnoreCase("yes", text, offset, length) || matchesIgnoreCase("true", text, offset, length)) {
+            return true;
+        } else if (matchesIgnoreCase("no", text, offset, length) || matchesIgnoreCase("false", text, offset, length)) {
+            return false;
+        } else if (matchesIgnoreCase("na", text, offset, length)) {
+            return null;
+        }
+        return AustraliaWeather.parseBoolean(string(text, offset, length));
+    }
+
+    public static String string(ByteBuffer text, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = text.get(offset + i);
+        }
+        return new String(bytes, Charset.defaultCharset());
+    }
+
+    // ----------------------------------------------------------------------
+    // Returns the value of a plain decimal such as "-12.5", or NaN for anything
+    // else (the caller then defers to Double.parseDouble).
+    // Mantissas up to 2^53 divided by powers of ten up to 10^22 are exact
+    // operands, so the single rounding matches Double.parseDouble.
+    private static double number(char[] text, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (i < end && (text[i] == '-' || text[i] == '+')) {
+            negative = text[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            int c = text[i];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if ((mantissa != 0 || c != '0') && ++digits > 15) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) {
+                    scale++;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (!seenDigit || scale >= POWERS_OF_TEN.length) {
+            return Double.NaN;
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private static double number(ByteBuffer text, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (i < end && (text.get(i) == '-' || text.get(i) == '+')) {
+            negative = text.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            int c = text.get(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if ((mantissa != 0 || c != '0') && ++digits > 15) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) {
+                    scale++;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (!seenDigit || scale >= POWERS_OF_TEN.length) {
+            return Double.NaN;
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    // Returns the value of a run of at most nine digits (optionally signed),
+    // or Integer.MIN_VALUE if the slice is anything else.
+    private static int integer(char[] text, int start, int end, boolean signed) {
+        int i = start;
+        boolean negative = false;
+        if (signed && i < end && (text[i] == '-' || text[i] == '+')) {
+            negative = text[i] == '-';
+            i++;
+        }
+        if (i == end || end - i > 9) {
+            return Integer.MIN_VALUE;
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int c = text[i];
+            if (c < '0' || c > '9') {
+                return Integer.MIN_VALUE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static int integer(ByteBuffer text, int start, int end, boolean signed) {
+        int i = start;
+        boolean negative = false;
+        if (signed && i < end && (text.get(i) == '-' || text.get(i) == '+')) {
+            negative = text.get(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 9) {
+            return Integer.MIN_VALUE;
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int c = text.get(i);
+            if (c < '0' || c > '9') {
+                return Integer.MIN_VALUE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isNA(char[] text, int offset, int length) {
+        return length == 2 && text[offset] == 'N' && text[offset + 1] == 'A';
+    }
+
+    private static boolean isNA(ByteBuffer text, int offset, int length) {
+        return length == 2 && text.get(offset) == 'N' && text.get(offset + 1) == 'A';
+    }
+
+    private static int indexOf(char[] text, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer text, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(String value, char[] text, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text[offset + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String value, ByteBuffer text, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.get(offset + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesIgnoreCase(String lowerCase, char[] text, int offset, int length) {
+        if (lowerCase.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int c = text[offset + i];
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesIgnoreCase(String lowerCase, ByteBuffer text, int offset, int length) {
+        if (lowerCase.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int c = text.get(offset + i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
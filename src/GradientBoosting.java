@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Gradient-boosted decision trees: a classifier for RainTomorrow, trained on
+// the logistic loss, or a regressor for RainfallTomorrow, trained on the
+// squared error. Each round grows one tree (TreeBuilder) on the gradients and
+// hessians of the loss at the current predictions, and adds it in, shrunk by
+// the learning rate.
+//
+// The features are binned once, or passed in already binned so that models
+// of both targets can share them. Gradients, hessians and the current score
+// of every row are kept in double arrays, and after each round only the new
+// tree is walked to update the scores, rather than re-scoring every tree. A
+// share of the data points is held out and scored the same way; training
+// stops once the held-out loss has not improved for earlyStoppingRounds
+// rounds, and the trees after the best round are dropped. With more than one
+// thread, every round's tree is grown on the same pool of workers.
+public class GradientBoosting {
+
+    public enum Target {
+        RAIN_TOMORROW,     // Classifier: predictions are probabilities of rain
+        RAINFALL_TOMORROW  // Regressor: predictions are millimetres of rain
+    }
+
+    public static final int DEFAULT_MAX_ROUNDS = 500;
+    public static final double DEFAULT_LEARNING_RATE = 0.1;
+    public static final int DEFAULT_MAX_DEPTH = 6;
+    public static final int DEFAULT_MIN_LEAF_SIZE = 20;
+    public static final double DEFAULT_LAMBDA = 1.0;             // L2 penalty on leaf values
+    public static final int DEFAULT_EARLY_STOPPING_ROUNDS = 20;
+    public static final double DEFAULT_VALIDATION_FRACTION = 0.1; // Of the data points held out
+    public static final long DEFAULT_SEED = 42;
+
+    private static final double MIN_HESSIAN = 1e-16; // Keeps near-certain rows from giving 0 / 0 leaves
+
+    private final Target target;
+    private final double baseScore;       // The score before any tree, fitted to the mean
+    private final CompiledTree trees;     // Leaf values already shrunk by the learning rate
+    private final double validationLoss;  // At the best round, or NaN without a held-out set
+
+    public GradientBoosting(WeatherFrame data, Target target) {
+        this(data, target, 1);
+    }
+
+    public GradientBoosting(WeatherFrame data, Target target, int threads) {
+        this(data, target, DEFAULT_MAX_ROUNDS, DEFAULT_LEARNING_RATE, DEFAULT_MAX_DEPTH, DEFAULT_MIN_LEAF_SIZE,
+                DEFAULT_LAMBDA, DEFAULT_EARLY_STOPPING_ROUNDS, DEFAULT_VALIDATION_FRACTION, DEFAULT_SEED, threads);
+    }
+
+    public GradientBoosting(WeatherFrame data, Target target, int maxRounds, double learningRate, int maxDepth,
+            int minLeafSize, double lambda, int earlyStoppingRounds, double validationFraction, long seed, int threads) {
+        this(BinnedFeatures.of(data, threads), data, target, maxRounds, learningRate, maxDepth, minLeafSize, lambda,
+                earlyStoppingRounds, validationFraction, seed, threads);
+    }
+
+    // Trained on binned, which must be the features of data.
+    public GradientBoosting(BinnedFeatures binned, WeatherFrame data, Target target, int threads) {
+        this(binned, data, target, DEFAULT_MAX_ROUNDS, DEFAULT_LEARNING_RATE, DEFAULT_MAX_DEPTH, DEFAULT_MIN_LEAF_SIZE,
+                DEFAULT_LAMBDA, DEFAULT_EARLY_STOPPING_ROUNDS, DEFAULT_VALIDATION_FRACTION, DEFAULT_SEED, threads);
+    }
+
+    public GradientBoosting(BinnedFeatures binned, WeatherFrame data, Target target, int maxRounds, double learningRate,
+            int maxDepth, int minLeafSize, double lambda, int earlyStoppingRounds, double validationFraction, long seed, int threads) {
+        if (binned.numRows() != data.size()) {
+            throw new IllegalArgumentException("Binned features of " + binned.numRows() + " rows for " + data.size() + " data points");
+        }
+        if (maxRounds < 1 || !(learningRate > 0.0) || earlyStoppingRounds < 1
+                || !(validationFraction >= 0.0 && validationFraction < 1.0)) {
+            throw new IllegalArgumentException("Bad boosting parameters: " + maxRounds + " rounds, learning rate " + learningRate
+                    + ", early stopping after " + earlyStoppingRounds + ", validation fraction " + validationFraction);
+        }
+        this.target = target;
+        double[] labels = target == Target.RAIN_TOMORROW ? DecisionTree.labels(data) : rainfall(data);
+
+        // Hold out a random share of the labeled rows.
+        int[] labeled = new int[data.size()];
+        int count = 0;
+        for (int row = 0; row < labels.length; row++) {
+            if (!Double.isNaN(labels[row])) {
+                labeled[count++] = row;
+            }
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("No data points with a " + Weather.fields[this.column()] + " to train on.");
+        }
+        Random random = new Random(seed);
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int row = labeled[i];
+            labeled[i] = labeled[j];
+            labeled[j] = row;
+        }
+        int numHeldOut = Math.min(count - 1, (int) (count * validationFraction));
+        int[] heldOut = new int[numHeldOut];
+        int[] training = new int[count - numHeldOut];
+        System.arraycopy(labeled, 0, heldOut, 0, numHeldOut);
+        System.arraycopy(labeled, numHeldOut, training, 0, training.length);
+        Arrays.sort(heldOut); // In row order, the columns are read front to back
+        Arrays.sort(training);
+
+        double mean = 0.0;
+        for (int row : training) {
+            mean += labels[row];
+        }
+        mean /= training.length;
+        this.baseScore = target == Target.RAIN_TOMORROW
+                ? Math.log(Math.max(mean, 1e-6) / Math.max(1.0 - mean, 1e-6)) : mean;
+
+        double[] scores = new double[labels.length];
+        double[] gradients = new double[labels.length];
+        double[] hessians = new double[labels.length];
+        Arrays.fill(scores, this.baseScore);
+        List<DecisionTree.Node> trees = new ArrayList<>();
+        double bestLoss = this.loss(labels, scores, heldOut);
+        int bestRounds = 0;
+        // One builder for every round, as the gradients and hessians are
+        // rewritten in place, so its histograms are reused too.
+        TreeBuilder builder = new TreeBuilder(binned, gradients, hessians, maxDepth, minLeafSize, lambda, threads);
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            for (int round = 1; round <= maxRounds; round++) {
+                for (int row : training) {
+                    this.gradient(labels[row], scores[row], gradients, hessians, row);
+                }
+                DecisionTree.Node tree = builder.build(training, pool);
+                trees.add(tree);
+                for (int row : training) {
+                    scores[row] += learningRate * tree.leaf(binned, row).value;
+                }
+                for (int row : heldOut) {
+                    scores[row] += learningRate * tree.leaf(binned, row).value;
+                }
+                if (heldOut.length == 0) {
+                    bestRounds = round;
+                    continue;
+                }
+                double loss = this.loss(labels, scores, heldOut);
+                if (Main.DEBUG) {
+                    System.out.println("Round " + round + ": held-out loss " + loss);
+                }
+                if (loss < bestLoss) {
+                    bestLoss = loss;
+                    bestRounds = round;
+                } else if (round - bestRounds >= earlyStoppingRounds) {
+                    break;
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        this.validationLoss = heldOut.length == 0 ? Double.NaN : bestLoss;
+        this.trees = CompiledTree.of(trees.subList(0, bestRounds), learningRate);
+    }
+
+    // RainfallTomorrow, or NaN where it is missing.
+    private static double[] rainfall(WeatherFrame data) {
+        double[] rainfall = new double[data.size()];
+        for (int row = 0; row < rainfall.length; row++) {
+            rainfall[row] = data.isMissing(row, WeatherFrame.RAINFALL_TOMORROW)
+                    ? Double.NaN : data.getNumber(row, WeatherFrame.RAINFALL_TOMORROW);
+        }
+        return rainfall;
+    }
+
+    // The first and second derivatives of the loss in the score, for a row.
+    private void gradient(double label, double score, double[] gradients, double[] hessians, int row) {
+        if (this.target == Target.RAIN_TOMORROW) {
+            double probability = 1.0 / (1.0 + Math.exp(-score));
+            gradients[row] = probability - label;
+            hessians[row] = Math.max(probability * (1.0 - probability), MIN_HESSIAN);
+        } else {
+            gradients[row] = score - label;
+            hessians[row] = 1.0;
+        }
+    }
+
+    // The mean log loss or squared error of the given rows, or NaN without rows.
+    private double loss(double[] labels, double[] scores, int[] rows) {
+        double sum = 0.0;
+        for (int row : rows) {
+            double score = scores[row];
+            if (this.target == Target.RAIN_TOMORROW) {
+                // log(1 + e^s) - y s, written to stay finite for large |s|
+                sum += Math.max(score, 0.0) + Math.log1p(Math.exp(-Math.abs(score))) - labels[row] * score;
+            } else {
+                double error = score - labels[row];
+                sum += error * error;
+            }
+        }
+        return sum / rows.length;
+    }
+
+    private int column() {
+        return this.target == Target.RAIN_TOMORROW ? WeatherFrame.RAIN_TOMORROW : WeatherFrame.RAINFALL_TOMORROW;
+    }
+
+    // ----------------------------------------------------------------------
+    // The chance of rain tomorrow for a classifier, millimetres for a regressor.
+    public double predict(Weather.DataPoint dataPoint) {
+        return this.predict(WeatherFeatures.of(dataPoint));
+    }
+
+    public double predict(double[] features) {
+        return this.transform(this.baseScore + this.trees.predict(features));
+    }
+
+    // predict() of each row of WeatherFeatures, walked through the trees in
+    // batches.
+    public double[] predict(double[][] features) {
+        double[] predictions = new double[features.length];
+        this.trees.predict(features, 0, features.length, predictions);
+        for (int i = 0; i < predictions.length; i++) {
+            predictions[i] = this.transform(this.baseScore + predictions[i]);
+        }
+        return predictions;
+    }
+
+    private double transform(double score) {
+        return this.target == Target.RAIN_TOMORROW ? 1.0 / (1.0 + Math.exp(-score)) : score;
+    }
+
+    public boolean rainTomorrow(Weather.DataPoint dataPoint) {
+        if (this.target != Target.RAIN_TOMORROW) {
+            throw new IllegalStateException("Not a RainTomorrow classifier");
+        }
+        return this.predict(dataPoint) > 0.5;
+    }
+
+    public Target target() {
+        return this.target;
+    }
+
+    // The trees kept: those up to the round with the lowest held-out loss.
+    public int numRounds() {
+        return this.trees.numTrees();
+    }
+
+    // The mean held-out log loss (classifier) or squared error (regressor) of
+    // the trees kept.
+    public double validationLoss() {
+        return this.validationLoss;
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.Arrays;
+
+// Per-bin sums over the rows of one tree node, for each binned feature the
+// node may split on: the rows' gradients, their hessians and how many there
+// are. TreeBuilder finds the best split of a node from these alone, in time
+// proportional to the number of bins rather than of rows.
+//
+// The rows of a node are split between its two children, so one child's
+// histogram is the parent's less the other's: only the smaller child has to
+// be summed from its rows.
+final class Histogram {
+
+    // Each thread's copy of the gradients and hessians of the rows being
+    // added, grown as needed, so adding rows allocates nothing.
+    private static final ThreadLocal<double[][]> SCRATCH = ThreadLocal.withInitial(() -> new double[2][0]);
+
+    final double[] gradients; // [slot * BinnedFeatures.MAX_BINS + bin], a slot per feature summed
+    final double[] hessians;
+    final int[] counts;
+
+    Histogram(int numFeatures) {
+        this.gradients = new double[numFeatures * BinnedFeatures.MAX_BINS];
+        this.hessians = new double[numFeatures * BinnedFeatures.MAX_BINS];
+        this.counts = new int[numFeatures * BinnedFeatures.MAX_BINS];
+    }
+
+    void clear() {
+        Arrays.fill(this.gradients, 0.0);
+        Arrays.fill(this.hessians, 0.0);
+        Arrays.fill(this.counts, 0);
+    }
+
+    // Adds the rows listed in rows[from..to-1] for the given features, which
+    // take slots 0, 1, ... in order. Their gradients and hessians are first
+    // copied out in list order, so that the passes that follow, a feature at
+    // a time, only look rows up in the bin columns.
+    void add(BinnedFeatures data, int[] features, int[] rows, int from, int to, double[] gradients, double[] hessians) {
+        int count = to - from;
+        double[][] scratch = SCRATCH.get();
+        if (scratch[0].length < count) {
+            scratch[0] = new double[count];
+            scratch[1] = new double[count];
+        }
+        double[] g = scratch[0];
+        double[] h = scratch[1];
+        for (int i = 0; i < count; i++) {
+            int row = rows[from + i];
+            g[i] = gradients[row];
+            h[i] = hessians[row];
+        }
+        for (int slot = 0; slot < features.length; slot++) {
+            byte[] bins = data.binColumn(features[slot]);
+            int base = slot * BinnedFeatures.MAX_BINS;
+            for (int i = 0; i < count; i++) {
+                int bin = base + (bins[rows[from + i]] & 0xff);
+                this.gradients[bin] += g[i];
+                this.hessians[bin] += h[i];
+                this.counts[bin]++;
+            }
+        }
+    }
+
+    // this ← this + other, for histograms of row chunks summed separately.
+    void add(Histogram other) {
+        for (int i = 0; i < this.counts.length; i++) {
+            this.gradients[i] += other.gradients[i];
+            this.hessians[i] += other.hessians[i];
+            this.counts[i] += other.counts[i];
+        }
+    }
+
+    // this ← this − child, turning a parent's histogram into that of child's sibling.
+    void subtract(Histogram child) {
+        for (int i = 0; i < this.counts.length; i++) {
+            this.gradients[i] -= child.gradients[i];
+            this.hessians[i] -= child.hessians[i];
+            this.counts[i] -= child.counts[i];
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// The inner loops shared by Vector, Matrix and LinearRegression, over runs of
+// doubles in arrays. Kernels.get() returns the implementation in use: the
+// SIMD one (SimdKernels, in src-simd) when it was compiled and the JVM runs
+// with --add-modules jdk.incubator.vector, otherwise the scalar loops below.
+// Run with -Dkernels=scalar to force the scalar loops.
+//
+// axpy and zScore compute every element with the same two roundings either
+// way, so they give identical results. dot adds its products in a different
+// order when vectorized: each way has a rounding error of at most
+// (length − 1) ε SUM(|ai bi|), so the two agree to within
+// 2 (length − 1) ε SUM(|ai bi|), with ε = 2^−53. For products of one sign that is
+// within 2 (length − 1) ulps of the result.
+public abstract class Kernels {
+
+    private static final Kernels SCALAR = new Scalar();
+    private static final Kernels INSTANCE = load();
+
+    public static Kernels get() {
+        return INSTANCE;
+    }
+
+    public static Kernels scalar() {
+        return SCALAR;
+    }
+
+    private static Kernels load() {
+        if ("scalar".equals(System.getProperty("kernels"))) {
+            return SCALAR;
+        }
+        try {
+            return (Kernels) Class.forName("SimdKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR; // Not compiled, or the jdk.incubator.vector module is not loaded
+        }
+    }
+
+    public abstract String name();
+
+    // SUM(a[aOffset + i] b[bOffset + i]) for i = 0..length-1.
+    public abstract double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    // y[yOffset + i] ← alpha x[xOffset + i] + y[yOffset + i] for i = 0..length-1.
+    public abstract void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    // data[offset + i] ← (data[offset + i] − means[i]) / stdDevs[i] for i = 0..length-1,
+    // or means[i] where stdDevs[i] is 0, as FeatureStats.zScore does.
+    public abstract void zScore(double[] data, int offset, double[] means, double[] stdDevs, int length);
+
+    private static class Scalar extends Kernels {
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+
+        @Override
+        public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                sum += a[aOffset + i] * b[bOffset + i];
+            }
+            return sum;
+        }
+
+        @Override
+        public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+            for (int i = 0; i < length; i++) {
+                y[yOffset + i] += alpha * x[xOffset + i];
+            }
+        }
+
+        @Override
+        public void zScore(double[] data, int offset, double[] means, double[] stdDevs, int length) {
+            for (int i = 0; i < length; i++) {
+                data[offset + i] = stdDevs[i] == 0 ? means[i] : (data[offset + i] - means[i]) / stdDevs[i];
+            }
+        }
+    }
+}
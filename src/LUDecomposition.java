@@ -0,0 +1,193 @@
+// LU decomposition P A = L U of a square matrix by Gaussian elimination with
+// partial pivoting: at each step the row with the largest entry in the pivot
+// column is swapped up, so every multiplier in L is at most 1 in size. A x = b
+// is then solved by two triangular substitutions, for as many right hand sides
+// as needed, without forming A^−1.
+public class LUDecomposition {
+
+    private final double[][] lu; // L below the diagonal (its unit diagonal is implied), U on and above it
+    private final int[] pivot;   // Row i of P A is row pivot[i] of A
+    private final int pivotSign;
+    private final double norm1;  // ||A||1, for the condition estimate
+
+    public LUDecomposition(Matrix input) {
+        int n = input.numDataPoints();
+        if (input.numFeatures() != n) {
+            throw new IllegalArgumentException("Matrix is not square.");
+        }
+        this.lu = input.getMatrix();
+        this.norm1 = ConditionEstimator.norm1(this.lu, n);
+        this.pivot = new int[n];
+        for (int i = 0; i < n; i++) {
+            this.pivot[i] = i;
+        }
+
+        int sign = 1;
+        Kernels kernels = Kernels.get();
+        for (int k = 0; k < n; k++) {
+            int p = k;
+            for (int i = k + 1; i < n; i++) {
+                if (Math.abs(this.lu[i][k]) > Math.abs(this.lu[p][k])) {
+                    p = i;
+                }
+            }
+            if (p != k) {
+                double[] row = this.lu[p];
+                this.lu[p] = this.lu[k];
+                this.lu[k] = row;
+                int index = this.pivot[p];
+                this.pivot[p] = this.pivot[k];
+                this.pivot[k] = index;
+                sign = -sign;
+            }
+
+            double[] pivotRow = this.lu[k];
+            if (pivotRow[k] != 0.0) {
+                for (int i = k + 1; i < n; i++) {
+                    double[] row = this.lu[i];
+                    row[k] /= pivotRow[k];
+                    kernels.axpy(-row[k], pivotRow, k + 1, row, k + 1, n - k - 1);
+                }
+            }
+        }
+        this.pivotSign = sign;
+    }
+
+    public boolean isSingular() {
+        for (int k = 0; k < this.lu.length; k++) {
+            if (this.lu[k][k] == 0.0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public double determinant() {
+        double result = this.pivotSign;
+        for (int k = 0; k < this.lu.length; k++) {
+            result *= this.lu[k][k];
+        }
+        return result;
+    }
+
+    // An estimate of ||A||1 ||A^−1||1, or infinity if A is singular. Solutions
+    // of A x = b can lose about log10 of it in significant digits.
+    public double conditionEstimate() {
+        if (this.isSingular()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        int n = this.lu.length;
+        return this.norm1 * ConditionEstimator.inverseNorm1(n, this::solveInPlace, this::solveTransposeInPlace);
+    }
+
+    // Returns x such that A x = b.
+    public Vector solve(Vector b) {
+        int n = this.lu.length;
+        if (b.length() != n) {
+            throw new IllegalArgumentException("Vector length does not match the matrix.");
+        }
+        this.checkNonsingular();
+        double[] x = b.getVectorComponents();
+        this.solveInPlace(x);
+        return Vector.wrap(x);
+    }
+
+    // Returns X such that A X = B, reusing the factorization for every column of B.
+    public Matrix solve(Matrix b) {
+        int n = this.lu.length;
+        if (b.numDataPoints() != n) {
+            throw new IllegalArgumentException("Dimensions of matrices do not match.");
+        }
+        this.checkNonsingular();
+        int columns = b.numFeatures();
+        Matrix result = new Matrix(n, columns);
+        double[] x = result.getData();
+        double[] values = b.getData();
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(values, this.pivot[i] * columns, x, i * columns, columns);
+        }
+
+        // Whole rows of X at a time, so the inner loops run along memory.
+        Kernels kernels = Kernels.get();
+        for (int k = 0; k < n; k++) { // Forward substitution: L Y = P B
+            for (int i = k + 1; i < n; i++) {
+                kernels.axpy(-this.lu[i][k], x, k * columns, x, i * columns, columns);
+            }
+        }
+        for (int k = n - 1; k >= 0; k--) { // Back substitution: U X = Y
+            double diagonal = this.lu[k][k];
+            for (int j = k * columns; j < (k + 1) * columns; j++) {
+                x[j] /= diagonal;
+            }
+            for (int i = 0; i < k; i++) {
+                kernels.axpy(-this.lu[i][k], x, k * columns, x, i * columns, columns);
+            }
+        }
+        return result;
+    }
+
+    // A^−1, by solving A X = I. Prefer solve() when A^−1 is only used to multiply.
+    public Matrix inverse() {
+        int n = this.lu.length;
+        Matrix identity = new Matrix(n, n);
+        for (int i = 0; i < n; i++) {
+            identity.setAt(i, i, 1.0);
+        }
+        return this.solve(identity);
+    }
+
+    private void checkNonsingular() {
+        if (this.isSingular()) {
+            throw new IllegalArgumentException("Matrix is singular.");
+        }
+    }
+
+    // x ← A^−1 x
+    private void solveInPlace(double[] x) {
+        int n = this.lu.length;
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            y[i] = x[this.pivot[i]];
+        }
+        for (int i = 0; i < n; i++) { // L y = P x
+            double[] row = this.lu[i];
+            double sum = y[i];
+            for (int k = 0; k < i; k++) {
+                sum -= row[k] * y[k];
+            }
+            y[i] = sum;
+        }
+        for (int i = n - 1; i >= 0; i--) { // U x = y
+            double[] row = this.lu[i];
+            double sum = y[i];
+            for (int k = i + 1; k < n; k++) {
+                sum -= row[k] * y[k];
+            }
+            y[i] = sum / row[i];
+        }
+        System.arraycopy(y, 0, x, 0, n);
+    }
+
+    // x ← A^−T x, from AT = UT LT P
+    private void solveTransposeInPlace(double[] x) {
+        int n = this.lu.length;
+        for (int i = 0; i < n; i++) { // UT z = x
+            double sum = x[i];
+            for (int k = 0; k < i; k++) {
+                sum -= this.lu[k][i] * x[k];
+            }
+            x[i] = sum / this.lu[i][i];
+        }
+        for (int i = n - 1; i >= 0; i--) { // LT w = z
+            double sum = x[i];
+            for (int k = i + 1; k < n; k++) {
+                sum -= this.lu[k][i] * x[k];
+            }
+            x[i] = sum;
+        }
+        double[] w = x.clone();
+        for (int i = 0; i < n; i++) { // x = PT w
+            x[this.pivot[i]] = w[i];
+        }
+    }
+}
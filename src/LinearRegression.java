@@ -2,87 +2,14 @@
 import java.io.Console;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 
 public class LinearRegression {
 
-    private class FeatureStats {
-
-        private final String field;
-        private double min;
-        private double max;
-        private double mean;
-        private double stdDev;
-        private double numValues;
-        private double sum;
-
-        private double sumOfXMinusXBarSquared;
-
-        public FeatureStats(String field) {
-            this.field = field;
-            this.min = Double.MAX_VALUE;
-            this.max = Double.MIN_VALUE;
-        }
-
-        public void update(double newValue) {
-            if (Double.isNaN(newValue)) {
-                return;
-            }
-            this.numValues++;
-            this.sum += newValue;
-            if (newValue < this.min) {
-                this.min = newValue;
-            } else if (newValue > this.max) {
-                this.max = newValue;
-            }
-            this.mean = this.sum / this.numValues;
-            //System.out.println("newValue: " + newValue);
-            //System.out.println("mean: " + this.mean);
-            this.sumOfXMinusXBarSquared += Math.pow(newValue - this.mean, 2.0);
-            this.stdDev = Math.sqrt(this.sumOfXMinusXBarSquared / this.numValues);
-        }
-
-        public double zScore(double x) {
-            if (this.stdDev == 0) {
-                return this.mean;
-            }
-
-            //System.out.println("stdDev: " + this.stdDev);
-            double result = (x - this.mean) / this.stdDev;
-            //System.out.println("zScore: " + result);
-            return result;
-        }
-
-        public String getField() {
-            return field;
-        }
-
-        public double getMin() {
-            return min;
-        }
-
-        public double getMax() {
-            return max;
-        }
-
-        public double getMean() {
-            return mean;
-        }
-
-        public double getStdDev() {
-            return stdDev;
-        }
-
-        public double getNumValues() {
-            return numValues;
-        }
-
-        @Override
-        public String toString() {
-            return this.field + " (" + this.numValues + " values): µ = " + String.format("%.2f", this.mean) + " | σ = " + String.format("%.2f", this.stdDev);
-        }
-    }
-
     public static enum Regularization {
         LASSO(1.0),
         RIDGE(2.0);
@@ -98,6 +25,15 @@ public class LinearRegression {
         }
     }
 
+    public static final long DEFAULT_SEED = 42;
+
+    private static final int NUM_FEATURES = WeatherFeatures.COUNT - 1; // Less the dummy variable
+    private static final int NUM_DIRECTIONS = 16; // Weather.Direction less MISSING
+    private static final int ONE_HOT_OFFSET = NUM_FEATURES + 1; // The one-hot weights follow w0..w24
+
+    private static final double MAX_CONDITION = 1e10; // Above this the closed form is solved by QR instead of Cholesky
+    private static final int BLOCK_SIZE = 8192; // Data points per parallel task
+
     private Matrix dataMatrix;
     private double[] weights;
     private Vector outputs;
@@ -106,32 +42,108 @@ public class LinearRegression {
 
     private final double learningRate; 
     private final double regularizationPenalty;
+    private final int threads;
+    private final boolean oneHot; // Location and wind directions as sparse one-hot features rather than ordinals
+    private int numLocations; // Locations with a one-hot weight: the LocationDictionary ids seen in training
+    private final Random random; // Shuffles streamed data points and samples missing values, so runs repeat
+
+    private double[] partialSums; // Per data point hyperplane sums reused by updateWeights
+    private double[] spareWeights; // The weights from the epoch before last, reused for the next epoch's weights
+    private final double[][] serialSums = new double[1][2];
+    private ForkJoinPool pool; // Shared by the parallel steps of a training run; created on first use
 
     private boolean skippedEpoch;
     private boolean skippedTraining;
 
     public LinearRegression(ArrayList<Weather.DataPoint> data, double learningRate, int epochs, Regularization type, double regPenalty) {
+        this(data, learningRate, epochs, type, regPenalty, 1);
+    }
+
+    public LinearRegression(ArrayList<Weather.DataPoint> data, double learningRate, int epochs, Regularization type, double regPenalty, int threads) {
+        this(learningRate, type, regPenalty, threads, false, DEFAULT_SEED);
+
+        try {
+            double[][] dataset = this.ingest(data.size(), i -> this.features(data.get(i)));
+            for (Weather.DataPoint dataPoint : data) {
+                this.outputs.append(dataPoint.rainTomorrow() ? 1.0 : 0.0);
+            }
+            this.train(dataset, epochs);
+        } finally {
+            this.shutdownPool();
+        }
+    }
+
+    public LinearRegression(WeatherFrame data, double learningRate, int epochs, Regularization type, double regPenalty) {
+        this(data, learningRate, epochs, type, regPenalty, 1);
+    }
+
+    public LinearRegression(WeatherFrame data, double learningRate, int epochs, Regularization type, double regPenalty, int threads) {
+        this(learningRate, type, regPenalty, threads, false, DEFAULT_SEED);
+
+        try {
+            double[][] dataset = this.ingest(data.size(), row -> this.features(data, row));
+            for (int row = 0; row < data.size(); row++) {
+                this.outputs.append(data.getBooleanValue(row, WeatherFrame.RAIN_TOMORROW) ? 1.0 : 0.0);
+            }
+            this.train(dataset, epochs);
+        } finally {
+            this.shutdownPool();
+        }
+    }
 
-        int NUM_FEATURES = 21;
+    // Trains by stochastic (batchSize 1) or mini-batch gradient descent on data
+    // points read from data, which is iterated once for the feature statistics
+    // and once per epoch. Only shuffleBuffer data points are held at a time, so
+    // data can be streamed from a file larger than the heap.
+    public LinearRegression(Iterable<Weather.DataPoint> data, double learningRate, int epochs, Regularization type, double regPenalty, int batchSize, int shuffleBuffer) {
+        this(data, learningRate, epochs, type, regPenalty, batchSize, shuffleBuffer, false);
+    }
+
+    // With oneHot, the location and wind directions are one-hot encoded as
+    // sparse features with a weight per category, instead of their index and
+    // heading in degrees.
+    public LinearRegression(Iterable<Weather.DataPoint> data, double learningRate, int epochs, Regularization type, double regPenalty, int batchSize, int shuffleBuffer, boolean oneHot) {
+        this(data, learningRate, epochs, type, regPenalty, batchSize, shuffleBuffer, oneHot, DEFAULT_SEED);
+    }
+
+    // seed fixes the order the shuffle buffer hands out data points.
+    public LinearRegression(Iterable<Weather.DataPoint> data, double learningRate, int epochs, Regularization type, double regPenalty, int batchSize, int shuffleBuffer, boolean oneHot, long seed) {
+        this(learningRate, type, regPenalty, 1, oneHot, seed);
+        this.train(data, epochs, Math.max(1, batchSize), Math.max(1, shuffleBuffer));
+    }
+
+    // Fits the weights in closed form by ridge regression instead of gradient
+    // descent. data is iterated once for the feature statistics and once to sum
+    // X^T X and X^T y, so memory stays O(F^2) however many data points there are.
+    public LinearRegression(Iterable<Weather.DataPoint> data, double ridgePenalty) {
+        this(data, ridgePenalty, false);
+    }
+
+    public LinearRegression(Iterable<Weather.DataPoint> data, double ridgePenalty, boolean oneHot) {
+        this(0.0, Regularization.RIDGE, ridgePenalty, 1, oneHot, DEFAULT_SEED);
+        this.collectStats(data);
+        this.weights = this.calculateWeights(data);
+        System.out.println("New weights: ");
+        System.out.println(Arrays.toString(this.weights));
+    }
+
+    private LinearRegression(double learningRate, Regularization type, double regPenalty, int threads, boolean oneHot, long seed) {
         this.q = type;
         this.learningRate = learningRate;
         this.regularizationPenalty = regPenalty;
+        this.threads = Math.max(1, threads);
+        this.oneHot = oneHot;
+        this.random = new Random(seed);
 
         this.skippedEpoch = false;
         this.skippedTraining = false;
-        this.featureStats = new FeatureStats[NUM_FEATURES + 1]; // +1 for the plane constant
-        for (int i = 0; i < this.featureStats.length; i++) {
-            this.featureStats[i] = new FeatureStats(Weather.fields[i]);
-        }
+        this.featureStats = newFeatureStats();
 
         this.outputs = new Vector();
+    }
 
-        double[][] dataset = new double[data.size()][NUM_FEATURES + 1];
-        for (int i = 0; i < data.size(); i++) {
-            dataset[i] = this.processDataPoint(data.get(i));
-        }
-
-        this.weights = new double[NUM_FEATURES + 1]; // Weight vector to contain weights for all 21 used features + the dummy variable at w0.
+    private void train(double[][] dataset, int epochs) {
+        this.weights = new double[NUM_FEATURES + 1]; // Weight vector to contain weights for all 24 used features + the dummy variable at w0.
         for (int i = 0; i < this.weights.length; i++) {
             this.weights[i] = 1.0;
         }
@@ -143,8 +155,10 @@ public class LinearRegression {
             this.dataMatrix.printTruncated();
         }
 
+        double[] data = this.dataMatrix.getData();
+        int numFeatures = this.dataMatrix.numFeatures();
         for (int i = 0; i < this.dataMatrix.numDataPoints(); i++) { // Replace NaNs with sampled values
-            this.dataMatrix.getMatrix()[i] = this.replaceNaNs(this.dataMatrix.getDataPoint(i));
+            this.replaceNaNs(data, i * numFeatures, numFeatures);
         }
         if (Main.DEBUG) {
             System.out.println("\nReplaced data matrix:");
@@ -184,100 +198,385 @@ public class LinearRegression {
         //}
     }
 
+    private void train(Iterable<Weather.DataPoint> data, int epochs, int batchSize, int shuffleBuffer) {
+        this.collectStats(data); // Also finds the number of one-hot locations
+        this.weights = new double[this.numWeights()];
+        for (int i = 0; i <= NUM_FEATURES; i++) {
+            this.weights[i] = 1.0;
+        }
+
+        if (Main.DEBUG) {
+            for (FeatureStats feature : this.featureStats) {
+                System.out.println(feature);
+            }
+            System.out.println("Original weights: " + Arrays.toString(this.weights));
+        }
+
+        Random random = this.random;
+        double[][] buffer = new double[shuffleBuffer][];
+        SparseVector[] bufferCategories = new SparseVector[shuffleBuffer];
+        boolean[] bufferClasses = new boolean[shuffleBuffer];
+        double[] gradient = new double[this.weights.length];
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            // Each data point waits in a buffer of shuffleBuffer points and a
+            // random one of them is trained on in its place.
+            int buffered = 0;
+            int inBatch = 0;
+            for (Weather.DataPoint dataPoint : data) {
+                double[] processed = this.normalize(this.features(dataPoint));
+                SparseVector categories = this.categories(dataPoint);
+                boolean rainTomorrow = dataPoint.rainTomorrow();
+                if (buffered < shuffleBuffer) {
+                    buffer[buffered] = processed;
+                    bufferCategories[buffered] = categories;
+                    bufferClasses[buffered++] = rainTomorrow;
+                    continue;
+                }
+                int pick = random.nextInt(shuffleBuffer);
+                this.addGradient(gradient, buffer[pick], bufferCategories[pick], bufferClasses[pick]);
+                buffer[pick] = processed;
+                bufferCategories[pick] = categories;
+                bufferClasses[pick] = rainTomorrow;
+                if (++inBatch == batchSize) {
+                    this.step(gradient, inBatch);
+                    inBatch = 0;
+                }
+            }
+            while (buffered > 0) {
+                int pick = random.nextInt(buffered--);
+                this.addGradient(gradient, buffer[pick], bufferCategories[pick], bufferClasses[pick]);
+                buffer[pick] = buffer[buffered];
+                bufferCategories[pick] = bufferCategories[buffered];
+                bufferClasses[pick] = bufferClasses[buffered];
+                buffer[buffered] = null;
+                bufferCategories[buffered] = null;
+                if (++inBatch == batchSize) {
+                    this.step(gradient, inBatch);
+                    inBatch = 0;
+                }
+            }
+            if (inBatch > 0) {
+                this.step(gradient, inBatch);
+            }
+            if (Main.DEBUG_WEIGHTS) {
+                System.out.println("Epoch #" + epoch + " : " + Arrays.toString(this.weights) + "\n");
+            }
+        }
+        System.out.println("New weights: ");
+        System.out.println(Arrays.toString(this.weights));
+    }
+
+    // First pass over streamed data: the statistics used to fill in missing
+    // values and normalize. The statistics are gathered in blocks of
+    // BLOCK_SIZE data points, as ingest() does, so they come out the same as
+    // for the data held in memory.
+    private void collectStats(Iterable<Weather.DataPoint> data) {
+        boolean empty = true;
+        int maxLocation = -1;
+        FeatureStats[] blockStats = newFeatureStats();
+        int inBlock = 0;
+        for (Weather.DataPoint dataPoint : data) {
+            double[] processed = this.features(dataPoint);
+            updateStats(blockStats, processed);
+            if (++inBlock == BLOCK_SIZE) {
+                this.mergeStats(blockStats);
+                blockStats = newFeatureStats();
+                inBlock = 0;
+            }
+            maxLocation = Math.max(maxLocation, dataPoint.locationId());
+            empty = false;
+        }
+        if (empty) {
+            throw new IllegalArgumentException("No data points to train on.");
+        }
+        this.mergeStats(blockStats);
+        this.numLocations = maxLocation + 1;
+    }
+
+    // Adds one data point's squared error gradient to gradient. The prediction
+    // is hw(x) - w0 + 0.5, so that rain (above 0.5) is exactly hw(x) > w0, the
+    // test rainTomorrow() makes.
+    //
+    // The gradient is divided by 1 + ||x||^2 (the 1 for w0), as in normalized
+    // least mean squares. A plain step of α on about 24 z-scored features
+    // moves hw(x) by α ||x||^2 times the error, which overshoots and diverges
+    // once that passes 2, as it does for single data points at α = 0.1.
+    // Normalized, any α below 2 shrinks the error of the data point stepped on.
+    private void addGradient(double[] gradient, double[] dataPoint, SparseVector categories, boolean rainTomorrow) {
+        double yj = rainTomorrow ? 1.0 : 0.0;
+        double error = yj - (this.evaluateHyperplane(dataPoint, categories) - this.weights[0] + 0.5);
+        double squaredNorm = 1.0 + Kernels.get().dot(dataPoint, 1, dataPoint, 1, dataPoint.length - 1);
+        if (categories != null) {
+            for (int k = 0; k < categories.nonZeros(); k++) {
+                squaredNorm += categories.valueAt(k) * categories.valueAt(k);
+            }
+        }
+        error /= squaredNorm;
+        gradient[0] -= error;
+        for (int i = 1; i < dataPoint.length; i++) {
+            gradient[i] += error * dataPoint[i];
+        }
+        if (categories != null) {
+            categories.axpyInto(error, gradient, ONE_HOT_OFFSET);
+        }
+    }
+
+    // wi ← wi + α (SUM(xj,i(yj − hw(xj)) / (1 + ||xj||^2)) / n − λ q |wi|^(q−1) sign(wi))
+    // for the n data points in the batch. The plane constant w0 is not
+    // regularized.
+    private void step(double[] gradient, int n) {
+        for (int i = 0; i < this.weights.length; i++) {
+            double descent = gradient[i] / n;
+            if (i > 0) {
+                double q = this.q.getValue();
+                descent -= this.regularizationPenalty * q * Math.pow(Math.abs(this.weights[i]), q - 1.0) * Math.signum(this.weights[i]);
+            }
+            this.weights[i] += this.learningRate * descent;
+            gradient[i] = 0.0;
+            if (Double.isNaN(this.weights[i]) || Double.isInfinite(this.weights[i])) {
+                throw new IllegalStateException("Gradient descent diverged: w" + i + " is " + this.weights[i]
+                        + ". Try a smaller learning rate (-learn) or penalty (-penalty).");
+            }
+        }
+    }
+
     public double[] replaceNaNs(Vector input) {
         return this.replaceNaNs(input.getVectorComponents());
     }
 
     private double[] replaceNaNs(double[] input) {
-        for (int i = 0; i < input.length; i++) {
-            if (Double.isNaN(input[i])) {
+        this.replaceNaNs(input, 0, input.length);
+        return input;
+    }
+
+    // Replaces the NaNs among the features stored at data[offset..offset+length-1].
+    private void replaceNaNs(double[] data, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (Double.isNaN(data[offset + i])) {
                 if (Main.DEBUG) {
                     System.out.println(this.featureStats[i]);
                 }
-                double replacementVal = this.sample(this.featureStats[i].mean, this.featureStats[i].stdDev);
-                input[i] = replacementVal; // Sample a value out of the probability distribution for that feature.
+                double replacementVal = this.sample(this.featureStats[i].getMean(), this.featureStats[i].getStdDev());
+                data[offset + i] = replacementVal; // Sample a value out of the probability distribution for that feature.
                 if (Main.DEBUG) {
-                    System.out.println("----------REPLACING " + this.dataMatrix.getAt(i, i) + " with " + replacementVal + "------------");
+                    System.out.println("----------REPLACING " + WeatherFeatures.NAMES[i] + " with " + replacementVal + "------------");
                 }
             }
         }
-        return input;
     }
 
     public double[] processDataPoint(Weather.DataPoint dataPoint) {
-        double[] processed = {1.0, // Dummy variable xj0
-            dataPoint.date().toNumber(),
-            this.getLocationNumber(dataPoint.location()),
-            dataPoint.minTemperature(),
-            dataPoint.maxTemperature(),
-            dataPoint.rainfall(),
-            dataPoint.hoursOfSunshine(),
-            dataPoint.evaporationRate(),
-            dataPoint.windGustSpeed(),
-            dataPoint.windGustDirection().heading(),
-            dataPoint.morningTemperature(),
-            dataPoint.morningHumidity(),
-            dataPoint.morningPressure(),
-            dataPoint.morningCloudCover(),
-            dataPoint.morningWindSpeed(),
-            dataPoint.morningWindDirection().heading(),
-            dataPoint.afternoonTemperature(),
-            dataPoint.afternoonHumidity(),
-            dataPoint.afternoonPressure(),
-            dataPoint.afternoonCloudCover(),
-            dataPoint.afternoonWindSpeed(),
-            dataPoint.afternoonWindDirection().heading()
-        };
+        return this.record(this.features(dataPoint), dataPoint.rainTomorrow());
+    }
 
-        for (int i = 0; i < processed.length; i++) {
-            this.featureStats[i].update(processed[i]);
+    private double[] features(Weather.DataPoint dataPoint) {
+        double[] processed = WeatherFeatures.of(dataPoint);
+        if (this.oneHot) { // Given by categories() instead
+            processed[2] = processed[9] = processed[15] = processed[21] = 0.0;
         }
-        this.outputs.append(dataPoint.rainTomorrow() ? 1.0 : 0.0); // Add the answer to the outputs vector (1 for rain, 0 for no rain)
         return processed;
     }
 
-    private void normalize() {
-        for (int i = 0; i < this.dataMatrix.numDataPoints(); i++) {
-            for (int j = 0; j < this.dataMatrix.numFeatures(); j++) { // Should be 0-19
-                double zScore = this.featureStats[j].zScore(this.dataMatrix.getAt(i, j));
-                this.dataMatrix.setAt(i, j, zScore);
+    // The one-hot location and wind directions of dataPoint, or null without
+    // oneHot: the location, then the wind gust, morning and afternoon wind
+    // directions. Locations not seen in training and missing directions have
+    // no entry.
+    private SparseVector categories(Weather.DataPoint dataPoint) {
+        if (!this.oneHot) {
+            return null;
+        }
+        int[] indices = new int[4];
+        int count = 0;
+        int location = dataPoint.locationId();
+        if (location >= 0 && location < this.numLocations) {
+            indices[count++] = location;
+        }
+        Weather.Direction[] directions = {dataPoint.windGustDirection(), dataPoint.morningWindDirection(), dataPoint.afternoonWindDirection()};
+        for (int i = 0; i < directions.length; i++) {
+            if (directions[i] != Weather.Direction.MISSING) {
+                indices[count++] = this.numLocations + i * NUM_DIRECTIONS + directions[i].ordinal();
+            }
+        }
+        return SparseVector.ones(this.numLocations + 3 * NUM_DIRECTIONS, Arrays.copyOf(indices, count));
+    }
+
+    private int numWeights() {
+        return NUM_FEATURES + 1 + (this.oneHot ? this.numLocations + 3 * NUM_DIRECTIONS : 0);
+    }
+
+    // Same features as processDataPoint, read from the columns of a WeatherFrame.
+    public double[] processRow(WeatherFrame frame, int row) {
+        return this.record(this.features(frame, row), frame.getBooleanValue(row, WeatherFrame.RAIN_TOMORROW));
+    }
+
+    private double[] features(WeatherFrame frame, int row) {
+        return WeatherFeatures.of(frame, row);
+    }
+
+    private double[] record(double[] processed, boolean rainTomorrow) {
+        updateStats(this.featureStats, processed);
+        this.outputs.append(rainTomorrow ? 1.0 : 0.0); // Add the answer to the outputs vector (1 for rain, 0 for no rain)
+        return processed;
+    }
+
+    // The features of data points 0..count-1, with their statistics added to
+    // featureStats. The data points are split into fixed blocks of BLOCK_SIZE
+    // whose statistics are gathered separately, in parallel with more than
+    // one thread, and merged in block order, so the statistics do not depend
+    // on the number of threads.
+    private double[][] ingest(int count, IntFunction<double[]> features) {
+        double[][] dataset = new double[count][];
+        FeatureStats[][] blockStats = new FeatureStats[(count + BLOCK_SIZE - 1) / BLOCK_SIZE][];
+        this.forBlocks(count, (block, from, to) -> {
+            FeatureStats[] stats = newFeatureStats();
+            for (int i = from; i < to; i++) {
+                dataset[i] = features.apply(i);
+                updateStats(stats, dataset[i]);
+            }
+            blockStats[block] = stats;
+        }, "reading data points");
+        for (FeatureStats[] stats : blockStats) {
+            this.mergeStats(stats);
+        }
+        return dataset;
+    }
+
+    // Data points from..to-1, the block'th run of BLOCK_SIZE.
+    private interface Block {
+
+        void apply(int block, int from, int to);
+    }
+
+    // Runs block over data points 0..count-1 in blocks of BLOCK_SIZE, on the
+    // pool when there is more than one thread and more than one block.
+    private void forBlocks(int count, Block block, String activity) {
+        int numBlocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (this.threads > 1 && numBlocks > 1) {
+            List<Callable<Void>> tasks = new ArrayList<>(numBlocks);
+            for (int b = 0; b < numBlocks; b++) {
+                final int index = b;
+                tasks.add(() -> {
+                    block.apply(index, index * BLOCK_SIZE, Math.min(count, (index + 1) * BLOCK_SIZE));
+                    return null;
+                });
+            }
+            ParallelTasks.invokeAll(this.pool(), tasks, activity);
+        } else {
+            for (int b = 0; b < numBlocks; b++) {
+                block.apply(b, b * BLOCK_SIZE, Math.min(count, (b + 1) * BLOCK_SIZE));
             }
         }
     }
 
-    private int getLocationNumber(String location) {
-        return Arrays.asList(Weather.locations).indexOf(location);
+    private ForkJoinPool pool() {
+        if (this.pool == null) {
+            this.pool = new ForkJoinPool(this.threads);
+        }
+        return this.pool;
+    }
+
+    private void shutdownPool() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+            this.pool = null;
+        }
+    }
+
+    private static FeatureStats[] newFeatureStats() {
+        FeatureStats[] stats = new FeatureStats[NUM_FEATURES + 1]; // +1 for the plane constant
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new FeatureStats(WeatherFeatures.NAMES[i]);
+        }
+        return stats;
+    }
+
+    private static void updateStats(FeatureStats[] stats, double[] processed) {
+        for (int i = 0; i < processed.length; i++) {
+            stats[i].update(processed[i]);
+        }
+    }
+
+    private void mergeStats(FeatureStats[] stats) {
+        for (int i = 0; i < stats.length; i++) {
+            this.featureStats[i].merge(stats[i]);
+        }
+    }
+
+    // Fills in missing values and replaces every feature by its z-score, the
+    // way train() prepares each row of the data matrix.
+    private double[] normalize(double[] processed) {
+        this.replaceNaNs(processed);
+        for (int j = 0; j < processed.length; j++) {
+            processed[j] = this.featureStats[j].zScore(processed[j]);
+        }
+        return processed;
+    }
+
+    private void normalize() {
+        double[] means = new double[this.featureStats.length];
+        double[] stdDevs = new double[this.featureStats.length];
+        for (int j = 0; j < this.featureStats.length; j++) {
+            means[j] = this.featureStats[j].getMean();
+            stdDevs[j] = this.featureStats[j].getStdDev();
+        }
+        Kernels kernels = Kernels.get();
+        double[] data = this.dataMatrix.getData();
+        int numFeatures = this.dataMatrix.numFeatures();
+        this.forBlocks(this.dataMatrix.numDataPoints(), (block, from, to) -> {
+            for (int i = from; i < to; i++) {
+                kernels.zScore(data, i * numFeatures, means, stdDevs, numFeatures);
+            }
+        }, "normalizing data points");
     }
 
     // wi ← wi + α SUM(xj,i(yj − hw(xj))^2  + λ SUM(|wj|^q)
+    // The weights are replaced as soon as w0 is updated, so the hyperplane for
+    // wi only sums the terms for w1..wi-1 updated earlier in this epoch. Those
+    // partial sums are kept per data point and extended by one term per weight,
+    // which makes an epoch a single pass over the data for each weight instead
+    // of re-evaluating (and copying) every data point for every weight.
+    //
+    // With more than one thread the data points are split into fixed blocks of
+    // BLOCK_SIZE, summed in parallel and the block sums added in block order, so
+    // the weights do not depend on scheduling or on the number of threads. They
+    // can differ in the last bits from the single threaded sums, which run
+    // straight through the data points.
     public void updateWeights() {
         Console console = System.console();
-        double[] newWeights = new double[this.weights.length];
+        int numDataPoints = this.dataMatrix.numDataPoints();
+        if (this.partialSums == null || this.partialSums.length != numDataPoints) {
+            this.partialSums = new double[numDataPoints];
+        }
+        int numBlocks = (numDataPoints + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        boolean parallel = this.threads > 1 && numBlocks > 1 && !Main.DEBUG_WEIGHTS;
+        double[][] blockSums = parallel ? new double[numBlocks][2] : this.serialSums;
+        ForkJoinPool pool = parallel ? this.pool() : null;
+        double[] newWeights = this.spareWeights;
+        if (newWeights == null || newWeights.length != this.weights.length) {
+            newWeights = new double[this.weights.length];
+        } else {
+            Arrays.fill(newWeights, 0.0);
+        }
+        this.spareWeights = this.weights;
         for (int i = 0; i < this.weights.length; i++) { // For each feature's weight (skip w0)
-            if (Main.DEBUG_WEIGHTS && !this.skippedEpoch && !this.skippedTraining) {
+            boolean debug = Main.DEBUG_WEIGHTS && !this.skippedEpoch && !this.skippedTraining;
+            if (debug) {
                 System.out.println("Updating the weight for " + this.featureStats[i].getField());
             }
             double errorSum = 0.0;
             double regularizationSum = 0.0;
-            for (int j = 0; j < this.dataMatrix.numDataPoints(); j++) { // For each data point for that feature
-                double hW = this.evaluateHyperplane(this.dataMatrix.getDataPoint(j));
-                double yj = this.outputs.get(j);
-                double xji = this.dataMatrix.getAt(j, i);
-                if (Double.isNaN(hW) || Double.isNaN(yj) || Double.isNaN(xji)) {
-                    throw new IllegalArgumentException("NaN while updating weights");
-                }
-                //errorSum += Math.pow(((yj - hW) * xji), 2.0); // Squared error (1)
-                errorSum += ((yj - hW) * xji);
-                regularizationSum += Math.pow(Math.abs(this.weights[i]), this.q.getValue()); // Regularization (2)
-                if (Main.DEBUG_WEIGHTS && !this.skippedEpoch && !this.skippedTraining) {
-                    System.out.println("hW = " + hW);
-                    System.out.println("yj = " + yj);
-                    System.out.println("xji = " + xji);
-                    System.out.println("(yj - hW) * xji = " + (yj - hW) * xji);
-                    System.out.println("---------------");
+            if (parallel) {
+                this.sumBlocks(pool, i, blockSums);
+                for (double[] sums : blockSums) {
+                    errorSum += sums[0];
+                    regularizationSum += sums[1];
                 }
+            } else {
+                this.sum(i, 0, numDataPoints, blockSums[0], debug);
+                errorSum = blockSums[0][0];
+                regularizationSum = blockSums[0][1];
             }
-            if (Main.DEBUG_WEIGHTS && !this.skippedEpoch && !this.skippedTraining) {
+            if (debug) {
                 System.out.println("Summation: " + errorSum);
                 System.out.println("(" + this.featureStats[i].getField() + "): " + "Updating " + this.weights[i] + " to " + (this.weights[i] + (this.learningRate * errorSum)) + "\n\n");
             }
@@ -317,6 +616,61 @@ public class LinearRegression {
         }
     }
 
+    // Adds the error and regularization terms of data points from..to-1 for
+    // weight i into sums[0] and sums[1], extending their partial hyperplane sums.
+    private void sum(int i, int from, int to, double[] sums, boolean debug) {
+        double[] data = this.dataMatrix.getData();
+        int numFeatures = this.dataMatrix.numFeatures();
+        double[] partialSums = this.partialSums;
+        double[] weights = this.weights;
+        double regularization = Math.pow(Math.abs(weights[i]), this.q.getValue());
+        double errorSum = 0.0;
+        double regularizationSum = 0.0;
+        for (int j = from; j < to; j++) { // For each data point for that feature
+            int row = j * numFeatures;
+            double hW;
+            if (i == 0) {
+                hW = this.evaluateHyperplane(data, row, numFeatures);
+            } else if (i == 1) {
+                hW = partialSums[j] = 0.0;
+            } else {
+                hW = partialSums[j] += data[row + i - 1] * weights[i - 1];
+            }
+            double yj = this.outputs.get(j);
+            double xji = data[row + i];
+            if (Double.isNaN(hW) || Double.isNaN(yj) || Double.isNaN(xji)) {
+                throw new IllegalArgumentException("NaN while updating weights");
+            }
+            //errorSum += Math.pow(((yj - hW) * xji), 2.0); // Squared error (1)
+            errorSum += ((yj - hW) * xji);
+            regularizationSum += regularization; // Regularization (2)
+            if (debug) {
+                System.out.println("hW = " + hW);
+                System.out.println("yj = " + yj);
+                System.out.println("xji = " + xji);
+                System.out.println("(yj - hW) * xji = " + (yj - hW) * xji);
+                System.out.println("---------------");
+            }
+        }
+        sums[0] = errorSum;
+        sums[1] = regularizationSum;
+    }
+
+    private void sumBlocks(ForkJoinPool pool, int i, double[][] blockSums) {
+        int numDataPoints = this.dataMatrix.numDataPoints();
+        List<Callable<Void>> tasks = new ArrayList<>(blockSums.length);
+        for (int block = 0; block < blockSums.length; block++) {
+            final int from = block * BLOCK_SIZE;
+            final int to = Math.min(numDataPoints, from + BLOCK_SIZE);
+            final double[] sums = blockSums[block];
+            tasks.add(() -> {
+                this.sum(i, from, to, sums, false);
+                return null;
+            });
+        }
+        ParallelTasks.invokeAll(pool, tasks, "updating weights");
+    }
+
     private static String getLine(Console console) {
         try {
             return console.readLine("Next weight?: ").trim();
@@ -335,18 +689,31 @@ public class LinearRegression {
         return getArgument(line, 0);
     }
 
-    private double evaluateHyperplane(Vector input) {
-        return this.evaluateHyperplane(input.getVectorComponents());
+    private double evaluateHyperplane(double[] input) {
+        return this.evaluateHyperplane(input, 0, input.length);
     }
 
-    private double evaluateHyperplane(double[] input) {
-        double result = 0.0;
-        for (int i = 1; i < input.length; i++) {
-            if (Double.isNaN(input[i])) {
+    // The hyperplane for dense features and one-hot categories (null for none).
+    private double evaluateHyperplane(double[] input, SparseVector categories) {
+        double result = this.evaluateHyperplane(input);
+        return categories == null ? result : result + categories.dot(this.weights, ONE_HOT_OFFSET);
+    }
+
+    // The hyperplane for the features stored at input[offset..offset+length-1].
+    // A NaN result means a feature or weight was NaN; the loop below then skips
+    // the NaN features.
+    private double evaluateHyperplane(double[] input, int offset, int length) {
+        double result = Kernels.get().dot(input, offset + 1, this.weights, 1, length - 1);
+        if (!Double.isNaN(result)) {
+            return result;
+        }
+        result = 0.0;
+        for (int i = 1; i < length; i++) {
+            if (Double.isNaN(input[offset + i])) {
                 System.out.println("Got a NaN");
                 continue;
             }
-            double inputAt = input[i];
+            double inputAt = input[offset + i];
             result += inputAt * this.weights[i];
         }
         return result;
@@ -359,7 +726,7 @@ public class LinearRegression {
         } else if (Double.isInfinite(stdDev) || Double.isNaN(stdDev)) {
             throw new IllegalArgumentException("Standard deviation cannot be " + stdDev);
         }
-        Random rand = new Random(); //reuse this if you are generating many
+        Random rand = this.random;
         double u1 = 1.0 - rand.nextDouble(); //uniform(0,1] random doubles
         double u2 = 1.0 - rand.nextDouble();
         double randStdNormal = Math.sqrt(-2.0 * Math.log(u1)) * Math.sin(2.0 * Math.PI * u2); //random normal (0,1)
@@ -367,20 +734,18 @@ public class LinearRegression {
         return randNormal;
     }
 
+    // dataPoint is normalized the way the training rows were, and is not added
+    // to their statistics, so the hyperplane sees it on the same scale.
     public boolean rainTomorrow(Weather.DataPoint dataPoint) {
-        return this.rainTomorrow(new Vector(this.processDataPoint(dataPoint)));
+        return this.rainTomorrow(Vector.wrap(this.normalize(this.features(dataPoint))), this.categories(dataPoint));
     }
 
-    private boolean rainTomorrow(Vector dataPoint) {
+    private boolean rainTomorrow(Vector dataPoint, SparseVector categories) {
         double[] replaced = this.replaceNaNs(dataPoint);
         if (Main.DEBUG) {
             System.out.println("Evaluating data point (length " + replaced.length + "): " + Arrays.toString(replaced) + "\n");
         }
-        Vector knownPoint = this.dataMatrix.getDataPoint(0);
-        boolean knownPointClass = this.outputs.get(0) == 1.0; // True if the known point was of class "rain"
-        boolean testPointBiggerThanPlaneConstant = this.evaluateHyperplane(replaced) > this.weights[0];
-        boolean knownPointBiggerThanPlaneConstant = this.evaluateHyperplane(knownPoint) > this.weights[0];
-        return testPointBiggerThanPlaneConstant ^ knownPointBiggerThanPlaneConstant ? !knownPointClass : knownPointClass; // If on same side of hyperplane, return the class of that knownPoint.
+        return this.evaluateHyperplane(replaced, categories) > this.weights[0]; // hw leaves out w0
 
         /*
         Vector normal = new Vector(weights); // Normal vector is given by the coefficients of the plane in normal form, which are just the entries in the weights array.
@@ -393,19 +758,73 @@ public class LinearRegression {
          */
     }
 
-    // DEPRECATED
-    // w∗=(XT X)^(−1) XT y
-    // The first component of this weight vector is the plane constant D.
-    private double[] calculateWeights() {
-        Matrix transposed = dataMatrix.transpose();
-        Matrix mat = transposed.times(dataMatrix);
-        mat = mat.invert();
-        mat = mat.times(transposed);
-        double[] result = mat.times(outputs).getVectorComponents();
-        double[] returnable = new double[result.length];
-        for (int i = 0; i < result.length; i++) {
-            //returnable[i] = result[i].doubleValue();
+    // w∗ = (XT X + λI)^(−1) XT y, solved by Cholesky decomposition of XT X + λI,
+    // or QR decomposition when that is too badly conditioned for Cholesky.
+    // XT X and XT y are summed one data point at a time, so X is never built.
+    // The dummy variable xj0 is always 1 after normalizing, which makes w0 the
+    // intercept; it is not regularized. rainTomorrow() tests hw(x) > w0 with
+    // hw leaving out w0, so w0 is stored as 0.5 − intercept to put the
+    // decision boundary at a prediction of 0.5.
+    private double[] calculateWeights(Iterable<Weather.DataPoint> data) {
+        int n = this.numWeights();
+        double[][] gram = new double[n][n];
+        double[] moments = new double[n];
+        for (Weather.DataPoint dataPoint : data) {
+            double[] x = this.normalize(this.features(dataPoint));
+            double y = dataPoint.rainTomorrow() ? 1.0 : 0.0;
+            for (int i = 0; i < x.length; i++) {
+                double xi = x[i];
+                double[] row = gram[i];
+                for (int j = 0; j <= i; j++) {
+                    row[j] += xi * x[j];
+                }
+                moments[i] += xi * y;
+            }
+            SparseVector categories = this.categories(dataPoint);
+            if (categories != null) {
+                // One-hot rows come after the dense ones, so only their products
+                // with the dense features and with earlier categories are summed.
+                for (int k = 0; k < categories.nonZeros(); k++) {
+                    double value = categories.valueAt(k);
+                    double[] row = gram[ONE_HOT_OFFSET + categories.indexAt(k)];
+                    for (int j = 0; j < x.length; j++) {
+                        row[j] += value * x[j];
+                    }
+                    for (int l = 0; l <= k; l++) {
+                        row[ONE_HOT_OFFSET + categories.indexAt(l)] += value * categories.valueAt(l);
+                    }
+                    moments[ONE_HOT_OFFSET + categories.indexAt(k)] += value * y;
+                }
+            }
+        }
+        for (int i = 1; i < n; i++) {
+            gram[i][i] += this.regularizationPenalty;
+            for (int j = 0; j < i; j++) {
+                gram[j][i] = gram[i][j];
+            }
+        }
+
+        Matrix a = new Matrix(gram);
+        Vector b = Vector.wrap(moments);
+        double[] result = null;
+        try {
+            CholeskyDecomposition cholesky = new CholeskyDecomposition(a);
+            if (cholesky.conditionEstimate() < MAX_CONDITION) {
+                result = cholesky.solve(b).getVectorComponents();
+            }
+        } catch (IllegalArgumentException e) {
+            // Not positive definite: some features are linear combinations of others
+        }
+        if (result == null) {
+            // Collinear features, such as the same reading taken twice, would
+            // make Cholesky divide by rounding errors. QR with column pivoting
+            // finds them and gives them a weight of 0 instead.
+            QRDecomposition qr = new QRDecomposition(a);
+            System.out.println("XT X + penalty I is ill-conditioned (rank " + qr.rank() + " of " + n
+                    + "), solving by QR decomposition. A larger ridge penalty would help.");
+            result = qr.solve(b).getVectorComponents();
         }
+        result[0] = 0.5 - result[0];
         return result;
     }
 
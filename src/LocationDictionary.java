@@ -0,0 +1,158 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Every location name seen so far, each with a small id: the names in
+// Weather.locations first, in that order, then any other station as it turns
+// up. Data points and frames keep the id instead of the name, and each name is
+// one shared String.
+//
+// Lookups are open addressed by String.hashCode() and can read a name straight
+// from a parser's char[] or ByteBuffer without building a String. The table is
+// never changed in place: adding a name publishes a new one, so lookups need
+// no locking and parallel readers can add stations safely. Readers that want
+// ids in file order whatever the thread timing look names up with find() and
+// add the new ones themselves, in order.
+public final class LocationDictionary {
+
+    public static final int MISSING = -1;
+    private static final int MAX_LOCATIONS = Short.MAX_VALUE + 1; // Ids are stored in shorts
+
+    private static final class Table {
+
+        private final String[] names; // Indexed by id
+        private final int[] slots;    // id + 1 of the name hashed there, or 0 for an empty slot
+
+        private Table(String[] names) {
+            this.names = names;
+            int capacity = 64;
+            while (capacity < names.length * 2) {
+                capacity *= 2;
+            }
+            this.slots = new int[capacity];
+            for (int id = 0; id < names.length; id++) {
+                int slot = names[id].hashCode() & (capacity - 1);
+                while (this.slots[slot] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                this.slots[slot] = id + 1;
+            }
+        }
+    }
+
+    private static volatile Table table = new Table(Weather.locations.clone());
+
+    private LocationDictionary() {
+    }
+
+    // The id of name, adding it if it is new. Null is MISSING.
+    public static int id(String name) {
+        if (name == null) {
+            return MISSING;
+        }
+        int id = find(name);
+        return id != MISSING ? id : add(name);
+    }
+
+    // The id of name, or MISSING if it has not been added.
+    public static int find(String name) {
+        Table current = table;
+        int mask = current.slots.length - 1;
+        for (int slot = name.hashCode() & mask; current.slots[slot] != 0; slot = (slot + 1) & mask) {
+            String candidate = current.names[current.slots[slot] - 1];
+            if (candidate == name || candidate.equals(name)) {
+                return current.slots[slot] - 1;
+            }
+        }
+        return MISSING;
+    }
+
+    // The id of the name in text[offset..offset+length-1], adding it if it is new.
+    public static int id(char[] text, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + text[i];
+        }
+        Table current = table;
+        int mask = current.slots.length - 1;
+        for (int slot = hash & mask; current.slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (matches(current.names[current.slots[slot] - 1], text, offset, length)) {
+                return current.slots[slot] - 1;
+            }
+        }
+        return add(new String(text, offset, length));
+    }
+
+    // The same for bytes. Only ASCII names are matched in place; others are
+    // decoded as FieldParser.string() does and looked up as a String.
+    public static int id(ByteBuffer text, int offset, int length) {
+        int id = find(text, offset, length);
+        return id != MISSING ? id : id(FieldParser.string(text, offset, length));
+    }
+
+    // The id of the name in text[offset..offset+length-1], or MISSING if it has
+    // not been added.
+    public static int find(ByteBuffer text, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + (text.get(i) & 0xff);
+        }
+        Table current = table;
+        int mask = current.slots.length - 1;
+        for (int slot = hash & mask; current.slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (matches(current.names[current.slots[slot] - 1], text, offset, length)) {
+                return current.slots[slot] - 1;
+            }
+        }
+        return find(FieldParser.string(text, offset, length));
+    }
+
+    // The name with the given id, or null for MISSING.
+    public static String name(int id) {
+        return id == MISSING ? null : table.names[id];
+    }
+
+    // The number of ids given out so far; ids run from 0 to size() - 1.
+    public static int size() {
+        return table.names.length;
+    }
+
+    private static synchronized int add(String name) {
+        Table current = table;
+        for (int id = Weather.locations.length; id < current.names.length; id++) {
+            if (current.names[id].equals(name)) { // Added by another thread since the lookup
+                return id;
+            }
+        }
+        if (current.names.length == MAX_LOCATIONS) {
+            throw new IllegalArgumentException("Too many locations: " + name);
+        }
+        String[] names = Arrays.copyOf(current.names, current.names.length + 1);
+        names[current.names.length] = name;
+        table = new Table(names);
+        return current.names.length;
+    }
+
+    private static boolean matches(String value, char[] text, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text[offset + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String value, ByteBuffer text, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.get(offset + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -2,6 +2,7 @@
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
 
@@ -13,10 +14,23 @@ public class Main {
     private static double learningRate = 0.1;
     private static double regularizationPenalty = 0.8;
     private static LinearRegression.Regularization regularizationType = LinearRegression.Regularization.LASSO;
+    private static boolean memoryMapped = false;
+    private static int ingestThreads = 1;
+    private static boolean useSnapshot = false;
+    private static int trainingThreads = 1;
+    private static boolean streaming = false;
+    private static int batchSize = 1;
+    private static int shuffleBuffer = 1024;
+    private static boolean closedForm = false;
+    private static boolean oneHot = false;
+    private static boolean tree = false;
+    private static int forestSize = 0;
+    private static boolean boost = false;
 
     public static void main(String[] args) {
         ArrayList<Weather.DataPoint> dataset = new ArrayList<>();
         String filename = "weather.csv";
+        List<String> streamingOptions = new ArrayList<>(); // Given on the command line, for the warnings below
         // Read the data files.
         for (int i = 0; i < args.length; i++) {
             String arg = args[i];
@@ -28,6 +42,16 @@ public class Main {
                     case "-debug-weights":
                         DEBUG_WEIGHTS = true;
                         break;
+                    case "-mmap":
+                        memoryMapped = true;
+                        break;
+                    case "-parallel":
+                        memoryMapped = true;
+                        ingestThreads = Runtime.getRuntime().availableProcessors();
+                        break;
+                    case "-snapshot":
+                        useSnapshot = true;
+                        break;
                     case "-ridge":
                         regularizationType = LinearRegression.Regularization.RIDGE;
                         break;
@@ -59,6 +83,57 @@ public class Main {
                             System.out.println("Regularization penalty not specified. Defaulting to " + regularizationPenalty);
                         }
                         break;
+                    case "-sgd":
+                        streaming = true;
+                        streamingOptions.add(arg);
+                        break;
+                    case "-closed":
+                        streaming = true;
+                        streamingOptions.add(arg);
+                        closedForm = true;
+                        break;
+                    case "-onehot":
+                        streaming = true;
+                        streamingOptions.add(arg);
+                        oneHot = true;
+                        break;
+                    case "-tree":
+                        tree = true;
+                        break;
+                    case "-forest":
+                        forestSize = RandomForest.DEFAULT_NUM_TREES;
+                        try {
+                            forestSize = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                            System.out.println("Number of trees not specified. Defaulting to " + forestSize);
+                        }
+                        break;
+                    case "-boost":
+                        boost = true;
+                        break;
+                    case "-batch":
+                        streaming = true;
+                        streamingOptions.add(arg);
+                        try {
+                            batchSize = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                            System.out.println("Batch size not specified. Defaulting to " + batchSize);
+                        }
+                        break;
+                    case "-shuffle":
+                        try {
+                            shuffleBuffer = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                            System.out.println("Shuffle buffer size not specified. Defaulting to " + shuffleBuffer);
+                        }
+                        break;
+                    case "-threads":
+                        try {
+                            trainingThreads = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                            System.out.println("Number of training threads not specified. Defaulting to " + trainingThreads);
+                        }
+                        break;
                     case "-predict":
                         try {
                             pointToPredict = Integer.parseInt(args[++i]);
@@ -78,21 +153,93 @@ public class Main {
             }
         }
 
+        // Say which options the chosen model has no use for, rather than
+        // silently training without them.
+        String treeModel = boost ? "-boost" : forestSize > 0 ? "-forest" : tree ? "-tree" : null;
+        if (treeModel != null && !streamingOptions.isEmpty()) {
+            System.err.println("Ignoring " + String.join(", ", streamingOptions) + ": " + treeModel + " trains on rows held in memory, not from a stream");
+        } else if (streaming && trainingThreads != 1) {
+            System.err.println("Ignoring -threads: linear regression from a stream (" + String.join(", ", streamingOptions) + ") trains on one thread");
+        }
+
+        WeatherFrame frame = null;
+        Iterable<Weather.DataPoint> stream = null;
         try {
-            AustraliaWeather.readDataFile(new FileReader(filename), dataset, trainSize); // Just get first 15 examples
+            if (streaming && !tree && forestSize == 0 && !boost) { // Trees are grown on rows held in memory
+                // Train straight from the file; only the point to predict is read up front.
+                stream = AustraliaWeather.streamDataFile(filename, trainSize);
+                try (FileReader reader = new FileReader(filename)) {
+                    AustraliaWeather.readDataFile(reader, dataset, pointToPredict + 1);
+                }
+            } else if (useSnapshot) {
+                frame = AustraliaWeather.loadDataFile(filename, ingestThreads);
+                if (trainSize > 0) { // As for the readers, 0 means every row
+                    frame.truncate(trainSize);
+                }
+            } else if (memoryMapped) {
+                AustraliaWeather.readMappedDataFile(filename, dataset, trainSize, ingestThreads);
+            } else {
+                AustraliaWeather.readDataFile(new FileReader(filename), dataset, trainSize); // Just get first 15 examples
+            }
 
         } catch (IOException e) {
             System.err.println("Could not read file " + filename + ": " + e.getMessage());
         }
 
-        if (DEBUG) {
-            System.out.println("Training on " + dataset.size() + " datapoints for " + epochs + " epochs");
+        if (DEBUG && stream == null) {
+            System.out.println("Training on " + (frame != null ? frame.size() : dataset.size()) + " datapoints for " + epochs + " epochs");
         }
 
-        Weather.DataPoint toEvaluate = dataset.get(pointToPredict);
+        Weather.DataPoint toEvaluate = frame != null ? frame.get(pointToPredict) : dataset.get(pointToPredict);
         System.out.println("Point to predict: " + toEvaluate + "\n");
 
-        LinearRegression prediction = new LinearRegression(dataset, learningRate, epochs, regularizationType, regularizationPenalty);
+        if (boost) {
+            WeatherFrame data = frame != null ? frame : WeatherFrame.of(dataset);
+            BinnedFeatures binned = BinnedFeatures.of(data, trainingThreads); // Shared by both models
+            GradientBoosting rain = new GradientBoosting(binned, data, GradientBoosting.Target.RAIN_TOMORROW, trainingThreads);
+            GradientBoosting rainfall = new GradientBoosting(binned, data, GradientBoosting.Target.RAINFALL_TOMORROW, trainingThreads);
+            if (DEBUG) {
+                System.out.println("Boosted: " + rain.numRounds() + " and " + rainfall.numRounds() + " rounds, held-out losses "
+                        + rain.validationLoss() + " and " + rainfall.validationLoss());
+            }
+            System.out.println("Prediction: " + (rain.rainTomorrow(toEvaluate) ? "Rain" : "No rain") + "\tAnswer: " + (toEvaluate.rainTomorrow() ? "Rain" : "No rain"));
+            System.out.println("Rainfall: " + String.format("%.1f", rainfall.predict(toEvaluate)) + " mm\tAnswer: " + toEvaluate.rainfallTomorrow() + " mm\n");
+            return;
+        }
+
+        if (forestSize > 0) {
+            RandomForest forest = new RandomForest(frame != null ? frame : WeatherFrame.of(dataset), forestSize, trainingThreads);
+            if (DEBUG) {
+                System.out.println("Forest: " + forest.numTrees() + " trees, " + forest.numNodes() + " nodes, out-of-bag error " + forest.outOfBagError());
+            }
+            System.out.println("Prediction: " + (forest.rainTomorrow(toEvaluate) ? "Rain" : "No rain") + "\tAnswer: " + (toEvaluate.rainTomorrow() ? "Rain" : "No rain" + "\n"));
+            return;
+        }
+
+        if (tree) {
+            DecisionTree decisionTree = new DecisionTree(frame != null ? frame : WeatherFrame.of(dataset),
+                    DecisionTree.DEFAULT_MAX_DEPTH, DecisionTree.DEFAULT_MIN_LEAF_SIZE, trainingThreads);
+            if (DEBUG) {
+                System.out.println("Tree: depth " + decisionTree.depth() + ", " + decisionTree.numLeaves() + " leaves");
+            }
+            System.out.println("Prediction: " + (decisionTree.rainTomorrow(toEvaluate) ? "Rain" : "No rain") + "\tAnswer: " + (toEvaluate.rainTomorrow() ? "Rain" : "No rain" + "\n"));
+            return;
+        }
+
+        LinearRegression prediction;
+        try {
+            prediction = closedForm
+                    ? new LinearRegression(stream, regularizationPenalty, oneHot)
+                    : stream != null
+                    ? new LinearRegression(stream, learningRate, epochs, regularizationType, regularizationPenalty, batchSize, shuffleBuffer, oneHot)
+                    : frame != null
+                    ? new LinearRegression(frame, learningRate, epochs, regularizationType, regularizationPenalty, trainingThreads)
+                    : new LinearRegression(dataset, learningRate, epochs, regularizationType, regularizationPenalty, trainingThreads);
+        } catch (IllegalStateException e) { // Gradient descent diverged
+            System.err.println("Could not train on " + filename + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
 
         System.out.println("Prediction: " + (prediction.rainTomorrow(toEvaluate) ? "Rain" : "No rain") + "\tAnswer: " + (toEvaluate.rainTomorrow() ? "Rain" : "No rain" + "\n"));
     }
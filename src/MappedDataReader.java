@@ -0,0 +1,376 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+// Reads weather CSV files through a memory-mapped view of the file, parsing
+// each field straight out of the mapped bytes with FieldParser. No String is
+// created for a line or a field unless the value is unusual (exponents,
+// whitespace, unknown locations) or invalid, in which case FieldParser hands
+// it to the AustraliaWeather.parse* method so results and errors are identical.
+public class MappedDataReader {
+
+    private static final int NUM_FIELDS = 24;
+    private static final long WINDOW_SIZE = 1L << 30; // Largest region mapped at once
+    private static final int CHUNKS_PER_THREAD = 4;     // Extra chunks even out uneven line lengths
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final int CHUNK_LOCATION = -2; // Location ids at or below this are chunk-local
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long windowSize;
+    private final int[] starts = new int[NUM_FIELDS];
+    private final int[] lengths = new int[NUM_FIELDS];
+
+    // Locations not in LocationDictionary, in order of first appearance, when
+    // reading one chunk of a parallel read; null otherwise.
+    private final List<String> newLocations;
+    private final Map<String, Integer> newLocationIds;
+
+    private MappedByteBuffer buffer;
+    private long bufferOffset; // File position of buffer index 0
+
+    public MappedDataReader(FileChannel channel) throws IOException {
+        this(channel, WINDOW_SIZE, null);
+    }
+
+    // Maps at most windowSize bytes at once, so tests can put lines across
+    // window boundaries without gigabyte files.
+    MappedDataReader(FileChannel channel, long windowSize) throws IOException {
+        this(channel, windowSize, null);
+    }
+
+    private MappedDataReader(FileChannel channel, long windowSize, List<String> newLocations) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        this.newLocations = newLocations;
+        this.newLocationIds = newLocations == null ? null : new HashMap<>();
+    }
+
+    public static void readDataFile(String filename, ArrayList<Weather.DataPoint> dataset, int limit) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            MappedDataReader reader = new MappedDataReader(file.getChannel());
+            reader.read(0, reader.fileSize, dataset, limit);
+        }
+    }
+
+    public static void readDataFile(String filename, WeatherFrame frame, int limit) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            MappedDataReader reader = new MappedDataReader(file.getChannel());
+            reader.read(0, reader.fileSize, frame::add, limit);
+        }
+    }
+
+    // Splits the file into byte ranges on line boundaries and parses each range
+    // on its own worker. Ranges are appended in file order, so row indices are
+    // the same as for a sequential read. With a limit, no range reads more than
+    // limit lines and ranges are appended until limit rows are in, so the rows
+    // (and any parse error met before the limit) are those of a sequential read.
+    // Locations new to LocationDictionary are numbered within each range and
+    // only added as the range is appended, so they get the ids a sequential
+    // read would give them whatever order the workers finish in.
+    public static void readDataFile(String filename, ArrayList<Weather.DataPoint> dataset, int limit, int threads) throws IOException {
+        if (threads <= 1) {
+            readDataFile(filename, dataset, limit);
+            return;
+        }
+        List<Chunk<ArrayList<Weather.DataPoint>>> chunks = readChunks(filename, threads, limit, ArrayList::new, ArrayList::add);
+        append(chunks, limit, (chunk, count) -> {
+            List<Weather.DataPoint> part = chunk.rows.subList(0, count);
+            for (Weather.DataPoint dataPoint : part) {
+                dataPoint.setLocationId(chunk.locationId(dataPoint.locationId()));
+            }
+            dataset.addAll(part);
+        });
+    }
+
+    public static void readDataFile(String filename, WeatherFrame frame, int limit, int threads) throws IOException {
+        if (threads <= 1) {
+            readDataFile(filename, frame, limit);
+            return;
+        }
+        List<Chunk<WeatherFrame>> chunks = readChunks(filename, threads, limit, WeatherFrame::new, WeatherFrame::add);
+        append(chunks, limit, (chunk, count) -> {
+            WeatherFrame part = chunk.rows;
+            part.truncate(count);
+            short[] locations = part.locationColumn(); // Missing locations are MISSING here too
+            for (int row = 0; row < count; row++) {
+                locations[row] = (short) chunk.locationId(locations[row]);
+            }
+            frame.addAll(part);
+        });
+    }
+
+    // The rows parsed from one byte range, the locations first seen in it, and
+    // the error that stopped it, if any.
+    private static final class Chunk<T> {
+
+        private final T rows;
+        private final List<String> newLocations = new ArrayList<>();
+        private int[] ids; // LocationDictionary ids of newLocations, once added
+        private int count;
+        private Exception failure;
+
+        private Chunk(T rows) {
+            this.rows = rows;
+        }
+
+        // The LocationDictionary id for a location id parsed in this chunk,
+        // adding the location the first time a chunk-local id is asked for.
+        // Called in row order, this adds new locations in file order.
+        private int locationId(int id) {
+            if (id > CHUNK_LOCATION) {
+                return id;
+            }
+            if (this.ids == null) {
+                this.ids = new int[this.newLocations.size()];
+                Arrays.fill(this.ids, LocationDictionary.MISSING);
+            }
+            int index = CHUNK_LOCATION - id;
+            if (this.ids[index] == LocationDictionary.MISSING) {
+                this.ids[index] = LocationDictionary.id(this.newLocations.get(index));
+            }
+            return this.ids[index];
+        }
+    }
+
+    private static <T> List<Chunk<T>> readChunks(String filename, int threads, int limit, Supplier<T> newPart, BiConsumer<T, Weather.DataPoint> add) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            final FileChannel channel = file.getChannel();
+            long size = channel.size();
+            int chunks = (int) Math.max(1, Math.min(threads * CHUNKS_PER_THREAD, size / MIN_CHUNK_SIZE));
+            long[] bounds = new long[chunks + 1];
+            bounds[chunks] = size;
+            for (int i = 1; i < chunks; i++) {
+                bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, size * i / chunks));
+            }
+
+            List<Callable<Chunk<T>>> tasks = new ArrayList<>();
+            for (int i = 0; i < chunks; i++) {
+                final long from = bounds[i];
+                final long to = bounds[i + 1];
+                tasks.add(() -> {
+                    Chunk<T> chunk = new Chunk<>(newPart.get());
+                    try {
+                        new MappedDataReader(channel, WINDOW_SIZE, chunk.newLocations).read(from, to, dataPoint -> {
+                            add.accept(chunk.rows, dataPoint);
+                            chunk.count++;
+                        }, limit);
+                    } catch (IOException | RuntimeException e) {
+                        chunk.failure = e; // Only reported if the rows before it are needed
+                    }
+                    return chunk;
+                });
+            }
+
+            try {
+                return ParallelTasks.run(tasks, threads, "reading " + filename);
+            } catch (IllegalStateException e) {
+                if (e.getCause() instanceof InterruptedException) { // A read that is cut short is an I/O failure
+                    throw new IOException(e.getMessage(), e.getCause());
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Hands each chunk in file order to append, up to limit rows in all
+    // (limit <= 0 for every row), then throws the first error met before the
+    // limit, as a sequential read stops at it.
+    private static <T> void append(List<Chunk<T>> chunks, int limit, ObjIntConsumer<Chunk<T>> append) throws IOException {
+        int remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+        for (Chunk<T> chunk : chunks) {
+            int count = Math.min(chunk.count, remaining);
+            append.accept(chunk, count);
+            remaining -= count;
+            if (remaining == 0) {
+                return;
+            } else if (chunk.failure instanceof IOException) {
+                throw (IOException) chunk.failure;
+            } else if (chunk.failure != null) {
+                throw (RuntimeException) chunk.failure;
+            }
+        }
+    }
+
+    // Returns the first position at or after position where a line starts,
+    // using the same terminators as BufferedReader.readLine().
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        if (position == 0 || position >= size) {
+            return Math.min(position, size);
+        }
+        long offset = position - 1; // Look at the byte before position too
+        while (offset < size) {
+            long length = Math.min(1 << 16, size - offset);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            for (int i = 0; i < length; i++) {
+                byte b = window.get(i);
+                if (b == '\n') {
+                    return offset + i + 1;
+                } else if (b == '\r') {
+                    if (i + 1 < length) {
+                        return offset + i + (window.get(i + 1) == '\n' ? 2 : 1);
+                    } else if (offset + i + 1 == size) {
+                        return size;
+                    }
+                    // Let the next window decide whether "\r\n" is split across it
+                    length = i;
+                    break;
+                }
+            }
+            offset += length;
+        }
+        return size;
+    }
+
+    // Parses every line starting in [from, to). from must be the start of a line.
+    public int read(long from, long to, ArrayList<Weather.DataPoint> dataset, int limit) throws IOException {
+        return this.read(from, to, dataset::add, limit);
+    }
+
+    public int read(long from, long to, Consumer<Weather.DataPoint> dataset, int limit) throws IOException {
+        if (limit <= 0) {
+            limit = Integer.MAX_VALUE;
+        }
+        int count = 0;
+        long position = from;
+        while (count < limit && position < to) {
+            if (this.buffer == null || position < this.bufferOffset
+                    || position - this.bufferOffset >= this.buffer.limit()) {
+                this.map(position);
+            }
+            int start = (int) (position - this.bufferOffset);
+            int end = this.findLineEnd(start);
+            if (end < 0) { // Line runs past the mapped window; remap starting at the line
+                if (this.bufferOffset == position) {
+                    throw new IOException("Line too long at offset " + position);
+                }
+                this.map(position);
+                continue;
+            }
+            dataset.accept(this.processLine(start, end));
+            count++;
+            position = this.bufferOffset + this.skipLineTerminator(end);
+        }
+        return count;
+    }
+
+    private void map(long position) throws IOException {
+        long size = Math.min(this.windowSize, this.fileSize - position);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        this.bufferOffset = position;
+    }
+
+    // Returns the index of the '\n' or '\r' ending the line, the buffer limit at
+    // end of file, or -1 if the line (or a "\r\n" pair) continues past the window.
+    private int findLineEnd(int start) {
+        int limit = this.buffer.limit();
+        boolean lastWindow = this.bufferOffset + limit == this.fileSize;
+        for (int i = start; i < limit; i++) {
+            byte b = this.buffer.get(i);
+            if (b == '\n') {
+                return i;
+            } else if (b == '\r') {
+                return i + 1 < limit || lastWindow ? i : -1;
+            }
+        }
+        return lastWindow ? limit : -1;
+    }
+
+    private int skipLineTerminator(int end) {
+        int limit = this.buffer.limit();
+        if (end < limit && this.buffer.get(end) == '\r') {
+            end++;
+        }
+        if (end < limit && this.buffer.get(end) == '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    private Weather.DataPoint processLine(int start, int end) {
+        // Split on commas the way String.split(",") does, which drops trailing empty fields.
+        int field = 0;
+        int lastNonEmpty = -1;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || this.buffer.get(i) == ',') {
+                if (field < NUM_FIELDS) {
+                    this.starts[field] = fieldStart;
+                    this.lengths[field] = i - fieldStart;
+                }
+                if (i > fieldStart) {
+                    lastNonEmpty = field;
+                }
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        if (lastNonEmpty < NUM_FIELDS - 1) {
+            throw new IllegalArgumentException("Too few fields: " + FieldParser.string(this.buffer, start, end - start));
+        }
+
+        ByteBuffer line = this.buffer;
+        int[] at = this.starts;
+        int[] length = this.lengths;
+        return new Weather.DataPoint(
+                FieldParser.parseEpochDay(line, at[0], length[0]),
+                this.newLocations == null
+                        ? FieldParser.parseLocationId(line, at[1], length[1])
+                        : this.chunkLocationId(line, at[1], length[1]),
+                FieldParser.parseTemperature(line, at[2], length[2]),
+                FieldParser.parseTemperature(line, at[3], length[3]),
+                FieldParser.parseRainfall(line, at[4], length[4]),
+                FieldParser.parseEvaporationRate(line, at[5], length[5]),
+                FieldParser.parseHoursOfSunshine(line, at[6], length[6]),
+                FieldParser.parseWindSpeed(line, at[8], length[8]),
+                FieldParser.parseWindDirection(line, at[7], length[7]),
+                FieldParser.parseTemperature(line, at[19], length[19]),
+                FieldParser.parseHumidity(line, at[13], length[13]),
+                FieldParser.parsePressure(line, at[15], length[15]),
+                FieldParser.parseCloudCover(line, at[17], length[17]),
+                FieldParser.parseWindSpeed(line, at[11], length[11]),
+                FieldParser.parseWindDirection(line, at[9], length[9]),
+                FieldParser.parseTemperature(line, at[20], length[20]),
+                FieldParser.parseHumidity(line, at[14], length[14]),
+                FieldParser.parsePressure(line, at[16], length[16]),
+                FieldParser.parseCloudCover(line, at[18], length[18]),
+                FieldParser.parseWindSpeed(line, at[12], length[12]),
+                FieldParser.parseWindDirection(line, at[10], length[10]),
+                FieldParser.parseBoolean(line, at[21], length[21]),
+                FieldParser.parseBoolean(line, at[23], length[23]),
+                FieldParser.parseRainfall(line, at[22], length[22])
+        );
+    }
+
+    // The LocationDictionary id of a known location, or else a chunk-local id
+    // (CHUNK_LOCATION - index into newLocations) that Chunk.locationId() maps
+    // once the chunk is appended.
+    private int chunkLocationId(ByteBuffer text, int offset, int length) {
+        int id = LocationDictionary.find(text, offset, length);
+        if (id != LocationDictionary.MISSING) {
+            return id;
+        }
+        String name = FieldParser.string(text, offset, length);
+        Integer index = this.newLocationIds.get(name);
+        if (index == null) {
+            index = this.newLocations.size();
+            this.newLocations.add(name);
+            this.newLocationIds.put(name, index);
+        }
+        return CHUNK_LOCATION - index;
+    }
+}
@@ -1,17 +1,86 @@
-
-// Looked at doing LU Decomposition to find inverse
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Inverses and linear systems are solved through LUDecomposition and
+// QRDecomposition, which can be kept to solve for more right hand sides.
+//
+// The values are stored row by row in one contiguous array, so a row is a run
+// of adjacent doubles and whole-matrix loops walk memory in order.
+//
+// Operations whose work (roughly, multiply-adds or entries written) reaches
+// the parallel threshold split their rows into blocks and run them on the
+// common fork-join pool. Every entry is still computed by the same operations
+// in the same order, so results do not change with the threshold or the pool.
+//
+// add, subtract, scale and negate return a new matrix; the InPlace variants
+// and axpy overwrite this one instead, so repeated updates need no new arrays.
 public class Matrix {
 
-    private double[][] matrix;
+    private static final int BLOCK_SIZE = 64; // Tile edge for times(Matrix): 3 tiles of 64 x 64 doubles fit in L2
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    // Set with -Dmatrix.parallelThreshold=N or setParallelThreshold(). Long.MAX_VALUE keeps everything on one thread.
+    private static volatile long parallelThreshold = Long.getLong("matrix.parallelThreshold", 1L << 17);
+
+    // Computes rows from..to-1 of a result.
+    private interface RowBlock {
+
+        void apply(int from, int to);
+    }
+
+    // A function of a matrix entry and the column it is in.
+    public interface ColumnFunction {
+
+        double apply(int column, double value);
+    }
+
+    // Updates the row stored at data[offset..offset+length-1] in place.
+    public interface RowFunction {
+
+        void apply(double[] data, int offset, int length);
+    }
+
+    private final double[] matrix;
+    private final int rows;
+    private final int columns;
 
     public Matrix(double[][] inputMat) {
-        this.matrix = new double[inputMat.length][inputMat[0].length];
+        this(inputMat.length, inputMat[0].length);
         // Do a deep copy of inputMat, so changes to inputMat do not affect this.matrix.
-        for (int i = 0; i < inputMat.length; i++) {
-            for (int j = 0; j < inputMat[0].length; j++) {
-                this.matrix[i][j] = inputMat[i][j];
-            }
+        for (int i = 0; i < this.rows; i++) {
+            System.arraycopy(inputMat[i], 0, this.matrix, i * this.columns, this.columns);
+        }
+    }
+
+    // A rows x columns matrix of zeros.
+    public Matrix(int rows, int columns) {
+        if ((long) rows * columns > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Matrix too large: " + rows + " x " + columns);
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.matrix = new double[rows * columns];
+    }
+
+    public static long getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public static void setParallelThreshold(long threshold) {
+        parallelThreshold = threshold;
+    }
+
+    // Runs block over all rows, split into blocks on the common pool when the
+    // work is large enough and the pool has more than one thread.
+    private static void forRowBlocks(int rows, long work, RowBlock block) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (work < parallelThreshold || rows < 2 || parallelism < 2) {
+            block.apply(0, rows);
+            return;
         }
+        int blocks = Math.min(rows, parallelism * BLOCKS_PER_THREAD);
+        IntStream.range(0, blocks).parallel().forEach(b -> block.apply(
+                (int) ((long) rows * b / blocks), (int) ((long) rows * (b + 1) / blocks)));
     }
 
     public Matrix add(Matrix other) {
@@ -19,199 +88,280 @@ public class Matrix {
             throw new IllegalArgumentException("Dimensions of matrices do not match.");
         }
 
-        double[][] result = new double[this.matrix.length][this.matrix[0].length];
-
-        for (int i = 0; i < this.matrix.length; i++) {
-            for (int j = 0; j < this.matrix[0].length; j++) {
-                result[i][j] = this.getAt(i, j) + other.getAt(i, j);
+        Matrix result = new Matrix(this.rows, this.columns);
+        forRowBlocks(this.rows, this.matrix.length, (from, to) -> {
+            for (int i = from * this.columns; i < to * this.columns; i++) {
+                result.matrix[i] = this.matrix[i] + other.matrix[i];
             }
-        }
-        return new Matrix(result);
+        });
+        return result;
     }
 
     // This matrix minus @param other
     public Matrix subtract(Matrix other) {
-        Matrix negated = other.negate();
-        return this.add(negated);
-    }
+        if (!this.hasSameDimensionAs(other)) {
+            throw new IllegalArgumentException("Dimensions of matrices do not match.");
+        }
 
-    public Matrix scale(double scalar) {
-        double[][] result = new double[this.matrix.length][this.matrix[0].length];
-        for (int i = 0; i < this.matrix.length; i++) {
-            for (int j = 0; j < this.matrix[0].length; j++) {
-                result[i][j] = this.getAt(i, j) * scalar;
+        Matrix result = new Matrix(this.rows, this.columns);
+        forRowBlocks(this.rows, this.matrix.length, (from, to) -> {
+            for (int i = from * this.columns; i < to * this.columns; i++) {
+                result.matrix[i] = this.matrix[i] - other.matrix[i];
             }
+        });
+        return result;
+    }
+
+    // this ← this + other
+    public Matrix addInPlace(Matrix other) {
+        return this.axpy(1.0, other);
+    }
+
+    // this ← this − other
+    public Matrix subtractInPlace(Matrix other) {
+        return this.axpy(-1.0, other);
+    }
+
+    // this ← a x + this, in one pass without a temporary for a x.
+    public Matrix axpy(double a, Matrix x) {
+        if (!this.hasSameDimensionAs(x)) {
+            throw new IllegalArgumentException("Dimensions of matrices do not match.");
         }
-        return new Matrix(result);
+
+        Kernels kernels = Kernels.get();
+        forRowBlocks(this.rows, this.matrix.length, (from, to) -> kernels.axpy(
+                a, x.matrix, from * this.columns, this.matrix, from * this.columns, (to - from) * this.columns));
+        return this;
     }
 
-    public Vector times(Vector vector) {
-        double[] result = new double[this.matrix.length];
+    // this ← scalar this
+    public Matrix scaleInPlace(double scalar) {
+        forRowBlocks(this.rows, this.matrix.length, (from, to) -> {
+            for (int i = from * this.columns; i < to * this.columns; i++) {
+                this.matrix[i] *= scalar;
+            }
+        });
+        return this;
+    }
 
-        for (int i = 0; i < this.matrix.length; i++) {
-            double sum = 0;
-            for (int j = 0; j < this.matrix[0].length; j++) {
-                sum += this.getAt(i, j) * vector.get(j);
+    public Matrix scale(double scalar) {
+        Matrix result = new Matrix(this.rows, this.columns);
+        forRowBlocks(this.rows, this.matrix.length, (from, to) -> {
+            for (int i = from * this.columns; i < to * this.columns; i++) {
+                result.matrix[i] = this.matrix[i] * scalar;
             }
-            result[i] = sum;
-        }
-        return new Vector(result);
+        });
+        return result;
     }
 
-    public Matrix times(Matrix other) {
-        double[][] result = new double[this.matrix.length][other.matrix[0].length];
-        for (int i = 0; i < this.matrix.length; i++) {
-            for (int j = 0; j < other.matrix[0].length; j++) {
-                for (int k = 0; k < other.matrix.length; k++) {
-                    result[i][j] += this.getAt(i, k) * other.getAt(k, j);
+    // Replaces every entry x in column j by function.apply(j, x), in place.
+    public void transform(ColumnFunction function) {
+        forRowBlocks(this.rows, this.matrix.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int row = i * this.columns;
+                for (int j = 0; j < this.columns; j++) {
+                    this.matrix[row + j] = function.apply(j, this.matrix[row + j]);
                 }
             }
-        }
-        return new Matrix(result);
+        });
     }
 
-    public Matrix invert() {
-        int n = this.matrix.length;
-        double x[][] = new double[n][n];
-        double b[][] = new double[n][n];
-        int index[] = new int[n];
-        for (int i = 0; i < n; ++i) {
-            b[i][i] = 1;
-        }
+    // Applies function to every row, in place.
+    public void transformRows(RowFunction function) {
+        forRowBlocks(this.rows, this.matrix.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                function.apply(this.matrix, i * this.columns, this.columns);
+            }
+        });
+    }
 
-        // Transform the matrix into an upper triangle
-        double[][] upperTrianglar = this.gaussian(this.matrix, index);
+    public Vector times(Vector vector) {
+        if (vector.length() != this.columns) {
+            throw new IllegalArgumentException("Vector length does not match the matrix.");
+        }
+        double[] result = new double[this.rows];
+        double[] values = vector.getVectorComponents();
 
-        // Update the matrix b[i][j] with the ratios stored
-        for (int i = 0; i < n - 1; ++i) {
-            for (int j = i + 1; j < n; ++j) {
-                for (int k = 0; k < n; ++k) {
-                    b[index[j]][k] -= upperTrianglar[index[j]][i] * b[index[i]][k];
-                }
+        forRowBlocks(this.rows, this.matrix.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                result[i] = Vector.dot(this.matrix, i * this.columns, values, 0, this.columns);
             }
-        }
+        });
+        return Vector.wrap(result);
+    }
 
-        // Perform backward substitutions
-        for (int i = 0; i < n; ++i) {
-            x[n - 1][i] = b[index[n - 1]][i] / this.matrix[index[n - 1]][n - 1];
-            for (int j = n - 2; j >= 0; --j) {
-                x[j][i] = b[index[j]][i];
-                for (int k = j + 1; k < n; ++k) {
-                    x[j][i] -= upperTrianglar[index[j]][k] * x[k][i];
+    // Tiled so each BLOCK_SIZE square of the operands is reused while it is in
+    // cache, with an i-k-j order inside a tile so the innermost loop runs along
+    // rows of both other and the result. Every result entry still sums its
+    // products in k order, as the plain triple loop does.
+    public Matrix times(Matrix other) {
+        if (this.columns != other.rows) {
+            throw new IllegalArgumentException("Dimensions of matrices do not match.");
+        }
+        int n = this.rows;
+        int m = this.columns;
+        int p = other.columns;
+        Matrix result = new Matrix(n, p);
+        double[] a = this.matrix;
+        double[] b = other.matrix;
+        double[] c = result.matrix;
+        Kernels kernels = Kernels.get();
+        // Blocks of whole tile rows, so a tile is never split between threads.
+        int tileRows = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        forRowBlocks(tileRows, (long) n * m * p, (fromTile, toTile) -> {
+            for (int i0 = fromTile * BLOCK_SIZE; i0 < Math.min(n, toTile * BLOCK_SIZE); i0 += BLOCK_SIZE) {
+                int iEnd = Math.min(n, i0 + BLOCK_SIZE);
+                for (int k0 = 0; k0 < m; k0 += BLOCK_SIZE) {
+                    int kEnd = Math.min(m, k0 + BLOCK_SIZE);
+                    for (int j0 = 0; j0 < p; j0 += BLOCK_SIZE) {
+                        int jEnd = Math.min(p, j0 + BLOCK_SIZE);
+                        for (int i = i0; i < iEnd; i++) {
+                            int aRow = i * m;
+                            int cRow = i * p;
+                            for (int k = k0; k < kEnd; k++) {
+                                kernels.axpy(a[aRow + k], b, k * p + j0, c, cRow + j0, jEnd - j0);
+                            }
+                        }
+                    }
                 }
-                x[j][i] /= upperTrianglar[index[j]][j];
             }
-        }
-        return new Matrix(x);
+        });
+        return result;
     }
 
-    // Method to carry out the partial-pivoting Gaussian
-    // elimination. Here index[] stores pivoting order.
-    public double[][] gaussian(double a[][], int index[]) {
-        int n = index.length;
-        double c[] = new double[n];
-
-        // Initialize the index
-        for (int i = 0; i < n; ++i) {
-            index[i] = i;
+    // this^T times other, without building the transpose. Both matrices are read
+    // a row at a time, which suits tall matrices such as a data matrix X in
+    // XT X. The sums run over the rows in order, so the result is the same as
+    // transpose().times(other). This stays on one thread: splitting the rows
+    // would need partial sums per block and change the rounding, and the scan
+    // is limited by memory bandwidth rather than arithmetic.
+    public Matrix transposeTimes(Matrix other) {
+        if (this.rows != other.rows) {
+            throw new IllegalArgumentException("Dimensions of matrices do not match.");
         }
-
-        // Find the rescaling factors, one from each row
-        for (int i = 0; i < n; ++i) {
-            double c1 = 0;
-            for (int j = 0; j < n; ++j) {
-                double c0 = Math.abs(a[i][j]);
-                if (c0 > c1) {
-                    c1 = c0;
-                }
+        int m = this.columns;
+        int p = other.columns;
+        Matrix result = new Matrix(m, p);
+        double[] a = this.matrix;
+        double[] b = other.matrix;
+        double[] c = result.matrix;
+        boolean symmetric = other == this;
+        Kernels kernels = Kernels.get();
+        for (int i = 0; i < this.rows; i++) {
+            int aRow = i * m;
+            int bRow = i * p;
+            for (int k = 0; k < m; k++) {
+                int jEnd = symmetric ? k + 1 : p; // XT X is symmetric: sum the lower triangle and mirror it after
+                kernels.axpy(a[aRow + k], b, bRow, c, k * p, jEnd);
             }
-            c[i] = c1;
         }
-
-        // Search the pivoting element from each column
-        int k = 0;
-        for (int j = 0; j < n - 1; ++j) {
-            double pi1 = 0;
-            for (int i = j; i < n; ++i) {
-                double pi0 = Math.abs(a[index[i]][j]);
-                pi0 /= c[index[i]];
-                if (pi0 > pi1) {
-                    pi1 = pi0;
-                    k = i;
+        if (symmetric) {
+            for (int k = 0; k < m; k++) {
+                for (int j = k + 1; j < m; j++) {
+                    c[k * m + j] = c[j * m + k];
                 }
             }
+        }
+        return result;
+    }
 
-            // Interchange rows according to the pivoting order
-            int itmp = index[j];
-            index[j] = index[k];
-            index[k] = itmp;
-            for (int i = j + 1; i < n; ++i) {
-                double pj = a[index[i]][j] / a[index[j]][j];
+    // XT X for this matrix X.
+    public Matrix gram() {
+        return this.transposeTimes(this);
+    }
 
-                // Record pivoting ratios below the diagonal
-                a[index[i]][j] = pj;
+    // A^−1 by LU decomposition. To solve A x = b, solve() is faster and more
+    // accurate than multiplying by the inverse.
+    public Matrix invert() {
+        return new LUDecomposition(this).inverse();
+    }
 
-                // Modify other elements accordingly
-                for (int l = j + 1; l < n; ++l) {
-                    a[index[i]][l] -= pj * a[index[j]][l];
-                }
-            }
-        }
-        return a;
+    // Returns x such that A x = b for this matrix A: by LU decomposition when A
+    // is square, otherwise the least squares solution by QR decomposition.
+    public Vector solve(Vector b) {
+        return this.rows == this.columns ? new LUDecomposition(this).solve(b) : new QRDecomposition(this).solve(b);
     }
 
+    // solve() for every column of B.
+    public Matrix solve(Matrix b) {
+        return this.rows == this.columns ? new LUDecomposition(this).solve(b) : new QRDecomposition(this).solve(b);
+    }
+
+    // Copies BLOCK_SIZE squares at a time, so both the reads and the writes
+    // stay within a few pages instead of striding across the whole matrix.
     public Matrix transpose() {
-        double[][] result = new double[this.matrix[0].length][this.matrix.length];
-        for (int i = 0; i < this.matrix.length; i++) {
-            for (int j = 0; j < this.matrix[0].length; j++) {
-                result[j][i] = this.getAt(i, j);
+        Matrix result = new Matrix(this.columns, this.rows);
+        // Split on the result's rows (this matrix's columns), so each block writes its own part of the result.
+        int tileColumns = (this.columns + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        forRowBlocks(tileColumns, this.matrix.length, (fromTile, toTile) -> {
+            for (int i0 = 0; i0 < this.rows; i0 += BLOCK_SIZE) {
+                int iEnd = Math.min(this.rows, i0 + BLOCK_SIZE);
+                for (int j0 = fromTile * BLOCK_SIZE; j0 < Math.min(this.columns, toTile * BLOCK_SIZE); j0 += BLOCK_SIZE) {
+                    int jEnd = Math.min(this.columns, j0 + BLOCK_SIZE);
+                    for (int i = i0; i < iEnd; i++) {
+                        for (int j = j0; j < jEnd; j++) {
+                            result.matrix[j * this.rows + i] = this.matrix[i * this.columns + j];
+                        }
+                    }
+                }
             }
-        }
-        return new Matrix(result);
+        });
+        return result;
     }
 
     public Matrix negate() {
-        double[][] result = new double[this.matrix.length][this.matrix[0].length];
-        for (int i = 0; i < this.matrix.length; i++) {
-            for (int j = 0; j < this.matrix[0].length; j++) {
-                result[i][j] = -this.matrix[i][j];
+        Matrix result = new Matrix(this.rows, this.columns);
+        forRowBlocks(this.rows, this.matrix.length, (from, to) -> {
+            for (int i = from * this.columns; i < to * this.columns; i++) {
+                result.matrix[i] = -this.matrix[i];
             }
-        }
-        return new Matrix(result);
+        });
+        return result;
     }
 
     public boolean hasSameDimensionAs(Matrix other) {
-        return this.matrix.length != other.matrix.length || this.matrix[0].length != other.matrix[0].length;
+        return this.rows == other.rows && this.columns == other.columns;
     }
 
     public double getAt(int i, int j) {
-        return this.matrix[i][j];
+        return this.matrix[i * this.columns + j];
     }
 
+    // A copy of the values as an array of rows.
     public double[][] getMatrix() {
+        double[][] result = new double[this.rows][this.columns];
+        for (int i = 0; i < this.rows; i++) {
+            System.arraycopy(this.matrix, i * this.columns, result[i], 0, this.columns);
+        }
+        return result;
+    }
+
+    // The backing array itself, row-major: entry (i, j) is at i * numFeatures() + j.
+    public double[] getData() {
         return this.matrix;
     }
 
     public void setAt(int i, int j, double value) {
-        this.matrix[i][j] = value;
+        this.matrix[i * this.columns + j] = value;
     }
 
     public void setRow(int row, Vector input) {
-        for (int i = 0; i < this.matrix[row].length; i++) {
+        for (int i = 0; i < this.columns; i++) {
             this.setAt(row, i, input.get(i));
         }
     }
 
     public int numDataPoints() {
-        return this.matrix.length;
+        return this.rows;
     }
 
+    // A view of row index: it is not copied, so writes to it change this matrix.
     public Vector getDataPoint(int index) {
-        return new Vector(this.matrix[index]);
+        return Vector.view(this.matrix, index * this.columns, this.columns);
     }
 
     public int numFeatures() {
-        return this.matrix[0].length;
+        return this.columns;
     }
 
     public boolean equals(Matrix other) {
@@ -219,10 +369,8 @@ public class Matrix {
             return false;
         }
         for (int i = 0; i < this.matrix.length; i++) {
-            for (int j = 0; j < this.matrix[0].length; j++) {
-                if (this.getAt(i, j) != other.getAt(i, j)) {
-                    return false;
-                }
+            if (this.matrix[i] != other.matrix[i]) {
+                return false;
             }
         }
         return true;
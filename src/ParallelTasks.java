@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Runs a list of independent tasks and returns their results in task order.
+// Whichever task fails first in that order is the one reported, as it would
+// be by running the tasks one after another: a RuntimeException is rethrown
+// as is, and anything else is wrapped in an IllegalStateException.
+final class ParallelTasks {
+
+    private ParallelTasks() {
+    }
+
+    // Runs the tasks in the calling thread when threads <= 1 or there is only
+    // one task, otherwise on a pool of threads workers made for this call.
+    // activity completes the message "Interrupted while ...".
+    static <T> List<T> run(List<Callable<T>> tasks, int threads, String activity) {
+        if (threads <= 1 || tasks.size() <= 1) {
+            List<T> results = new ArrayList<>(tasks.size());
+            try {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return results;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return invokeAll(pool, tasks, activity);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Runs the tasks on pool, which is left running for the caller to reuse.
+    static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks, String activity) {
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while " + activity, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
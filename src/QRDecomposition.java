@@ -0,0 +1,199 @@
+// QR decomposition A P = Q R of an m x n matrix (m >= n) by Householder
+// reflections with column pivoting: at each step the remaining column with
+// the largest norm is moved up, so |R| falls along its diagonal and columns
+// that are (nearly) combinations of earlier ones end up last with tiny
+// diagonal entries. Q is orthogonal and never squares the condition number,
+// which makes this the stable choice for least squares and for systems whose
+// columns are close to collinear.
+//
+// Columns whose diagonal entry in R is below tolerance() are taken as
+// dependent: solve() gives them a coefficient of 0 and solves for the rest,
+// instead of dividing by a rounding error.
+public class QRDecomposition {
+
+    private final double[][] qr;   // The Householder vectors on and below the diagonal, R above it
+    private final double[] rDiagonal;
+    private final int[] permutation; // Column k of A P is column permutation[k] of A
+    private final int rows;
+    private final int columns;
+
+    public QRDecomposition(Matrix input) {
+        this.rows = input.numDataPoints();
+        this.columns = input.numFeatures();
+        if (this.rows < this.columns) {
+            throw new IllegalArgumentException("Matrix has fewer rows than columns.");
+        }
+        this.qr = input.getMatrix();
+        this.rDiagonal = new double[this.columns];
+        this.permutation = new int[this.columns];
+        for (int j = 0; j < this.columns; j++) {
+            this.permutation[j] = j;
+        }
+
+        double[] norms = new double[this.columns]; // Squared norms of the columns below row k
+        for (int k = 0; k < this.columns; k++) {
+            for (int j = k; j < this.columns; j++) {
+                double sum = 0.0;
+                for (int i = k; i < this.rows; i++) {
+                    sum += this.qr[i][j] * this.qr[i][j];
+                }
+                norms[j] = sum;
+            }
+            int p = k;
+            for (int j = k + 1; j < this.columns; j++) {
+                if (norms[j] > norms[p]) {
+                    p = j;
+                }
+            }
+            if (p != k) {
+                for (double[] row : this.qr) {
+                    double value = row[p];
+                    row[p] = row[k];
+                    row[k] = value;
+                }
+                int index = this.permutation[p];
+                this.permutation[p] = this.permutation[k];
+                this.permutation[k] = index;
+            }
+
+            // Reflect column k onto -norm e_k
+            double norm = 0.0;
+            for (int i = k; i < this.rows; i++) {
+                norm = Math.hypot(norm, this.qr[i][k]);
+            }
+            if (norm != 0.0) {
+                if (this.qr[k][k] < 0) {
+                    norm = -norm;
+                }
+                for (int i = k; i < this.rows; i++) {
+                    this.qr[i][k] /= norm;
+                }
+                this.qr[k][k] += 1.0;
+                for (int j = k + 1; j < this.columns; j++) {
+                    this.reflect(k, this.qr, j);
+                }
+            }
+            this.rDiagonal[k] = -norm;
+        }
+    }
+
+    // Applies reflection k to column j of x, whose rows match this.qr.
+    private void reflect(int k, double[][] x, int j) {
+        double sum = 0.0;
+        for (int i = k; i < this.rows; i++) {
+            sum += this.qr[i][k] * x[i][j];
+        }
+        sum = -sum / this.qr[k][k];
+        for (int i = k; i < this.rows; i++) {
+            x[i][j] += sum * this.qr[i][k];
+        }
+    }
+
+    // |Rkk| at or below this counts as zero: rounding in the factorization alone
+    // can leave that much in a column that depends on the ones before it.
+    public double tolerance() {
+        return this.columns == 0 ? 0.0 : Math.max(this.rows, this.columns) * Math.ulp(Math.abs(this.rDiagonal[0]));
+    }
+
+    // The number of independent columns found.
+    public int rank() {
+        double tolerance = this.tolerance();
+        int rank = 0;
+        while (rank < this.columns && Math.abs(this.rDiagonal[rank]) > tolerance) {
+            rank++;
+        }
+        return rank;
+    }
+
+    public boolean isFullRank() {
+        return this.rank() == this.columns;
+    }
+
+    // An estimate of the 1-norm condition number of R, or infinity if A is rank
+    // deficient. R has the same 2-norm condition number as A, and the two
+    // 1-norm ones are within a factor of n of each other.
+    public double conditionEstimate() {
+        if (!this.isFullRank()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        int n = this.columns;
+        double[][] r = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            r[i][i] = this.rDiagonal[i];
+            for (int j = i + 1; j < n; j++) {
+                r[i][j] = this.qr[i][j];
+            }
+        }
+        return ConditionEstimator.norm1(r, n) * ConditionEstimator.inverseNorm1(n, x -> {
+            for (int i = n - 1; i >= 0; i--) { // R x' = x
+                double sum = x[i];
+                for (int k = i + 1; k < n; k++) {
+                    sum -= r[i][k] * x[k];
+                }
+                x[i] = sum / r[i][i];
+            }
+        }, x -> {
+            for (int i = 0; i < n; i++) { // RT x' = x
+                double sum = x[i];
+                for (int k = 0; k < i; k++) {
+                    sum -= r[k][i] * x[k];
+                }
+                x[i] = sum / r[i][i];
+            }
+        });
+    }
+
+    // The x minimizing ||A x − b||, which solves A x = b when A is square and
+    // of full rank. Dependent columns get a coefficient of 0.
+    public Vector solve(Vector b) {
+        if (b.length() != this.rows) {
+            throw new IllegalArgumentException("Vector length does not match the matrix.");
+        }
+        double[][] x = new double[this.rows][1];
+        for (int i = 0; i < this.rows; i++) {
+            x[i][0] = b.get(i);
+        }
+        return Vector.wrap(this.solve(x, 1)[0]);
+    }
+
+    // The least squares solution for every column of B, reusing the factorization.
+    public Matrix solve(Matrix b) {
+        if (b.numDataPoints() != this.rows) {
+            throw new IllegalArgumentException("Dimensions of matrices do not match.");
+        }
+        int count = b.numFeatures();
+        double[][] solutions = this.solve(b.getMatrix(), count);
+        Matrix result = new Matrix(this.columns, count);
+        for (int j = 0; j < count; j++) {
+            for (int i = 0; i < this.columns; i++) {
+                result.setAt(i, j, solutions[j][i]);
+            }
+        }
+        return result;
+    }
+
+    // Overwrites x with QT x and returns the solution for each of its columns.
+    private double[][] solve(double[][] x, int count) {
+        int rank = this.rank();
+        for (int k = 0; k < rank; k++) {
+            for (int j = 0; j < count; j++) {
+                this.reflect(k, x, j);
+            }
+        }
+        double[][] solutions = new double[count][this.columns];
+        for (int j = 0; j < count; j++) {
+            double[] z = new double[rank];
+            for (int i = rank - 1; i >= 0; i--) { // R11 z = (QT b)1
+                double sum = x[i][j];
+                for (int k = i + 1; k < rank; k++) {
+                    sum -= this.qr[i][k] * z[k];
+                }
+                z[i] = sum / this.rDiagonal[i];
+            }
+            for (int i = 0; i < rank; i++) {
+                solutions[j][this.permutation[i]] = z[i];
+            }
+        }
+        return solutions;
+    }
+}
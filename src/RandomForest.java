@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+// A random forest predicting RainTomorrow: DecisionTrees grown on bootstrap
+// samples of the data points, each allowed to split on a random subset of
+// the features, whose leaf probabilities are averaged.
+//
+// The features are binned once and shared by every tree. A bootstrap sample
+// is an array of row numbers drawn with replacement, not a copy of the rows,
+// and each tree draws from its own Random seeded from the forest's seed and
+// the tree's number, so the forest is the same whatever the number of threads
+// the trees are grown on. The rows a tree's sample left out (out of bag)
+// are scored by that tree, giving an estimate of the error on unseen data
+// without holding any out.
+//
+// Once grown, the trees are compiled together into one CompiledTree, which is
+// all the forest keeps for prediction.
+public class RandomForest {
+
+    public static final int DEFAULT_NUM_TREES = 100;
+    public static final int DEFAULT_MIN_LEAF_SIZE = 5;
+    public static final double DEFAULT_FEATURE_FRACTION = 0.5; // Of the features each tree may split on
+    public static final long DEFAULT_SEED = 42;
+
+    private static final int BLOCK_SIZE = 8192; // Rows scored out of bag per task
+
+    private final CompiledTree trees;
+    private final double outOfBagError;
+
+    public RandomForest(ArrayList<Weather.DataPoint> data) {
+        this(WeatherFrame.of(data));
+    }
+
+    public RandomForest(WeatherFrame data) {
+        this(data, DEFAULT_NUM_TREES, 1);
+    }
+
+    public RandomForest(WeatherFrame data, int numTrees, int threads) {
+        this(data, numTrees, DecisionTree.DEFAULT_MAX_DEPTH, DEFAULT_MIN_LEAF_SIZE, DEFAULT_FEATURE_FRACTION, DEFAULT_SEED, threads);
+    }
+
+    public RandomForest(WeatherFrame data, int numTrees, int maxDepth, int minLeafSize, double featureFraction, long seed, int threads) {
+        this(BinnedFeatures.of(data, threads), DecisionTree.labels(data), DecisionTree.labeledRows(data),
+                numTrees, maxDepth, minLeafSize, featureFraction, seed, threads);
+    }
+
+    // Grows the forest on the listed rows of data, whose labels are 0 or 1.
+    RandomForest(BinnedFeatures data, double[] labels, int[] labeled, int numTrees, int maxDepth, int minLeafSize,
+            double featureFraction, long seed, int threads) {
+        if (labeled.length == 0) {
+            throw new IllegalArgumentException("No data points with a RainTomorrow to train on.");
+        }
+        if (numTrees < 1 || !(featureFraction > 0.0 && featureFraction <= 1.0)) {
+            throw new IllegalArgumentException("Bad forest parameters: " + numTrees + " trees, feature fraction " + featureFraction);
+        }
+        // Squared error with g = −y and h = 1, as DecisionTree grows.
+        double[] gradients = new double[labels.length];
+        double[] hessians = new double[labels.length];
+        for (int row = 0; row < labels.length; row++) {
+            gradients[row] = -labels[row];
+            hessians[row] = 1.0;
+        }
+        int featuresPerTree = Math.max(1, (int) Math.ceil(featureFraction * data.numFeatures()));
+
+        List<Callable<Tree>> growing = new ArrayList<>(numTrees);
+        for (int t = 0; t < numTrees; t++) {
+            final Random random = new Random(seed * 31 + t);
+            growing.add(() -> grow(data, labeled, gradients, hessians, maxDepth, minLeafSize, featuresPerTree, random));
+        }
+        List<Tree> trees = ParallelTasks.run(growing, threads, "growing the forest");
+
+        this.outOfBagError = outOfBagError(data, labels, labeled, trees, threads);
+
+        List<DecisionTree.Node> roots = new ArrayList<>(numTrees);
+        for (Tree tree : trees) {
+            roots.add(tree.root);
+        }
+        this.trees = CompiledTree.of(roots);
+    }
+
+    // A grown tree and the rows in its bootstrap sample.
+    private static class Tree {
+
+        private final DecisionTree.Node root;
+        private final long[] inBag; // Bit per row of the data
+
+        private Tree(DecisionTree.Node root, long[] inBag) {
+            this.root = root;
+            this.inBag = inBag;
+        }
+
+        private boolean inBag(int row) {
+            return (this.inBag[row >>> 6] & (1L << row)) != 0;
+        }
+    }
+
+    private static Tree grow(BinnedFeatures data, int[] labeled, double[] gradients, double[] hessians,
+            int maxDepth, int minLeafSize, int featuresPerTree, Random random) {
+        int[] sample = new int[labeled.length];
+        long[] inBag = new long[(data.numRows() + 63) >>> 6];
+        for (int i = 0; i < sample.length; i++) {
+            int row = labeled[random.nextInt(labeled.length)];
+            sample[i] = row;
+            inBag[row >>> 6] |= 1L << row;
+        }
+        Arrays.sort(sample); // In row order, the bin columns are read front to back
+        // The first featuresPerTree of a random permutation (Fisher–Yates).
+        int[] features = new int[data.numFeatures()];
+        for (int f = 0; f < features.length; f++) {
+            features[f] = f;
+        }
+        for (int f = 0; f < featuresPerTree; f++) {
+            int other = f + random.nextInt(features.length - f);
+            int feature = features[f];
+            features[f] = features[other];
+            features[other] = feature;
+        }
+        int[] subset = new int[featuresPerTree];
+        System.arraycopy(features, 0, subset, 0, featuresPerTree);
+        DecisionTree.Node root = new TreeBuilder(data, gradients, hessians, maxDepth, minLeafSize, 0.0, 1, subset).build(sample);
+        return new Tree(root, inBag);
+    }
+
+    // The fraction of labeled rows misclassified by the trees that did not see
+    // them, over the rows left out by at least one tree; NaN if there are none.
+    // Each row adds up its trees in tree order, so blocks of rows are scored in
+    // parallel with the same result.
+    private static double outOfBagError(BinnedFeatures data, double[] labels, int[] labeled, List<Tree> trees, int threads) {
+        List<Callable<int[]>> blocks = new ArrayList<>();
+        for (int start = 0; start < labeled.length; start += BLOCK_SIZE) {
+            final int from = start;
+            final int to = Math.min(labeled.length, start + BLOCK_SIZE);
+            blocks.add(() -> {
+                int[] result = new int[2]; // Rows scored, rows misclassified
+                for (int i = from; i < to; i++) {
+                    int row = labeled[i];
+                    double sum = 0.0;
+                    int votes = 0;
+                    for (Tree tree : trees) {
+                        if (!tree.inBag(row)) {
+                            sum += tree.root.leaf(data, row).value;
+                            votes++;
+                        }
+                    }
+                    if (votes > 0) {
+                        result[0]++;
+                        if ((sum / votes > 0.5) != (labels[row] == 1.0)) {
+                            result[1]++;
+                        }
+                    }
+                }
+                return result;
+            });
+        }
+        int scored = 0;
+        int wrong = 0;
+        for (int[] result : ParallelTasks.run(blocks, threads, "growing the forest")) {
+            scored += result[0];
+            wrong += result[1];
+        }
+        return scored == 0 ? Double.NaN : (double) wrong / scored;
+    }
+
+    // ----------------------------------------------------------------------
+    // The chance of rain tomorrow: the trees' leaf probabilities averaged.
+    public double probability(Weather.DataPoint dataPoint) {
+        return this.probability(WeatherFeatures.of(dataPoint));
+    }
+
+    public double probability(double[] features) {
+        return this.trees.predict(features) / this.trees.numTrees();
+    }
+
+    // probability() of each row of WeatherFeatures, walked through the trees
+    // in batches.
+    public double[] probabilities(double[][] features) {
+        double[] probabilities = new double[features.length];
+        this.trees.predict(features, 0, features.length, probabilities);
+        for (int i = 0; i < probabilities.length; i++) {
+            probabilities[i] /= this.trees.numTrees();
+        }
+        return probabilities;
+    }
+
+    public boolean rainTomorrow(Weather.DataPoint dataPoint) {
+        return this.probability(dataPoint) > 0.5;
+    }
+
+    // Estimated from the trees that did not see each data point.
+    public double outOfBagError() {
+        return this.outOfBagError;
+    }
+
+    public int numTrees() {
+        return this.trees.numTrees();
+    }
+
+    public int numNodes() {
+        return this.trees.numNodes();
+    }
+}
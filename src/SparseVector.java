@@ -0,0 +1,87 @@
+import java.util.Arrays;
+
+// A vector stored as its nonzero entries only: ascending indices and their
+// values in two parallel arrays. A one-hot encoded category is a single
+// entry, so dotting it with a dense weight vector costs one multiply-add
+// however many categories there are.
+public class SparseVector {
+
+    private final int dimension;
+    private final int[] indices;
+    private final double[] values;
+
+    // indices must be ascending and below dimension; both arrays are kept, not copied.
+    public SparseVector(int dimension, int[] indices, double[] values) {
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException("Index and value counts do not match.");
+        }
+        for (int k = 0; k < indices.length; k++) {
+            if (indices[k] < 0 || indices[k] >= dimension || (k > 0 && indices[k] <= indices[k - 1])) {
+                throw new IllegalArgumentException("Indices must be ascending and in 0.." + (dimension - 1) + ": " + Arrays.toString(indices));
+            }
+        }
+        this.dimension = dimension;
+        this.indices = indices;
+        this.values = values;
+    }
+
+    // A vector of 1s at the given ascending indices.
+    public static SparseVector ones(int dimension, int... indices) {
+        double[] values = new double[indices.length];
+        Arrays.fill(values, 1.0);
+        return new SparseVector(dimension, indices, values);
+    }
+
+    public int dimension() {
+        return this.dimension;
+    }
+
+    public int nonZeros() {
+        return this.indices.length;
+    }
+
+    public int indexAt(int k) {
+        return this.indices[k];
+    }
+
+    public double valueAt(int k) {
+        return this.values[k];
+    }
+
+    // The dot product with dense[offset..offset+dimension-1].
+    public double dot(double[] dense, int offset) {
+        double sum = 0.0;
+        for (int k = 0; k < this.indices.length; k++) {
+            sum += this.values[k] * dense[offset + this.indices[k]];
+        }
+        return sum;
+    }
+
+    // dense[offset..offset+dimension-1] ← a this + dense[offset..offset+dimension-1]
+    public void axpyInto(double a, double[] dense, int offset) {
+        for (int k = 0; k < this.indices.length; k++) {
+            dense[offset + this.indices[k]] += a * this.values[k];
+        }
+    }
+
+    public Vector toDense() {
+        double[] dense = new double[this.dimension];
+        for (int k = 0; k < this.indices.length; k++) {
+            dense[this.indices[k]] = this.values[k];
+        }
+        return Vector.wrap(dense);
+    }
+
+    // "{index: value, ...}"
+    @Override
+    public String toString() {
+        String result = "{";
+        for (int k = 0; k < this.indices.length; k++) {
+            if (k > 0) {
+                result += ", ";
+            }
+            result += this.indices[k] + ": " + this.values[k];
+        }
+        return result + "}";
+    }
+}
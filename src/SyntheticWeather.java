@@ -0,0 +1,116 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+// Deterministic generator of weatherAUS-shaped CSV rows, so benchmarks can run
+// without the real data files. The same seed always yields the same rows.
+public class SyntheticWeather {
+
+    private static final String[] DIRECTIONS = {
+        "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE",
+        "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW"
+    };
+
+    private final Random random;
+    private final double missingRate;
+    private final StringBuilder line = new StringBuilder(128);
+    private int row;
+
+    public SyntheticWeather(long seed, double missingRate) {
+        this.random = new Random(seed);
+        this.missingRate = missingRate;
+    }
+
+    public SyntheticWeather(long seed) {
+        this(seed, 0.1);
+    }
+
+    public Weather.DataPoint next() {
+        return AustraliaWeather.processLine(this.nextLine());
+    }
+
+    public String nextLine() {
+        int day = this.row++;
+        this.line.setLength(0);
+
+        int year = 2008 + (day / 336) % 10;
+        int month = 1 + (day / 28) % 12;
+        int dayOfMonth = 1 + day % 28;
+        this.line.append(year).append('-');
+        this.pad(month).append('-');
+        this.pad(dayOfMonth).append(',');
+        this.line.append(Weather.locations[this.random.nextInt(Weather.locations.length)]).append(',');
+
+        double minTemperature = -5.0 + 25.0 * this.random.nextDouble();
+        double maxTemperature = minTemperature + 15.0 * this.random.nextDouble();
+        double morningHumidity = 100.0 * this.random.nextDouble();
+        double afternoonHumidity = Math.min(100.0, morningHumidity * (0.5 + this.random.nextDouble()));
+        boolean rainToday = this.random.nextDouble() < 0.22;
+        boolean rainTomorrow = this.random.nextDouble() < 0.1 + 0.6 * afternoonHumidity / 100.0 * (rainToday ? 1.0 : 0.6);
+
+        this.decimal(minTemperature);                                   // MinTemp
+        this.decimal(maxTemperature);                                   // MaxTemp
+        this.decimal(rainToday ? 20.0 * this.random.nextDouble() : 0.0); // Rainfall
+        this.decimal(12.0 * this.random.nextDouble());                  // Evaporation
+        this.decimal(14.0 * this.random.nextDouble());                  // Sunshine
+        this.direction();                                               // WindGustDir
+        this.integer(5 + this.random.nextInt(100));                     // WindGustSpeed
+        this.direction();                                               // WindDir9am
+        this.direction();                                               // WindDir3pm
+        this.integer(this.random.nextInt(50));                          // WindSpeed9am
+        this.integer(this.random.nextInt(50));                          // WindSpeed3pm
+        this.integer((int) morningHumidity);                            // Humidity9am
+        this.integer((int) afternoonHumidity);                          // Humidity3pm
+        this.decimal(990.0 + 40.0 * this.random.nextDouble());          // Pressure9am
+        this.decimal(990.0 + 40.0 * this.random.nextDouble());          // Pressure3pm
+        this.integer(this.random.nextInt(9));                           // Cloud9am
+        this.integer(this.random.nextInt(9));                           // Cloud3pm
+        this.decimal(minTemperature + 5.0 * this.random.nextDouble());  // Temp9am
+        this.decimal(maxTemperature - 3.0 * this.random.nextDouble());  // Temp3pm
+        this.line.append(rainToday ? "Yes" : "No").append(',');         // RainToday
+        this.line.append(Math.round(rainTomorrow ? 200.0 * this.random.nextDouble() : 0.0) / 10.0).append(','); // RISK_MM
+        this.line.append(rainTomorrow ? "Yes" : "No");                  // RainTomorrow
+        return this.line.toString();
+    }
+
+    public static void writeFile(String filename, int rows, long seed, double missingRate) throws IOException {
+        SyntheticWeather generator = new SyntheticWeather(seed, missingRate);
+        try (BufferedWriter output = new BufferedWriter(new FileWriter(filename))) {
+            for (int i = 0; i < rows; i++) {
+                output.write(generator.nextLine());
+                output.newLine();
+            }
+        }
+    }
+
+    private boolean missing() {
+        if (this.random.nextDouble() < this.missingRate) {
+            this.line.append("NA,");
+            return true;
+        }
+        return false;
+    }
+
+    private void decimal(double value) {
+        if (!this.missing()) {
+            this.line.append(Math.round(value * 10.0) / 10.0).append(',');
+        }
+    }
+
+    private void integer(int value) {
+        if (!this.missing()) {
+            this.line.append(value).append(',');
+        }
+    }
+
+    private void direction() {
+        if (!this.missing()) {
+            this.line.append(DIRECTIONS[this.random.nextInt(DIRECTIONS.length)]).append(',');
+        }
+    }
+
+    private StringBuilder pad(int value) {
+        return this.line.append(value < 10 ? "0" : "").append(value);
+    }
+}
@@ -0,0 +1,342 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Grows a regression tree on binned features by histogram split search. Every
+// row has a gradient g and a hessian h, and a leaf holding rows with sums G
+// and H predicts −G / (H + λ). A split is scored by how much it lowers
+// −G^2 / (H + λ) summed over the leaves, the second order approximation of
+// the loss that gradient boosting uses. With g = −label and h = 1 (and λ = 0)
+// that is a least squares tree: leaves predict the mean label and splits are
+// chosen by the drop in squared error, which for 0/1 labels is the Gini
+// impurity the classification tree minimizes.
+//
+// A node's split is found from its Histogram: for each feature the bins are
+// swept in order, adding up what falls left of each possible split, once with
+// the missing values on the left and once on the right. Only the smaller
+// child's histogram is summed from its rows; the larger is the parent's less
+// the smaller, so a level of the tree costs at most one pass over half the
+// rows. Splits can be limited to a subset of the features, which are then the
+// only ones summed.
+//
+// With more than one thread the work is shared out by fork-join at two
+// levels: a node's rows are summed into histograms in fixed chunks of
+// CHUNK_SIZE, one task per chunk, and the two subtrees of a large node are
+// grown concurrently. The chunk histograms are added up in chunk order, and
+// chunks are cut the same way on one thread, so the tree does not depend on
+// the number of threads.
+//
+// A node's histogram is handed on to one of its children. Histograms no
+// longer needed by any node, and those of finished chunk sums, are kept and
+// reused rather than allocated for the next node.
+final class TreeBuilder {
+
+    private static final double MIN_GAIN = 1e-9; // Gains below this are rounding errors, not splits
+    private static final int CHUNK_SIZE = 1 << 14; // Rows per histogram task
+    private static final int FORK_SIZE = 1 << 12;  // Smaller nodes grow both subtrees on one thread
+
+    private final BinnedFeatures data;
+    private final double[] gradients;
+    private final double[] hessians;
+    private final int maxDepth;
+    private final int minLeafSize;
+    private final double lambda;
+    private final int threads;
+    private final int[] features; // The binned features splits may use, ascending
+    private final ArrayDeque<Histogram> freeHistograms = new ArrayDeque<>(); // Guarded by itself
+
+    TreeBuilder(BinnedFeatures data, double[] gradients, double[] hessians, int maxDepth, int minLeafSize, double lambda) {
+        this(data, gradients, hessians, maxDepth, minLeafSize, lambda, 1);
+    }
+
+    TreeBuilder(BinnedFeatures data, double[] gradients, double[] hessians, int maxDepth, int minLeafSize, double lambda, int threads) {
+        this(data, gradients, hessians, maxDepth, minLeafSize, lambda, threads, allFeatures(data));
+    }
+
+    TreeBuilder(BinnedFeatures data, double[] gradients, double[] hessians, int maxDepth, int minLeafSize, double lambda, int threads, int[] features) {
+        if (maxDepth < 0 || minLeafSize < 1 || lambda < 0.0) {
+            throw new IllegalArgumentException("Bad tree parameters: depth " + maxDepth + ", leaf size " + minLeafSize + ", lambda " + lambda);
+        }
+        if (features.length == 0) {
+            throw new IllegalArgumentException("No features to split on.");
+        }
+        this.data = data;
+        this.gradients = gradients;
+        this.hessians = hessians;
+        this.maxDepth = maxDepth;
+        this.minLeafSize = Math.max(1, minLeafSize);
+        this.lambda = lambda;
+        this.threads = Math.max(1, threads);
+        this.features = features.clone();
+        Arrays.sort(this.features);
+    }
+
+    private static int[] allFeatures(BinnedFeatures data) {
+        int[] features = new int[data.numFeatures()];
+        for (int f = 0; f < features.length; f++) {
+            features[f] = f;
+        }
+        return features;
+    }
+
+    // The best split found for a node, if any.
+    private static final class Split {
+
+        private int feature = -1;
+        private int bin;
+        private boolean missingLeft;
+        private double gain = MIN_GAIN;
+        private double leftGradient;
+        private double leftHessian;
+        private int leftCount;
+    }
+
+    // Grows a tree on the rows listed in rows, which is reordered so that the
+    // rows of every node are contiguous, keeping their order within each
+    // node. A row may be listed more than once. Rows listed in ascending order
+    // are summed fastest, as the bin columns are then read front to back.
+    DecisionTree.Node build(int[] rows) {
+        if (this.threads == 1) {
+            return this.build(rows, null);
+        }
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        try {
+            return this.build(rows, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // The same on a pool the caller keeps for several trees, as boosting
+    // grows one per round. The pool is not used on one thread and may be null.
+    DecisionTree.Node build(int[] rows, ForkJoinPool pool) {
+        if (rows.length == 0) {
+            throw new IllegalArgumentException("No rows to grow a tree on.");
+        }
+        if (this.threads == 1) {
+            return this.root(rows);
+        }
+        return pool.invoke(ForkJoinTask.adapt(() -> this.root(rows)));
+    }
+
+    private DecisionTree.Node root(int[] rows) {
+        int[] scratch = new int[rows.length]; // Shared by every node; nodes use their own range
+        Histogram histogram = this.newHistogram();
+        this.sum(histogram, rows, 0, rows.length);
+        double gradient = 0.0;
+        double hessian = 0.0;
+        for (int row : rows) {
+            gradient += this.gradients[row];
+            hessian += this.hessians[row];
+        }
+        return this.grow(rows, scratch, 0, rows.length, histogram, gradient, hessian, 0);
+    }
+
+    // The subtree for rows[from..to-1], whose histogram is given (unless the
+    // node cannot be split) and may be overwritten, and whose gradients and
+    // hessians sum to gradient and hessian.
+    private DecisionTree.Node grow(int[] rows, int[] scratch, int from, int to, Histogram histogram, double gradient, double hessian, int depth) {
+        int count = to - from;
+        double value = this.leafValue(gradient, hessian);
+        Split split = this.canSplit(count, depth) ? this.findSplit(histogram, gradient, hessian, count) : null;
+        if (split == null) {
+            this.release(histogram);
+            return new DecisionTree.Node(value, count);
+        }
+
+        // Children too small or deep to split need no histogram; the smaller
+        // one is summed whenever either needs one.
+        int middle = this.partition(rows, scratch, from, to, split);
+        boolean leftSplits = this.canSplit(middle - from, depth + 1);
+        boolean rightSplits = this.canSplit(to - middle, depth + 1);
+        boolean leftSmaller = middle - from <= to - middle;
+        Histogram smaller = null;
+        if (leftSplits || rightSplits) {
+            smaller = this.newHistogram();
+            if (leftSmaller) {
+                this.sum(smaller, rows, from, middle);
+            } else {
+                this.sum(smaller, rows, middle, to);
+            }
+            if (leftSmaller ? rightSplits : leftSplits) {
+                histogram.subtract(smaller);
+            }
+        }
+        Histogram leftHistogram = !leftSplits ? null : leftSmaller ? smaller : histogram;
+        Histogram rightHistogram = !rightSplits ? null : leftSmaller ? histogram : smaller;
+        if (histogram != leftHistogram && histogram != rightHistogram) {
+            this.release(histogram);
+        }
+        if (smaller != null && smaller != leftHistogram && smaller != rightHistogram) {
+            this.release(smaller);
+        }
+
+        DecisionTree.Node left;
+        DecisionTree.Node right;
+        if (this.threads > 1 && count >= FORK_SIZE) {
+            ForkJoinTask<DecisionTree.Node> leftTask = ForkJoinTask.adapt(() -> this.grow(rows, scratch, from, middle, leftHistogram,
+                    split.leftGradient, split.leftHessian, depth + 1)).fork();
+            right = this.grow(rows, scratch, middle, to, rightHistogram,
+                    gradient - split.leftGradient, hessian - split.leftHessian, depth + 1);
+            left = leftTask.join();
+        } else {
+            left = this.grow(rows, scratch, from, middle, leftHistogram,
+                    split.leftGradient, split.leftHessian, depth + 1);
+            right = this.grow(rows, scratch, middle, to, rightHistogram,
+                    gradient - split.leftGradient, hessian - split.leftHessian, depth + 1);
+        }
+        return new DecisionTree.Node(split.feature + 1, split.bin, this.threshold(split), split.missingLeft,
+                left, right, value, count, split.gain);
+    }
+
+    private boolean canSplit(int count, int depth) {
+        return depth < this.maxDepth && count >= 2 * this.minLeafSize;
+    }
+
+    // Adds rows[from..to-1] to histogram chunk by chunk, each chunk summed on
+    // its own and the chunk sums added in order.
+    private void sum(Histogram histogram, int[] rows, int from, int to) {
+        int numChunks = (to - from + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (numChunks <= 1) {
+            histogram.add(this.data, this.features, rows, from, to, this.gradients, this.hessians);
+            return;
+        }
+        if (this.threads == 1) {
+            Histogram chunk = this.newHistogram();
+            for (int start = from; start < to; start += CHUNK_SIZE) {
+                if (start > from) {
+                    chunk.clear();
+                }
+                chunk.add(this.data, this.features, rows, start, Math.min(to, start + CHUNK_SIZE), this.gradients, this.hessians);
+                histogram.add(chunk);
+            }
+            this.release(chunk);
+            return;
+        }
+        Histogram[] chunks = new Histogram[numChunks];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(numChunks);
+        for (int c = 0; c < numChunks; c++) {
+            final int index = c;
+            final int start = from + c * CHUNK_SIZE;
+            final int end = Math.min(to, start + CHUNK_SIZE);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                chunks[index] = this.newHistogram();
+                chunks[index].add(this.data, this.features, rows, start, end, this.gradients, this.hessians);
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        for (Histogram chunk : chunks) {
+            histogram.add(chunk);
+            this.release(chunk);
+        }
+    }
+
+    // An empty histogram, one given back by release() if there is one.
+    private Histogram newHistogram() {
+        Histogram histogram;
+        synchronized (this.freeHistograms) {
+            histogram = this.freeHistograms.poll();
+        }
+        if (histogram == null) {
+            return new Histogram(this.features.length);
+        }
+        histogram.clear();
+        return histogram;
+    }
+
+    // Gives back a histogram no node needs any more (none if null).
+    private void release(Histogram histogram) {
+        if (histogram != null) {
+            synchronized (this.freeHistograms) {
+                this.freeHistograms.push(histogram);
+            }
+        }
+    }
+
+    private double leafValue(double gradient, double hessian) {
+        return hessian + this.lambda > 0.0 ? -gradient / (hessian + this.lambda) : 0.0;
+    }
+
+    // G^2 / (H + λ), the loss reduction of fitting a leaf to these rows.
+    private double score(double gradient, double hessian) {
+        return gradient * gradient / (hessian + this.lambda);
+    }
+
+    // The split with the largest gain that leaves at least minLeafSize rows on
+    // each side, or null. Ties go to the lowest feature and then bin, so the
+    // result does not depend on the order in which rows were summed.
+    private Split findSplit(Histogram histogram, double gradient, double hessian, int count) {
+        Split best = new Split();
+        double parentScore = this.score(gradient, hessian);
+        for (int slot = 0; slot < this.features.length; slot++) {
+            int feature = this.features[slot];
+            int base = slot * BinnedFeatures.MAX_BINS;
+            int numBins = this.data.numBins(feature);
+            double missingGradient = histogram.gradients[base + BinnedFeatures.MISSING];
+            double missingHessian = histogram.hessians[base + BinnedFeatures.MISSING];
+            int missingCount = histogram.counts[base + BinnedFeatures.MISSING];
+            double leftGradient = 0.0;
+            double leftHessian = 0.0;
+            int leftCount = 0;
+            for (int bin = 1; bin < numBins; bin++) { // Bins 1..bin go left
+                leftGradient += histogram.gradients[base + bin];
+                leftHessian += histogram.hessians[base + bin];
+                leftCount += histogram.counts[base + bin];
+                for (int side = 0; side < 2; side++) {
+                    boolean missingLeft = side == 1;
+                    if (missingLeft && missingCount == 0) {
+                        break;
+                    }
+                    double gl = missingLeft ? leftGradient + missingGradient : leftGradient;
+                    double hl = missingLeft ? leftHessian + missingHessian : leftHessian;
+                    int cl = missingLeft ? leftCount + missingCount : leftCount;
+                    if (cl < this.minLeafSize || count - cl < this.minLeafSize
+                            || hl + this.lambda <= 0.0 || hessian - hl + this.lambda <= 0.0) {
+                        continue;
+                    }
+                    double gain = this.score(gl, hl) + this.score(gradient - gl, hessian - hl) - parentScore;
+                    if (gain > best.gain) {
+                        best.feature = feature;
+                        best.bin = bin;
+                        best.missingLeft = missingLeft;
+                        best.gain = gain;
+                        best.leftGradient = gl;
+                        best.leftHessian = hl;
+                        best.leftCount = cl;
+                    }
+                }
+            }
+        }
+        return best.feature < 0 ? null : best;
+    }
+
+    // Values up to the threshold go left. A split after the last bin only
+    // separates the missing values, so every value goes left.
+    private double threshold(Split split) {
+        return split.bin == this.data.numBins(split.feature) - 1
+                ? Double.POSITIVE_INFINITY : this.data.upperBound(split.feature, split.bin);
+    }
+
+    // Moves the rows going left to the front of rows[from..to-1], keeping the
+    // order of each side, and returns where the right ones start. The right
+    // ones wait in the same range of scratch.
+    private int partition(int[] rows, int[] scratch, int from, int to, Split split) {
+        byte[] bins = this.data.binColumn(split.feature);
+        int left = from;
+        int right = from;
+        for (int i = from; i < to; i++) {
+            int row = rows[i];
+            int bin = bins[row] & 0xff;
+            if (bin == BinnedFeatures.MISSING ? split.missingLeft : bin <= split.bin) {
+                rows[left++] = row;
+            } else {
+                scratch[right++] = row;
+            }
+        }
+        System.arraycopy(scratch, from, rows, left, right - from);
+        return left;
+    }
+}
@@ -2,9 +2,15 @@
 import java.util.Arrays;
 import java.util.Iterator;
 
+// The in-place operations (addInPlace, subtractInPlace, scaleInPlace, axpy)
+// overwrite this vector and return it, so loops can update one vector without
+// allocating a new one on every step. A view made by Vector.view() reads and
+// writes a run of some other array, such as a row of a Matrix, without copying
+// it; growing a view past its length copies it into storage of its own.
 public class Vector {
 
     private double[] vector;	// The array data.
+    private int offset = 0;     // Index in the array data of the first element.
     private int length = 0;     // The length of the array.
     private int capacity = 0;	// Current storage allocation for the array.
     private int storage = 0;	// Total storage allocation for the array.
@@ -16,53 +22,98 @@ public class Vector {
     public Vector(double[] inputVec) {
         // Do a deep copy of inputVec, so changes to inputVec do not affect this.vector.
         resize(inputVec.length);
-        for (double value : inputVec) {
-            this.append(value);
+        System.arraycopy(inputVec, 0, this.vector, 0, inputVec.length);
+        this.length = inputVec.length;
+    }
+
+    private Vector(double[] data, int offset, int length) {
+        this.vector = data;
+        this.offset = offset;
+        this.length = length;
+        this.capacity = length;
+    }
+
+    // A vector of data[offset..offset+length-1] that shares data instead of copying it.
+    public static Vector view(double[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new ArrayIndexOutOfBoundsException("View out of bounds: " + offset + " + " + length);
         }
+        return new Vector(data, offset, length);
     }
 
-    public Vector plus(Vector other) {
-        if (this.vector.length != other.vector.length) {
+    // A vector of all of data that shares data instead of copying it.
+    public static Vector wrap(double[] data) {
+        return new Vector(data, 0, data.length);
+    }
+
+    private void checkLength(Vector other) {
+        if (this.length != other.length) {
             throw new IllegalArgumentException("Vector lengths do not match.");
         }
+    }
 
-        double[] result = new double[this.vector.length];
-        for (int i = 0; i < this.vector.length; i++) {
-            result[i] = this.vector[i] + other.vector[i];
-        }
-        return new Vector(result);
+    public Vector plus(Vector other) {
+        return this.copy().addInPlace(other);
     }
 
     public Vector negate() {
-        double[] result = new double[this.vector.length];
-        for (int i = 0; i < this.vector.length; i++) {
-            result[i] *= -1.0;
-        }
-        return new Vector(result);
+        return this.scale(-1.0);
     }
 
     public Vector minus(Vector other) {
-        Vector negated = other.negate();
-        return this.plus(negated);
+        return this.copy().subtractInPlace(other);
     }
 
     public Vector scale(double scalar) {
-        double[] result = new double[this.vector.length];
-        for (int i = 0; i < this.vector.length; i++) {
-            result[i] = this.vector[i] * scalar;
+        return this.copy().scaleInPlace(scalar);
+    }
+
+    // A copy with storage of its own, of the same length as this vector.
+    public Vector copy() {
+        return new Vector(this.getVectorComponents());
+    }
+
+    // this ← this + other
+    public Vector addInPlace(Vector other) {
+        this.checkLength(other);
+        for (int i = 0; i < this.length; i++) {
+            this.vector[this.offset + i] += other.vector[other.offset + i];
         }
-        return new Vector(result);
+        return this;
     }
 
-    public double dot(Vector other) {
-        if (this.vector.length != other.vector.length) {
-            throw new IllegalArgumentException("Vector lengths do not match.");
+    // this ← this − other
+    public Vector subtractInPlace(Vector other) {
+        this.checkLength(other);
+        for (int i = 0; i < this.length; i++) {
+            this.vector[this.offset + i] -= other.vector[other.offset + i];
         }
-        double sum = 0.0;
-        for (int i = 0; i < this.vector.length; i++) {
-            sum += this.vector[i] * other.vector[i];
+        return this;
+    }
+
+    // this ← scalar this
+    public Vector scaleInPlace(double scalar) {
+        for (int i = this.offset; i < this.offset + this.length; i++) {
+            this.vector[i] *= scalar;
         }
-        return sum;
+        return this;
+    }
+
+    // this ← a x + this, in one pass without a temporary for a x.
+    public Vector axpy(double a, Vector x) {
+        this.checkLength(x);
+        Kernels.get().axpy(a, x.vector, x.offset, this.vector, this.offset, this.length);
+        return this;
+    }
+
+    public double dot(Vector other) {
+        this.checkLength(other);
+        return dot(this.vector, this.offset, other.vector, other.offset, this.length);
+    }
+
+    // The dot product of a[aOffset..aOffset+length-1] and b[bOffset..bOffset+length-1].
+    public static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return Kernels.get().dot(a, aOffset, b, bOffset, length);
     }
 
     public double norm() {
@@ -74,15 +125,25 @@ public class Vector {
     }
 
     public boolean equals(Vector other) {
-        return Arrays.equals(this.vector, other.vector);
+        if (this.length != other.length) {
+            return false;
+        }
+        for (int i = 0; i < this.length; i++) {
+            if (Double.doubleToLongBits(this.vector[this.offset + i]) != Double.doubleToLongBits(other.vector[other.offset + i])) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public double[] getVectorComponents() {
-        double[] toReturn = new double[this.length()];
-        for (int i = 0; i < this.length(); i++) {
-            toReturn[i] = this.vector[i];
-        }
-        return toReturn;
+        return Arrays.copyOfRange(this.vector, this.offset, this.offset + this.length);
+    }
+
+    // Copies the elements into destination starting at destinationOffset, and returns destination.
+    public double[] getVectorComponents(double[] destination, int destinationOffset) {
+        System.arraycopy(this.vector, this.offset, destination, destinationOffset, this.length);
+        return destination;
     }
 
     //---------------------------Resizing array methods-------------------------
@@ -91,7 +152,7 @@ public class Vector {
     }
 
     public int size() { // Returns how many slots are in the array, not how many things are in them.
-        return this.vector.length;
+        return this.capacity;
     }
 
     public int storage() {
@@ -100,7 +161,7 @@ public class Vector {
 
     public boolean contains(double value) {
         for (int i = 0; i < this.length; i++) {
-            if (this.vector[i] == value) {
+            if (this.vector[this.offset + i] == value) {
                 return true;
             }
         }
@@ -109,7 +170,7 @@ public class Vector {
 
     public int find(double value) {
         for (int i = 0; i < this.length; i++) {
-            if (this.vector[i] == value) {
+            if (this.vector[this.offset + i] == value) {
                 return i;
             }
         }
@@ -120,7 +181,7 @@ public class Vector {
         if (index < 0 || index >= this.length) {
             throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + index);
         } else {
-            return vector[index];
+            return this.vector[this.offset + index];
         }
     }
 
@@ -131,7 +192,7 @@ public class Vector {
             resize(index + 1);
         }
 
-        this.vector[index] = value;
+        this.vector[this.offset + index] = value;
         if (index >= this.length) {
             this.length = index + 1;
         }
@@ -141,7 +202,7 @@ public class Vector {
         if (this.length >= this.capacity) {
             resize(this.length + 1);
         }
-        this.vector[this.length++] = value;
+        this.vector[this.offset + this.length++] = value;
     }
 
     public void prepend(double value) {
@@ -149,11 +210,8 @@ public class Vector {
             resize(this.length + 1);
         }
 
-        for (int i = this.length; i > 0; i--) {
-            this.vector[i] = this.vector[i - 1];
-        }
-
-        this.vector[0] = value;
+        System.arraycopy(this.vector, this.offset, this.vector, this.offset + 1, this.length);
+        this.vector[this.offset] = value;
         this.length++;
     }
 
@@ -163,15 +221,15 @@ public class Vector {
 
         for (int i = 0; i < n; i++) {
             if (i != j) {
-                this.vector[j] = this.vector[i];
+                this.vector[this.offset + j] = this.vector[this.offset + i];
             }
-            if (this.vector[i] != value) {
+            if (this.vector[this.offset + i] != value) {
                 j++;
             }
         }
 
         for (int i = j; i < n; i++) {
-            this.vector[i] = 0.0;
+            this.vector[this.offset + i] = 0.0;
             this.length--;
         }
     }
@@ -182,7 +240,7 @@ public class Vector {
             if (!iterator.hasNext()) {
                 return false;
             }
-            if (!iterator.next().equals(this.vector[i])) {
+            if (!iterator.next().equals(this.vector[this.offset + i])) {
                 return false;
             }
         }
@@ -218,10 +276,9 @@ public class Vector {
         // Copy the current contents of the array
         // into the newly allocated storage.
         if (data != null) {
-            for (int i = 0; i < this.length; i++) {
-                this.vector[i] = data[i];
-            }
+            System.arraycopy(data, this.offset, this.vector, 0, this.length);
         }
+        this.offset = 0;
     }
 
     // An image function to format an array as an aggregate: "{2, 3, 5, 7}"
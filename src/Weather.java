@@ -1,13 +1,25 @@
 
 public class Weather {
 
+    // A calendar date. Datasets keep dates as an epoch day - the number of days
+    // since 1970-01-01 - in a plain int; the static methods below convert
+    // between the two without creating Date objects.
     public static class Date {
 
+        public static final int MISSING = Integer.MIN_VALUE; // Epoch day of a missing date
+
+        private static final int DAYS_PER_ERA = 146097;   // Days in 400 Gregorian years
+        private static final int DAYS_0000_TO_1970 = 719468; // From 0000-03-01, the start of era 0
+        private static final int MAX_YEAR = 5000000; // Beyond this epoch days overflow an int
+
         private int year;
         private int month;
         private int day;
 
         public Date(int year, int month, int day) {
+            if (!isValid(year, month, day)) {
+                throw new IllegalArgumentException("Bad date: " + year + "-" + month + "-" + day);
+            }
             this.year = year;
             this.month = month;
             this.day = day;
@@ -25,10 +37,105 @@ public class Weather {
             return this.day;
         }
 
+        // Days since 1970-01-01, so date differences and orderings are plain
+        // integer arithmetic.
         public int toNumber() {
-            return this.day + this.month + this.year;
+            return this.toEpochDay();
+        }
+
+        public int toEpochDay() {
+            return epochDay(this.year, this.month, this.day);
+        }
+
+        public static Date ofEpochDay(int epochDay) {
+            return new Date(year(epochDay), month(epochDay), dayOfMonth(epochDay));
+        }
+
+        // ----------------------------------------------------------------------
+        // Epoch day arithmetic. Years are counted from March, so the leap day
+        // falls at the end of a year and every month but February has a fixed
+        // offset into it (Howard Hinnant's days_from_civil and civil_from_days).
+        public static int epochDay(int year, int month, int day) {
+            int y = month <= 2 ? year - 1 : year;
+            int era = Math.floorDiv(y, 400);
+            int yearOfEra = y - era * 400;
+            int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+        }
+
+        public static int year(int epochDay) {
+            int dayOfEra = dayOfEra(epochDay);
+            int yearOfEra = yearOfEra(dayOfEra);
+            int year = yearOfEra + Math.floorDiv(epochDay + DAYS_0000_TO_1970, DAYS_PER_ERA) * 400;
+            return marchMonth(dayOfEra, yearOfEra) >= 10 ? year + 1 : year;
+        }
+
+        public static int month(int epochDay) {
+            int dayOfEra = dayOfEra(epochDay);
+            int month = marchMonth(dayOfEra, yearOfEra(dayOfEra));
+            return month < 10 ? month + 3 : month - 9;
+        }
+
+        public static int dayOfMonth(int epochDay) {
+            int dayOfEra = dayOfEra(epochDay);
+            int dayOfYear = marchDayOfYear(dayOfEra, yearOfEra(dayOfEra));
+            return dayOfYear - (153 * ((5 * dayOfYear + 2) / 153) + 2) / 5 + 1;
+        }
+
+        // 1 for January 1st, up to 365 or 366.
+        public static int dayOfYear(int epochDay) {
+            return epochDay - epochDay(year(epochDay), 1, 1) + 1;
+        }
+
+        // True for a real calendar date whose epoch day fits in an int.
+        public static boolean isValid(int year, int month, int day) {
+            return year >= -MAX_YEAR && year <= MAX_YEAR
+                    && month >= 1 && month <= 12
+                    && day >= 1 && day <= daysInMonth(year, month);
+        }
+
+        public static boolean isLeapYear(int year) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+        }
+
+        public static int lengthOfYear(int year) {
+            return isLeapYear(year) ? 366 : 365;
+        }
+
+        public static int daysInMonth(int year, int month) {
+            switch (month) {
+                case 2:
+                    return isLeapYear(year) ? 29 : 28;
+                case 4:
+                case 6:
+                case 9:
+                case 11:
+                    return 30;
+                default:
+                    return 31;
+            }
+        }
+
+        private static int dayOfEra(int epochDay) {
+            return Math.floorMod(epochDay + DAYS_0000_TO_1970, DAYS_PER_ERA);
+        }
+
+        private static int yearOfEra(int dayOfEra) {
+            return (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        }
+
+        // Days since March 1st.
+        private static int marchDayOfYear(int dayOfEra, int yearOfEra) {
+            return dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
         }
 
+        // 0 for March, up to 11 for February.
+        private static int marchMonth(int dayOfEra, int yearOfEra) {
+            return (5 * marchDayOfYear(dayOfEra, yearOfEra) + 2) / 153;
+        }
+
+        // ----------------------------------------------------------------------
         public boolean equals(Date other) {
             return other != null
                     && this.year == other.year
@@ -109,8 +216,8 @@ public class Weather {
     // ----------------------------------------------------------------------
     public static class DataPoint {
 
-        private Date date;
-        private String location;
+        private int date;                // Epoch day, or Date.MISSING
+        private short location;          // LocationDictionary id
         private double minTemperature;	  // °C
         private double maxTemperature;	  // °C
         private double rainfall;         // mm
@@ -164,9 +271,61 @@ public class Weather {
                 Boolean rainToday,
                 Boolean rainTomorrow,
                 double rainfallTomorrow) {
+            this(date == null ? Date.MISSING : date.toEpochDay(),
+                    LocationDictionary.id(location),
+                    minTemperature,
+                    maxTemperature,
+                    rainfall,
+                    sunshine,
+                    evaporation,
+                    windGustSpeed,
+                    windGustDirection,
+                    morningTemperature,
+                    morningHumidity,
+                    morningPressure,
+                    morningCloudCover,
+                    morningWindSpeed,
+                    morningWindDirection,
+                    afternoonTemperature,
+                    afternoonHumidity,
+                    afternoonPressure,
+                    afternoonCloudCover,
+                    afternoonWindSpeed,
+                    afternoonWindDirection,
+                    rainToday,
+                    rainTomorrow,
+                    rainfallTomorrow);
+        }
+
+        // date is an epoch day (Date.MISSING if there is none) and location a
+        // LocationDictionary id.
+        public DataPoint(int date,
+                int location,
+                double minTemperature,
+                double maxTemperature,
+                double rainfall,
+                double sunshine,
+                double evaporation,
+                double windGustSpeed,
+                Direction windGustDirection,
+                double morningTemperature,
+                double morningHumidity,
+                double morningPressure,
+                int morningCloudCover,
+                double morningWindSpeed,
+                Direction morningWindDirection,
+                double afternoonTemperature,
+                double afternoonHumidity,
+                double afternoonPressure,
+                int afternoonCloudCover,
+                double afternoonWindSpeed,
+                Direction afternoonWindDirection,
+                Boolean rainToday,
+                Boolean rainTomorrow,
+                double rainfallTomorrow) {
 
             this.date = date;
-            this.location = location;
+            this.location = (short) location;
             this.minTemperature = minTemperature;
             this.maxTemperature = maxTemperature;
             this.rainfall = rainfall;
@@ -187,7 +346,7 @@ public class Weather {
             this.afternoonPressure = afternoonPressure;
             this.afternoonCloudCover = afternoonCloudCover;
             this.afternoonWindSpeed = afternoonWindSpeed;
-            this.afternoonWindDirection = morningWindDirection;
+            this.afternoonWindDirection = afternoonWindDirection;
 
             this.rainToday = rainToday;
             this.rainTomorrow = rainTomorrow;
@@ -196,13 +355,27 @@ public class Weather {
 
         // ----------------------------------------------------------------------
         public Date date() {
+            return this.date == Date.MISSING ? null : Date.ofEpochDay(this.date);
+        }
+
+        public int epochDay() {
             return this.date;
         }
 
         public String location() {
+            return LocationDictionary.name(this.location);
+        }
+
+        public int locationId() {
             return this.location;
         }
 
+        // For readers that number new locations themselves before adding them
+        // to LocationDictionary.
+        void setLocationId(int location) {
+            this.location = (short) location;
+        }
+
         public double minTemperature() {
             return this.minTemperature;
         }
@@ -287,6 +460,10 @@ public class Weather {
             return this.rainTomorrow;
         }
 
+        public double rainfallTomorrow() {
+            return this.rainfallTomorrow;
+        }
+
         // ----------------------------------------------------------------------        
         public double getNumber(String field) {
             switch (field.toLowerCase()) {
@@ -375,7 +552,7 @@ public class Weather {
         public boolean isMissing(String field) {
             switch (field.toLowerCase()) {
                 case "date":
-                    return date() == null;
+                    return this.date == Date.MISSING;
 
                 case "location":
                     return location() == null;
@@ -416,8 +593,8 @@ public class Weather {
 
         @Override
         public String toString() {
-            return this.date + " "
-                    + this.location + " "
+            return this.date() + " "
+                    + this.location() + " "
                     + this.minTemperature + " "
                     + this.maxTemperature + " "
                     + this.rainfall + " "
@@ -0,0 +1,102 @@
+// The features the models learn from, one double[] per data point: a constant
+// 1.0 (the dummy variable, for a plane constant), the date as an epoch day,
+// the location id, the measurements and wind headings in Weather.fields order,
+// then the time of year as a point on a circle and the month. Missing values
+// are NaN, except cloud cover, which is -1.
+public final class WeatherFeatures {
+
+    public static final int COUNT = 25;
+    public static final int DAY_OF_YEAR_SIN = 22; // The seasonal features that follow 0..21
+    public static final int DAY_OF_YEAR_COS = 23;
+    public static final int MONTH = 24;
+    public static final String[] NAMES = new String[COUNT];
+
+    static {
+        System.arraycopy(Weather.fields, 0, NAMES, 0, DAY_OF_YEAR_SIN);
+        NAMES[DAY_OF_YEAR_SIN] = "DayOfYearSin";
+        NAMES[DAY_OF_YEAR_COS] = "DayOfYearCos";
+        NAMES[MONTH] = "Month";
+    }
+
+    private WeatherFeatures() {
+    }
+
+    public static double[] of(Weather.DataPoint dataPoint) {
+        double[] processed = {1.0, // Dummy variable xj0
+            0.0, // Date features, set by dateFeatures()
+            dataPoint.locationId(),
+            dataPoint.minTemperature(),
+            dataPoint.maxTemperature(),
+            dataPoint.rainfall(),
+            dataPoint.hoursOfSunshine(),
+            dataPoint.evaporationRate(),
+            dataPoint.windGustSpeed(),
+            dataPoint.windGustDirection().heading(),
+            dataPoint.morningTemperature(),
+            dataPoint.morningHumidity(),
+            dataPoint.morningPressure(),
+            dataPoint.morningCloudCover(),
+            dataPoint.morningWindSpeed(),
+            dataPoint.morningWindDirection().heading(),
+            dataPoint.afternoonTemperature(),
+            dataPoint.afternoonHumidity(),
+            dataPoint.afternoonPressure(),
+            dataPoint.afternoonCloudCover(),
+            dataPoint.afternoonWindSpeed(),
+            dataPoint.afternoonWindDirection().heading(),
+            0.0,
+            0.0,
+            0.0
+        };
+        dateFeatures(processed, dataPoint.epochDay());
+        return processed;
+    }
+
+    // The same, read from the columns of a WeatherFrame.
+    public static double[] of(WeatherFrame frame, int row) {
+        double[] processed = {1.0, // Dummy variable xj0
+            0.0, // Date features, set by dateFeatures()
+            frame.locationId(row),
+            frame.getNumber(row, WeatherFrame.MIN_TEMPERATURE),
+            frame.getNumber(row, WeatherFrame.MAX_TEMPERATURE),
+            frame.getNumber(row, WeatherFrame.RAINFALL),
+            frame.getNumber(row, WeatherFrame.SUNSHINE),
+            frame.getNumber(row, WeatherFrame.EVAPORATION),
+            frame.getNumber(row, WeatherFrame.WIND_GUST_SPEED),
+            frame.direction(row, WeatherFrame.WIND_GUST_DIRECTION).heading(),
+            frame.getNumber(row, WeatherFrame.MORNING_TEMPERATURE),
+            frame.getNumber(row, WeatherFrame.MORNING_HUMIDITY),
+            frame.getNumber(row, WeatherFrame.MORNING_PRESSURE),
+            frame.getNumber(row, WeatherFrame.MORNING_CLOUD_COVER),
+            frame.getNumber(row, WeatherFrame.MORNING_WIND_SPEED),
+            frame.direction(row, WeatherFrame.MORNING_WIND_DIRECTION).heading(),
+            frame.getNumber(row, WeatherFrame.AFTERNOON_TEMPERATURE),
+            frame.getNumber(row, WeatherFrame.AFTERNOON_HUMIDITY),
+            frame.getNumber(row, WeatherFrame.AFTERNOON_PRESSURE),
+            frame.getNumber(row, WeatherFrame.AFTERNOON_CLOUD_COVER),
+            frame.getNumber(row, WeatherFrame.AFTERNOON_WIND_SPEED),
+            frame.direction(row, WeatherFrame.AFTERNOON_WIND_DIRECTION).heading(),
+            0.0,
+            0.0,
+            0.0
+        };
+        dateFeatures(processed, frame.epochDay(row));
+        return processed;
+    }
+
+    // The date as its epoch day, and the season as the day of the year around a
+    // circle (so December 31st sits next to January 1st) and the month. All are
+    // NaN, to be filled in like any missing value, when there is no date.
+    private static void dateFeatures(double[] processed, int epochDay) {
+        if (epochDay == Weather.Date.MISSING) {
+            processed[1] = processed[DAY_OF_YEAR_SIN] = processed[DAY_OF_YEAR_COS] = processed[MONTH] = Double.NaN;
+            return;
+        }
+        int year = Weather.Date.year(epochDay);
+        double angle = 2.0 * Math.PI * (epochDay - Weather.Date.epochDay(year, 1, 1)) / Weather.Date.lengthOfYear(year);
+        processed[1] = epochDay;
+        processed[DAY_OF_YEAR_SIN] = Math.sin(angle);
+        processed[DAY_OF_YEAR_COS] = Math.cos(angle);
+        processed[MONTH] = Weather.Date.month(epochDay);
+    }
+}
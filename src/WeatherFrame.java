@@ -0,0 +1,431 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// A column-oriented weather dataset. Every field of Weather.fields is held in
+// its own primitive array (double for measurements, byte for cloud cover,
+// directions and booleans, int for dates, short for locations) with a bitmap
+// per column marking missing values. Column ids are the indices into
+// Weather.fields, so WeatherFrame.MIN_TEMPERATURE == 3 names "MinTemperature".
+public class WeatherFrame {
+
+    public static final int DATE = 1;
+    public static final int LOCATION = 2;
+    public static final int MIN_TEMPERATURE = 3;
+    public static final int MAX_TEMPERATURE = 4;
+    public static final int RAINFALL = 5;
+    public static final int SUNSHINE = 6;
+    public static final int EVAPORATION = 7;
+    public static final int WIND_GUST_SPEED = 8;
+    public static final int WIND_GUST_DIRECTION = 9;
+    public static final int MORNING_TEMPERATURE = 10;
+    public static final int MORNING_HUMIDITY = 11;
+    public static final int MORNING_PRESSURE = 12;
+    public static final int MORNING_CLOUD_COVER = 13;
+    public static final int MORNING_WIND_SPEED = 14;
+    public static final int MORNING_WIND_DIRECTION = 15;
+    public static final int AFTERNOON_TEMPERATURE = 16;
+    public static final int AFTERNOON_HUMIDITY = 17;
+    public static final int AFTERNOON_PRESSURE = 18;
+    public static final int AFTERNOON_CLOUD_COVER = 19;
+    public static final int AFTERNOON_WIND_SPEED = 20;
+    public static final int AFTERNOON_WIND_DIRECTION = 21;
+    public static final int RAIN_TODAY = 22;
+    public static final int RAIN_TOMORROW = 23;
+    public static final int RAINFALL_TOMORROW = 24;
+
+    public static final int NUM_COLUMNS = 25; // Column 0 is the "Dummy" field and holds no data
+
+    private static final byte NONE = 0;
+    private static final byte DOUBLE = 1;
+    private static final byte CLOUD_COVER = 2; // oktas in a byte
+    private static final byte DIRECTION = 3;   // Direction ordinal in a byte
+    private static final byte BOOLEAN = 4;     // 0 or 1 in a byte
+
+    private static final byte[] TYPES = {
+        NONE, NONE, NONE,
+        DOUBLE, DOUBLE, DOUBLE, DOUBLE, DOUBLE, DOUBLE, DIRECTION,
+        DOUBLE, DOUBLE, DOUBLE, CLOUD_COVER, DOUBLE, DIRECTION,
+        DOUBLE, DOUBLE, DOUBLE, CLOUD_COVER, DOUBLE, DIRECTION,
+        BOOLEAN, BOOLEAN, DOUBLE
+    };
+
+    private static final HashMap<String, Integer> COLUMN_NAMES = new HashMap<>();
+
+    static {
+        for (int i = 1; i < Weather.fields.length; i++) {
+            COLUMN_NAMES.put(Weather.fields[i].toLowerCase(), i);
+        }
+        // Names used by Weather.DataPoint.getNumber() and friends
+        COLUMN_NAMES.put("hoursofsunshine", SUNSHINE);
+        COLUMN_NAMES.put("evaporationrate", EVAPORATION);
+        COLUMN_NAMES.put("gustspeed", WIND_GUST_SPEED);
+        COLUMN_NAMES.put("gustdirection", WIND_GUST_DIRECTION);
+    }
+
+    private static final Weather.Direction[] DIRECTIONS = Weather.Direction.values();
+
+    private int size;
+    private int capacity;
+    private int[] dates;       // Weather.Date epoch days
+    private short[] locations; // LocationDictionary ids
+    private final double[][] doubles = new double[NUM_COLUMNS][];
+    private final byte[][] bytes = new byte[NUM_COLUMNS][];
+    private final long[][] missing = new long[NUM_COLUMNS][];
+
+    public WeatherFrame() {
+        this(16);
+    }
+
+    public WeatherFrame(int capacity) {
+        this.resize(Math.max(1, capacity));
+    }
+
+    // Builds a frame around existing column arrays, as written by WeatherSnapshot.
+    // locations holds indices into locationNames, which are changed to
+    // LocationDictionary ids in place.
+    static WeatherFrame wrap(int size, int[] dates, short[] locations, double[][] doubles,
+            byte[][] bytes, long[][] missing, List<String> locationNames) {
+        WeatherFrame frame = new WeatherFrame(1);
+        frame.size = size;
+        frame.capacity = size;
+        frame.dates = dates;
+        frame.locations = locations;
+        for (int column = 1; column < NUM_COLUMNS; column++) {
+            frame.doubles[column] = doubles[column];
+            frame.bytes[column] = bytes[column];
+            frame.missing[column] = missing[column];
+        }
+        short[] ids = new short[locationNames.size()];
+        boolean same = true;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (short) LocationDictionary.id(locationNames.get(i));
+            same &= ids[i] == i;
+        }
+        if (!same) {
+            for (int row = 0; row < size; row++) {
+                if (!frame.isMissing(row, LOCATION)) {
+                    locations[row] = ids[locations[row]];
+                }
+            }
+        }
+        return frame;
+    }
+
+    public static WeatherFrame of(List<Weather.DataPoint> data) {
+        WeatherFrame frame = new WeatherFrame(data.size());
+        for (Weather.DataPoint dataPoint : data) {
+            frame.add(dataPoint);
+        }
+        return frame;
+    }
+
+    // Returns the column id for a field name, accepting both the names in
+    // Weather.fields and those used by Weather.DataPoint.getNumber().
+    public static int column(String field) {
+        Integer column = COLUMN_NAMES.get(field.toLowerCase());
+        if (column == null) {
+            throw new IllegalArgumentException("Invalid field name: " + field);
+        }
+        return column;
+    }
+
+    public static boolean isNumeric(int column) {
+        return TYPES[column] == DOUBLE || TYPES[column] == CLOUD_COVER;
+    }
+
+    public static boolean isDoubleColumn(int column) {
+        return TYPES[column] == DOUBLE;
+    }
+
+    public static boolean isByteColumn(int column) {
+        return TYPES[column] == CLOUD_COVER || TYPES[column] == DIRECTION || TYPES[column] == BOOLEAN;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void add(Weather.DataPoint dataPoint) {
+        if (this.size == this.capacity) {
+            this.resize(Math.max(16, this.capacity * 2));
+        }
+        int row = this.size++;
+        this.dates[row] = dataPoint.epochDay();
+        this.setMissing(DATE, row, dataPoint.epochDay() == Weather.Date.MISSING);
+        this.locations[row] = (short) dataPoint.locationId();
+        this.setMissing(LOCATION, row, dataPoint.locationId() == LocationDictionary.MISSING);
+
+        this.setDouble(MIN_TEMPERATURE, row, dataPoint.minTemperature());
+        this.setDouble(MAX_TEMPERATURE, row, dataPoint.maxTemperature());
+        this.setDouble(RAINFALL, row, dataPoint.rainfall());
+        this.setDouble(SUNSHINE, row, dataPoint.hoursOfSunshine());
+        this.setDouble(EVAPORATION, row, dataPoint.evaporationRate());
+        this.setDouble(WIND_GUST_SPEED, row, dataPoint.windGustSpeed());
+        this.setDirection(WIND_GUST_DIRECTION, row, dataPoint.windGustDirection());
+
+        this.setDouble(MORNING_TEMPERATURE, row, dataPoint.morningTemperature());
+        this.setDouble(MORNING_HUMIDITY, row, dataPoint.morningHumidity());
+        this.setDouble(MORNING_PRESSURE, row, dataPoint.morningPressure());
+        this.setCloudCover(MORNING_CLOUD_COVER, row, dataPoint.morningCloudCover());
+        this.setDouble(MORNING_WIND_SPEED, row, dataPoint.morningWindSpeed());
+        this.setDirection(MORNING_WIND_DIRECTION, row, dataPoint.morningWindDirection());
+
+        this.setDouble(AFTERNOON_TEMPERATURE, row, dataPoint.afternoonTemperature());
+        this.setDouble(AFTERNOON_HUMIDITY, row, dataPoint.afternoonHumidity());
+        this.setDouble(AFTERNOON_PRESSURE, row, dataPoint.afternoonPressure());
+        this.setCloudCover(AFTERNOON_CLOUD_COVER, row, dataPoint.afternoonCloudCover());
+        this.setDouble(AFTERNOON_WIND_SPEED, row, dataPoint.afternoonWindSpeed());
+        this.setDirection(AFTERNOON_WIND_DIRECTION, row, dataPoint.afternoonWindDirection());
+
+        this.setBoolean(RAIN_TODAY, row, dataPoint.rainToday());
+        this.setBoolean(RAIN_TOMORROW, row, dataPoint.rainTomorrow());
+        this.setDouble(RAINFALL_TOMORROW, row, dataPoint.rainfallTomorrow());
+    }
+
+    // Appends every row of other, in order.
+    public void addAll(WeatherFrame other) {
+        int total = this.size + other.size;
+        if (total > this.capacity) {
+            this.resize(Math.max(total, this.capacity * 2));
+        }
+        System.arraycopy(other.dates, 0, this.dates, this.size, other.size);
+        System.arraycopy(other.locations, 0, this.locations, this.size, other.size);
+        for (int column = 1; column < NUM_COLUMNS; column++) {
+            if (this.doubles[column] != null) {
+                System.arraycopy(other.doubles[column], 0, this.doubles[column], this.size, other.size);
+            } else if (this.bytes[column] != null) {
+                System.arraycopy(other.bytes[column], 0, this.bytes[column], this.size, other.size);
+            }
+            for (int row = 0; row < other.size; row++) {
+                this.setMissing(column, this.size + row, other.isMissing(row, column));
+            }
+        }
+        this.size = total;
+    }
+
+    // Drops every row from size onwards.
+    public void truncate(int size) {
+        if (size < this.size) {
+            this.size = Math.max(0, size);
+        }
+    }
+
+    // Rebuilds the row as a Weather.DataPoint.
+    public Weather.DataPoint get(int row) {
+        this.checkRow(row);
+        return new Weather.DataPoint(
+                this.epochDay(row),
+                this.locationId(row),
+                this.doubles[MIN_TEMPERATURE][row],
+                this.doubles[MAX_TEMPERATURE][row],
+                this.doubles[RAINFALL][row],
+                this.doubles[SUNSHINE][row],
+                this.doubles[EVAPORATION][row],
+                this.doubles[WIND_GUST_SPEED][row],
+                this.direction(row, WIND_GUST_DIRECTION),
+                this.doubles[MORNING_TEMPERATURE][row],
+                this.doubles[MORNING_HUMIDITY][row],
+                this.doubles[MORNING_PRESSURE][row],
+                this.cloudCover(row, MORNING_CLOUD_COVER),
+                this.doubles[MORNING_WIND_SPEED][row],
+                this.direction(row, MORNING_WIND_DIRECTION),
+                this.doubles[AFTERNOON_TEMPERATURE][row],
+                this.doubles[AFTERNOON_HUMIDITY][row],
+                this.doubles[AFTERNOON_PRESSURE][row],
+                this.cloudCover(row, AFTERNOON_CLOUD_COVER),
+                this.doubles[AFTERNOON_WIND_SPEED][row],
+                this.direction(row, AFTERNOON_WIND_DIRECTION),
+                this.getBooleanValue(row, RAIN_TODAY),
+                this.getBooleanValue(row, RAIN_TOMORROW),
+                this.doubles[RAINFALL_TOMORROW][row]);
+    }
+
+    // ----------------------------------------------------------------------
+    // Per-row accessors
+    public Weather.Date date(int row) {
+        return this.isMissing(row, DATE) ? null : Weather.Date.ofEpochDay(this.dates[row]);
+    }
+
+    // The Weather.Date epoch day, or Weather.Date.MISSING.
+    public int epochDay(int row) {
+        return this.isMissing(row, DATE) ? Weather.Date.MISSING : this.dates[row];
+    }
+
+    public String location(int row) {
+        return this.isMissing(row, LOCATION) ? null : LocationDictionary.name(this.locations[row]);
+    }
+
+    // The LocationDictionary id, or LocationDictionary.MISSING.
+    public int locationId(int row) {
+        return this.isMissing(row, LOCATION) ? LocationDictionary.MISSING : this.locations[row];
+    }
+
+    public double getNumber(int row, int column) {
+        switch (TYPES[column]) {
+            case DOUBLE:
+                return this.doubles[column][row];
+
+            case CLOUD_COVER:
+                return this.bytes[column][row];
+
+            default:
+                throw new IllegalArgumentException("Invalid field name: " + Weather.fields[column]);
+        }
+    }
+
+    public int cloudCover(int row, int column) {
+        return this.bytes[column][row];
+    }
+
+    public Weather.Direction direction(int row, int column) {
+        return DIRECTIONS[this.bytes[column][row]];
+    }
+
+    public Boolean getBooleanValue(int row, int column) {
+        return this.isMissing(row, column) ? null : this.bytes[column][row] != 0;
+    }
+
+    public boolean isMissing(int row, int column) {
+        return (this.missing[column][row >>> 6] & (1L << row)) != 0;
+    }
+
+    // ----------------------------------------------------------------------
+    // Whole-column access for scans. The arrays are the frame's own storage and
+    // may be longer than size(); only the first size() entries are meaningful.
+    public double[] doubleColumn(int column) {
+        if (TYPES[column] != DOUBLE) {
+            throw new IllegalArgumentException("Not a double column: " + Weather.fields[column]);
+        }
+        return this.doubles[column];
+    }
+
+    public byte[] byteColumn(int column) {
+        if (this.bytes[column] == null) {
+            throw new IllegalArgumentException("Not a byte column: " + Weather.fields[column]);
+        }
+        return this.bytes[column];
+    }
+
+    public int[] dateColumn() {
+        return this.dates;
+    }
+
+    public short[] locationColumn() {
+        return this.locations;
+    }
+
+    // The rows dated from first to last inclusive, in row order, by one scan
+    // of the date column.
+    public int[] rowsBetween(Weather.Date first, Weather.Date last) {
+        int from = first.toEpochDay();
+        int to = last.toEpochDay();
+        int[] rows = new int[16];
+        int count = 0;
+        for (int row = 0; row < this.size; row++) {
+            int date = this.dates[row];
+            if (date >= from && date <= to && !this.isMissing(row, DATE)) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    public long[] missingBitmap(int column) {
+        return this.missing[column];
+    }
+
+    public String locationName(int id) {
+        return LocationDictionary.name(id);
+    }
+
+    public int numLocations() {
+        return LocationDictionary.size();
+    }
+
+    // Removes the rows with a missing value in the given column, keeping the
+    // remaining rows in order. Returns the number of rows removed.
+    public int cullMissing(int column) {
+        int kept = 0;
+        for (int row = 0; row < this.size; row++) {
+            if (!this.isMissing(row, column)) {
+                if (kept != row) {
+                    this.copyRow(row, kept);
+                }
+                kept++;
+            }
+        }
+        int removed = this.size - kept;
+        this.size = kept;
+        return removed;
+    }
+
+    // ----------------------------------------------------------------------
+    private void setDouble(int column, int row, double value) {
+        this.doubles[column][row] = value;
+        this.setMissing(column, row, Double.isNaN(value));
+    }
+
+    private void setCloudCover(int column, int row, int value) {
+        this.bytes[column][row] = (byte) value;
+        this.setMissing(column, row, value < 0);
+    }
+
+    private void setDirection(int column, int row, Weather.Direction value) {
+        if (value == null) {
+            value = Weather.Direction.MISSING;
+        }
+        this.bytes[column][row] = (byte) value.ordinal();
+        this.setMissing(column, row, value == Weather.Direction.MISSING);
+    }
+
+    private void setBoolean(int column, int row, Boolean value) {
+        this.bytes[column][row] = (byte) (value != null && value ? 1 : 0);
+        this.setMissing(column, row, value == null);
+    }
+
+    private void setMissing(int column, int row, boolean isMissing) {
+        if (isMissing) {
+            this.missing[column][row >>> 6] |= 1L << row;
+        } else {
+            this.missing[column][row >>> 6] &= ~(1L << row);
+        }
+    }
+
+    private void copyRow(int from, int to) {
+        this.dates[to] = this.dates[from];
+        this.locations[to] = this.locations[from];
+        for (int column = 1; column < NUM_COLUMNS; column++) {
+            if (this.doubles[column] != null) {
+                this.doubles[column][to] = this.doubles[column][from];
+            } else if (this.bytes[column] != null) {
+                this.bytes[column][to] = this.bytes[column][from];
+            }
+            this.setMissing(column, to, this.isMissing(from, column));
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= this.size) {
+            throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + row);
+        }
+    }
+
+    private void resize(int capacity) {
+        this.dates = this.dates == null ? new int[capacity] : Arrays.copyOf(this.dates, capacity);
+        this.locations = this.locations == null ? new short[capacity] : Arrays.copyOf(this.locations, capacity);
+        int words = (capacity + 63) >>> 6;
+        for (int column = 1; column < NUM_COLUMNS; column++) {
+            if (TYPES[column] == DOUBLE) {
+                this.doubles[column] = this.doubles[column] == null ? new double[capacity] : Arrays.copyOf(this.doubles[column], capacity);
+            } else if (TYPES[column] != NONE) {
+                this.bytes[column] = this.bytes[column] == null ? new byte[capacity] : Arrays.copyOf(this.bytes[column], capacity);
+            }
+            this.missing[column] = this.missing[column] == null ? new long[words] : Arrays.copyOf(this.missing[column], words);
+        }
+        this.capacity = capacity;
+    }
+}
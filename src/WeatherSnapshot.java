@@ -0,0 +1,225 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+// Binary, column-oriented copy of a parsed WeatherFrame, so later runs can skip
+// the text parse. Layout (little-endian):
+//
+//   int    magic "AWSN", int version
+//   long   source file size, long source file mtime (ms)
+//   int    rows, int number of locations
+//   per location: short byte length, UTF-8 bytes
+//   int[rows] dates (Weather.Date epoch days), short[rows] location ids
+//   per column 3..24: double[rows] or byte[rows]
+//   per column 1..24: long[(rows + 63) / 64] missing-value bitmap
+//
+// A snapshot is only used while the source file has the size and modification
+// time recorded in its header.
+public class WeatherSnapshot {
+
+    private static final int MAGIC = 0x4157534E; // "AWSN"
+    private static final int VERSION = 3; // 1 packed dates as year * 10000 + month * 100 + day; 2 held the morning wind direction twice
+    private static final int HEADER_SIZE = 32;
+    private static final int BUFFER_SIZE = 1 << 20; // Bytes written at a time
+    private static final int MAP_SIZE = 1 << 30;    // Largest region mapped at once when loading
+
+    public static File snapshotFile(String filename) {
+        return new File(filename + ".snapshot");
+    }
+
+    // Returns the frame stored in the snapshot, or null when there is no
+    // snapshot, it no longer matches the source file, or it is cut short or
+    // otherwise the wrong size for what its header says it holds.
+    public static WeatherFrame load(File snapshot, File source) throws IOException {
+        if (!snapshot.isFile() || !source.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "r")) {
+            FileChannel channel = file.getChannel();
+            // Check the header before mapping, so a stale snapshot is not left
+            // mapped while write() replaces it.
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            byte[] start = new byte[HEADER_SIZE];
+            file.readFully(start);
+            ByteBuffer header = ByteBuffer.wrap(start).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getLong() != source.length()
+                    || header.getLong() != source.lastModified()) {
+                return null;
+            }
+            int rows = header.getInt();
+            int numLocations = header.getInt();
+            if (rows < 0 || numLocations < 0 || numLocations > Short.MAX_VALUE + 1) {
+                return null;
+            }
+
+            // Names are short (at most 2 + 65535 bytes each), so one mapping holds them
+            long namesSize = Math.min(channel.size() - HEADER_SIZE, Math.min(numLocations * (2L + 0xffff), Integer.MAX_VALUE));
+            MappedByteBuffer names = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, namesSize);
+            names.order(ByteOrder.LITTLE_ENDIAN);
+            ArrayList<String> locations = new ArrayList<>();
+            for (int i = 0; i < numLocations; i++) {
+                if (names.remaining() < 2) {
+                    return null;
+                }
+                byte[] name = new byte[names.getShort() & 0xffff];
+                if (names.remaining() < name.length) {
+                    return null;
+                }
+                names.get(name);
+                locations.add(new String(name, StandardCharsets.UTF_8));
+            }
+            long position = HEADER_SIZE + names.position();
+            if (channel.size() - position != columnBytes(rows)) {
+                return null;
+            }
+
+            int[] dates = new int[rows];
+            position = read(channel, position, rows, 4, (buffer, from, count) -> buffer.asIntBuffer().get(dates, from, count));
+            short[] locationIds = new short[rows];
+            position = read(channel, position, rows, 2, (buffer, from, count) -> buffer.asShortBuffer().get(locationIds, from, count));
+
+            double[][] doubles = new double[WeatherFrame.NUM_COLUMNS][];
+            byte[][] bytes = new byte[WeatherFrame.NUM_COLUMNS][];
+            for (int column = WeatherFrame.MIN_TEMPERATURE; column < WeatherFrame.NUM_COLUMNS; column++) {
+                if (WeatherFrame.isDoubleColumn(column)) {
+                    double[] values = doubles[column] = new double[rows];
+                    position = read(channel, position, rows, 8, (buffer, from, count) -> buffer.asDoubleBuffer().get(values, from, count));
+                } else {
+                    byte[] values = bytes[column] = new byte[rows];
+                    position = read(channel, position, rows, 1, (buffer, from, count) -> buffer.duplicate().get(values, from, count));
+                }
+            }
+            long[][] missing = new long[WeatherFrame.NUM_COLUMNS][];
+            for (int column = 1; column < WeatherFrame.NUM_COLUMNS; column++) {
+                long[] words = missing[column] = new long[words(rows)];
+                position = read(channel, position, words.length, 8, (buffer, from, count) -> buffer.asLongBuffer().get(words, from, count));
+            }
+            long[] locationMissing = missing[WeatherFrame.LOCATION];
+            for (int row = 0; row < rows; row++) {
+                boolean present = (locationMissing[row >>> 6] & (1L << row)) == 0;
+                if (present && (locationIds[row] < 0 || locationIds[row] >= numLocations)) {
+                    return null;
+                }
+            }
+            return WeatherFrame.wrap(rows, dates, locationIds, doubles, bytes, missing, locations);
+        }
+    }
+
+    // Writes the header and names, then streams each column through one
+    // fixed-size buffer, so writing needs no second copy of the frame and the
+    // snapshot is not limited to what one ByteBuffer can hold.
+    public static void write(WeatherFrame frame, File snapshot, File source) throws IOException {
+        int rows = frame.size();
+        // Write beside the target and rename, so a reader never sees half a
+        // snapshot. The file is written through its channel rather than mapped,
+        // as a live mapping can keep the rename from replacing the old snapshot.
+        File temporary = new File(snapshot.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(temporary, "rw")) {
+            FileChannel channel = file.getChannel();
+            channel.truncate(0);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            buffer.putLong(source.length()).putLong(source.lastModified());
+            buffer.putInt(rows).putInt(frame.numLocations());
+            for (int i = 0; i < frame.numLocations(); i++) {
+                byte[] name = frame.locationName(i).getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < 2 + name.length) {
+                    flush(channel, buffer);
+                }
+                buffer.putShort((short) name.length).put(name);
+            }
+
+            int[] dates = frame.dateColumn();
+            write(channel, buffer, rows, 4, (out, from, count) -> out.asIntBuffer().put(dates, from, count));
+            short[] locations = frame.locationColumn();
+            write(channel, buffer, rows, 2, (out, from, count) -> out.asShortBuffer().put(locations, from, count));
+            for (int column = WeatherFrame.MIN_TEMPERATURE; column < WeatherFrame.NUM_COLUMNS; column++) {
+                if (WeatherFrame.isDoubleColumn(column)) {
+                    double[] values = frame.doubleColumn(column);
+                    write(channel, buffer, rows, 8, (out, from, count) -> out.asDoubleBuffer().put(values, from, count));
+                } else {
+                    byte[] values = frame.byteColumn(column);
+                    write(channel, buffer, rows, 1, (out, from, count) -> out.duplicate().put(values, from, count));
+                }
+            }
+            for (int column = 1; column < WeatherFrame.NUM_COLUMNS; column++) {
+                long[] words = frame.missingBitmap(column);
+                write(channel, buffer, words(rows), 8, (out, from, count) -> out.asLongBuffer().put(words, from, count));
+            }
+            flush(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Copies elements [from, from + count) of an array to or from a buffer
+    // positioned where they go, without moving the buffer's position.
+    private interface Transfer {
+
+        void apply(ByteBuffer buffer, int from, int count);
+    }
+
+    // Puts count elements of width bytes into the file through buffer,
+    // writing the buffer out each time it fills.
+    private static void write(FileChannel channel, ByteBuffer buffer, int count, int width, Transfer put) throws IOException {
+        for (int from = 0; from < count;) {
+            if (buffer.remaining() < width) {
+                flush(channel, buffer);
+            }
+            int length = Math.min(count - from, buffer.remaining() / width);
+            put.apply(buffer, from, length);
+            skip(buffer, (long) width * length);
+            from += length;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Gets count elements of width bytes from the file at position, mapping at
+    // most MAP_SIZE bytes at a time. Returns the position after them.
+    private static long read(FileChannel channel, long position, int count, int width, Transfer get) throws IOException {
+        int perMap = MAP_SIZE / width;
+        for (int from = 0; from < count; from += perMap) {
+            int length = Math.min(count - from, perMap);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) width * length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            get.apply(buffer, from, length);
+            position += (long) width * length;
+        }
+        return position;
+    }
+
+    // The bytes after the location names: every column and missing-value bitmap.
+    private static long columnBytes(int rows) {
+        long size = 6L * rows;
+        for (int column = WeatherFrame.MIN_TEMPERATURE; column < WeatherFrame.NUM_COLUMNS; column++) {
+            size += (WeatherFrame.isDoubleColumn(column) ? 8L : 1L) * rows;
+        }
+        return size + 8L * words(rows) * (WeatherFrame.NUM_COLUMNS - 1);
+    }
+
+    private static int words(int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    private static void skip(ByteBuffer buffer, long bytes) {
+        buffer.position(buffer.position() + (int) bytes);
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// ColumnStatistics has to count every value present and missing, agree with a
+// plain pass over the rows, and give the same results on any number of threads.
+public class ColumnStatisticsTest {
+
+    private static final int[] COLUMNS = {
+        WeatherFrame.MIN_TEMPERATURE, WeatherFrame.SUNSHINE, WeatherFrame.MORNING_CLOUD_COVER, WeatherFrame.WIND_GUST_SPEED
+    };
+
+    // More than two of ColumnStatistics' blocks of rows, the last one partial
+    private static WeatherFrame frame(int rows) {
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(1000, 1, 0.3);
+        WeatherFrame frame = new WeatherFrame();
+        for (int row = 0; row < rows; row++) {
+            frame.add(data.get((row * 7) % data.size()));
+        }
+        return frame;
+    }
+
+    @Test
+    public void statisticsMatchAPlainScan() {
+        WeatherFrame frame = frame(150001);
+        ColumnStatistics[] statistics = ColumnStatistics.of(frame, COLUMNS, 1);
+        for (int j = 0; j < COLUMNS.length; j++) {
+            int column = COLUMNS[j];
+            double[] values = new double[frame.size()];
+            int count = 0;
+            double sum = 0.0;
+            for (int row = 0; row < frame.size(); row++) {
+                if (!frame.isMissing(row, column)) {
+                    values[count++] = frame.getNumber(row, column);
+                    sum += frame.getNumber(row, column);
+                }
+            }
+            Arrays.sort(values, 0, count);
+            String field = Weather.fields[column];
+            ColumnStatistics statistic = statistics[j];
+            assertEquals(field, column, statistic.column());
+            assertEquals(field, count, statistic.count());
+            assertEquals(field, frame.size() - count, statistic.missing());
+            assertTrue(field, statistic.missing() > 0);
+            assertEquals(field, values[0], statistic.min(), 0.0);
+            assertEquals(field, values[count - 1], statistic.max(), 0.0);
+            assertEquals(field, sum / count, statistic.mean(), 1e-9 * Math.abs(sum / count) + 1e-12);
+            assertEquals(field, values[(count - 1) / 2], statistic.percentile(2), (values[count / 2] - values[(count - 1) / 2]));
+        }
+    }
+
+    @Test
+    public void statisticsDoNotDependOnThreads() {
+        WeatherFrame frame = frame(200000);
+        String expected = ColumnStatistics.toJson(ColumnStatistics.of(frame, COLUMNS, 1));
+        for (int threads : new int[]{2, 3, 8}) {
+            assertEquals(threads + " threads", expected, ColumnStatistics.toJson(ColumnStatistics.of(frame, COLUMNS, threads)));
+        }
+    }
+
+    @Test
+    public void mainCountsTheValuesCullingRemoves() throws IOException {
+        File source = File.createTempFile("weather", ".csv");
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        try {
+            List<String> lines = WeatherRows.lines(2000, 2, 0.3);
+            Files.write(source.toPath(), lines, Charset.defaultCharset());
+            WeatherFrame frame = new WeatherFrame();
+            MappedDataReader.readDataFile(source.getPath(), frame, 0);
+            int sunshine = ColumnStatistics.of(frame, new int[]{WeatherFrame.SUNSHINE}, 1)[0].missing();
+            assertTrue(sunshine > 0);
+
+            System.setOut(new PrintStream(printed, true));
+            AustraliaWeather.main(new String[]{source.getPath(), "-Sunshine", "-Evaporation"});
+            String output = printed.toString();
+            assertTrue(output, output.contains("Sunshine: " + sunshine + " records removed"));
+            assertTrue(output, output.contains("  Missing: " + sunshine + "\n"));
+        } finally {
+            System.setOut(out);
+            Files.delete(source.toPath());
+        }
+    }
+}
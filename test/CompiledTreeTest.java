@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// A compiled tree has to predict what walking the Node objects predicts, one
+// row at a time or in batches of any size, for rows missing features and rows
+// it was not trained on.
+public class CompiledTreeTest {
+
+    private static DecisionTree.Node tree(WeatherFrame frame, int maxDepth) {
+        return new DecisionTree(frame, maxDepth, DecisionTree.DEFAULT_MIN_LEAF_SIZE).root();
+    }
+
+    // The sum of scale times each tree's leaf value, walking the nodes.
+    private static double expected(List<DecisionTree.Node> trees, double scale, double[] features) {
+        double sum = 0.0;
+        for (DecisionTree.Node root : trees) {
+            sum += scale * root.leaf(features).value;
+        }
+        return sum;
+    }
+
+    private static void assertSamePredictions(List<DecisionTree.Node> trees, double scale, double[][] features) {
+        CompiledTree compiled = CompiledTree.of(trees, scale);
+        int numNodes = 0;
+        for (DecisionTree.Node root : trees) {
+            numNodes += root.numNodes();
+        }
+        assertEquals(trees.size(), compiled.numTrees());
+        assertEquals(numNodes, compiled.numNodes());
+
+        double[] expected = new double[features.length];
+        for (int row = 0; row < features.length; row++) {
+            expected[row] = expected(trees, scale, features[row]);
+            assertEquals("row " + row, expected[row], compiled.predict(features[row]), 0.0);
+        }
+        // Whole batches and partial ones, starting anywhere
+        int[][] ranges = {{0, features.length}, {0, 1}, {3, 258}, {7, 263}, {100, 357}, {features.length - 300, features.length}};
+        for (int[] range : ranges) {
+            double[] sums = new double[features.length];
+            Arrays.fill(sums, Double.NaN);
+            compiled.predict(features, range[0], range[1], sums);
+            for (int row = 0; row < features.length; row++) {
+                boolean inRange = row >= range[0] && row < range[1];
+                assertEquals(range[0] + ".." + range[1] + ", row " + row, inRange ? expected[row] : Double.NaN, sums[row], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void compiledTreesPredictLikeTheirNodes() {
+        WeatherFrame training = DecisionTreeTest.frame(10000, 31);
+        double[][] seen = DecisionTreeTest.features(training);
+        double[][] unseen = DecisionTreeTest.features(DecisionTreeTest.frame(3000, 32));
+        for (int maxDepth : new int[]{1, 4, DecisionTree.DEFAULT_MAX_DEPTH}) {
+            List<DecisionTree.Node> trees = new ArrayList<>();
+            trees.add(tree(training, maxDepth));
+            assertSamePredictions(trees, 1.0, seen);
+            assertSamePredictions(trees, 1.0, unseen);
+        }
+    }
+
+    @Test
+    public void missingFeaturesFollowTheirSplits() {
+        WeatherFrame training = WeatherFrame.of(WeatherRows.dataPoints(10000, 33, 0.5));
+        DecisionTree.Node root = tree(training, DecisionTree.DEFAULT_MAX_DEPTH);
+        double[][] features = DecisionTreeTest.features(training);
+        int missing = 0;
+        for (double[] row : features) {
+            for (double value : row) {
+                missing += Double.isNaN(value) ? 1 : 0;
+            }
+        }
+        assertTrue(missing > features.length);
+        assertSamePredictions(new ArrayList<>(Arrays.asList(root)), 1.0, features);
+
+        // Every feature missing
+        double[][] empty = new double[400][WeatherFeatures.COUNT];
+        for (double[] row : empty) {
+            Arrays.fill(row, Double.NaN);
+            row[0] = 1.0;
+        }
+        assertSamePredictions(new ArrayList<>(Arrays.asList(root)), 1.0, empty);
+    }
+
+    @Test
+    public void treesAreAddedUpInOrderAndScaled() {
+        WeatherFrame training = DecisionTreeTest.frame(8000, 34);
+        double[][] features = DecisionTreeTest.features(training);
+        List<DecisionTree.Node> trees = new ArrayList<>();
+        trees.add(new DecisionTree.Node(0.25, 1)); // A tree that is a single leaf
+        for (int maxDepth = 1; maxDepth <= 8; maxDepth++) {
+            trees.add(tree(training, maxDepth));
+        }
+        assertSamePredictions(trees, 1.0, features);
+        assertSamePredictions(trees, 0.1, features);
+        assertSamePredictions(new ArrayList<>(trees.subList(0, 1)), 0.1, features);
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// A decision tree has to come out node for node the same whatever the number
+// of threads binning its features and growing it.
+public class DecisionTreeTest {
+
+    private static final int ROWS = 40000; // Several histogram chunks, and nodes large enough to fork
+
+    static WeatherFrame frame(int rows, long seed) {
+        return WeatherFrame.of(WeatherRows.dataPoints(rows, seed, 0.2));
+    }
+
+    // The WeatherFeatures of every row of frame.
+    static double[][] features(WeatherFrame frame) {
+        double[][] features = new double[frame.size()][];
+        for (int row = 0; row < features.length; row++) {
+            features[row] = WeatherFeatures.of(frame, row);
+        }
+        return features;
+    }
+
+    static void assertSameTree(String message, DecisionTree.Node expected, DecisionTree.Node actual) {
+        assertEquals(message, expected.feature, actual.feature);
+        assertEquals(message, expected.bin, actual.bin);
+        assertEquals(message, expected.threshold, actual.threshold, 0.0);
+        assertEquals(message, expected.missingLeft, actual.missingLeft);
+        assertEquals(message, expected.value, actual.value, 0.0);
+        assertEquals(message, expected.count, actual.count);
+        assertEquals(message, expected.gain, actual.gain, 0.0);
+        if (!expected.isLeaf()) {
+            assertSameTree(message, expected.left, actual.left);
+            assertSameTree(message, expected.right, actual.right);
+        }
+    }
+
+    @Test
+    public void treesDoNotDependOnThreads() {
+        WeatherFrame frame = frame(ROWS, 11);
+        double[][] features = features(frame);
+        DecisionTree expected = new DecisionTree(frame, DecisionTree.DEFAULT_MAX_DEPTH, DecisionTree.DEFAULT_MIN_LEAF_SIZE, 1);
+        assertTrue(expected.numNodes() > 200);
+        double[] probabilities = expected.probabilities(features);
+        for (int threads : new int[]{2, 3, 8}) {
+            String message = threads + " threads";
+            DecisionTree tree = new DecisionTree(frame, DecisionTree.DEFAULT_MAX_DEPTH, DecisionTree.DEFAULT_MIN_LEAF_SIZE, threads);
+            assertSameTree(message, expected.root(), tree.root());
+            assertArrayEquals(message, probabilities, tree.probabilities(features), 0.0);
+        }
+    }
+
+    @Test
+    public void binsDoNotDependOnThreads() {
+        WeatherFrame frame = frame(ROWS, 12);
+        BinnedFeatures expected = BinnedFeatures.of(frame, 1);
+        for (int threads : new int[]{2, 3, 8}) {
+            BinnedFeatures binned = BinnedFeatures.of(frame, threads);
+            for (int f = 0; f < expected.numFeatures(); f++) {
+                String message = threads + " threads, " + expected.name(f);
+                assertEquals(message, expected.numBins(f), binned.numBins(f));
+                for (int bin = 1; bin < expected.numBins(f); bin++) {
+                    assertEquals(message, expected.upperBound(f, bin), binned.upperBound(f, bin), 0.0);
+                }
+                assertArrayEquals(message, expected.binColumn(f), binned.binColumn(f));
+            }
+        }
+    }
+
+    @Test
+    public void listsAndFramesGrowTheSameTree() {
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(5000, 13, 0.2);
+        DecisionTree fromFrame = new DecisionTree(WeatherFrame.of(data));
+        DecisionTree fromList = new DecisionTree(new ArrayList<>(data));
+        assertSameTree("list", fromFrame.root(), fromList.root());
+        for (Weather.DataPoint dataPoint : data) {
+            assertEquals(fromFrame.probability(dataPoint), fromList.probability(dataPoint), 0.0);
+        }
+    }
+}
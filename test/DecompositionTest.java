@@ -0,0 +1,262 @@
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// LUDecomposition, QRDecomposition, CholeskyDecomposition and the condition
+// estimate they share, checked against residuals and exactly known answers
+// rather than against each other alone.
+public class DecompositionTest {
+
+    private static final int[] SIZES = {1, 2, 3, 7, 20, 64};
+
+    private static Matrix random(Random random, int rows, int columns) {
+        Matrix a = new Matrix(rows, columns);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                a.setAt(i, j, random.nextGaussian());
+            }
+        }
+        return a;
+    }
+
+    private static Vector random(Random random, int length) {
+        double[] x = new double[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = random.nextGaussian();
+        }
+        return new Vector(x);
+    }
+
+    // B^T B + n I: symmetric and well inside positive definite.
+    private static Matrix positiveDefinite(Random random, int n) {
+        Matrix b = random(random, n, n);
+        Matrix a = b.transposeTimes(b);
+        for (int i = 0; i < n; i++) {
+            a.setAt(i, i, a.getAt(i, i) + n);
+        }
+        return a;
+    }
+
+    private static Matrix hilbert(int n) {
+        Matrix a = new Matrix(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                a.setAt(i, j, 1.0 / (i + j + 1));
+            }
+        }
+        return a;
+    }
+
+    private static double norm1(Matrix a) {
+        return ConditionEstimator.norm1(a.getMatrix(), a.numFeatures());
+    }
+
+    private static void assertClose(String message, Vector expected, Vector actual, double tolerance) {
+        assertEquals(message, expected.length(), actual.length());
+        double scale = Math.max(1.0, expected.norm());
+        assertTrue(message + ": " + expected + " vs " + actual, expected.minus(actual).norm() <= tolerance * scale);
+    }
+
+    // The estimate is a lower bound on the true cond1, and within a factor of 3
+    // of it on all but contrived matrices.
+    private static void assertGoodEstimate(String message, double estimate, double exact) {
+        assertTrue(message + ": estimate " + estimate + " above " + exact, estimate <= exact * (1.0 + 1e-9));
+        assertTrue(message + ": estimate " + estimate + " far below " + exact, estimate >= exact / 3.0);
+    }
+
+    @Test
+    public void luSolvesSquareSystems() {
+        Random random = new Random(1);
+        for (int n : SIZES) {
+            Matrix a = random(random, n, n);
+            Vector x = random(random, n);
+            LUDecomposition lu = new LUDecomposition(a);
+            assertFalse(lu.isSingular());
+            assertClose("n = " + n, x, lu.solve(a.times(x)), 1e-9);
+
+            // Every column of a matrix right hand side, as with solve(Vector)
+            Matrix b = random(random, n, 3);
+            Matrix solutions = lu.solve(b);
+            for (int j = 0; j < 3; j++) {
+                double[] column = new double[n];
+                double[] solution = new double[n];
+                for (int i = 0; i < n; i++) {
+                    column[i] = b.getAt(i, j);
+                    solution[i] = solutions.getAt(i, j);
+                }
+                assertClose("n = " + n + ", column " + j, lu.solve(new Vector(column)), new Vector(solution), 1e-12);
+            }
+
+            Matrix identity = a.times(lu.inverse());
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    assertEquals(i == j ? 1.0 : 0.0, identity.getAt(i, j), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void luPivotsAndGivesTheDeterminant() {
+        // A zero first pivot needs the rows swapped
+        Matrix a = new Matrix(new double[][]{{0, 2, 1}, {1, 1, 0}, {3, 0, 1}});
+        LUDecomposition lu = new LUDecomposition(a);
+        assertEquals(-5.0, lu.determinant(), 1e-12);
+        assertClose("pivoted", new Vector(new double[]{1, 2, 3}), lu.solve(new Vector(new double[]{7, 3, 6})), 1e-12);
+
+        assertEquals(-1.0, new LUDecomposition(new Matrix(new double[][]{{0, 1}, {1, 0}})).determinant(), 0.0);
+    }
+
+    @Test
+    public void luReportsSingularMatrices() {
+        Matrix a = new Matrix(new double[][]{{1, 2, 3}, {2, 4, 6}, {1, 0, 1}});
+        LUDecomposition lu = new LUDecomposition(a);
+        assertTrue(lu.isSingular());
+        assertEquals(0.0, lu.determinant(), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, lu.conditionEstimate(), 0.0);
+        try {
+            lu.solve(new Vector(new double[]{1, 2, 3}));
+            fail("Solved a singular system");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Matrix is singular.", e.getMessage());
+        }
+        try {
+            new LUDecomposition(new Matrix(2, 3));
+            fail("Factored a matrix that is not square");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Matrix is not square.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void conditionEstimatesBoundTheTrueConditionNumber() {
+        Random random = new Random(2);
+        for (int n : SIZES) {
+            for (int trial = 0; trial < 5; trial++) {
+                Matrix a = random(random, n, n);
+                LUDecomposition lu = new LUDecomposition(a);
+                double exact = norm1(a) * norm1(lu.inverse());
+                assertGoodEstimate("LU, n = " + n, lu.conditionEstimate(), exact);
+
+                Matrix spd = positiveDefinite(random, n);
+                double exactSpd = norm1(spd) * norm1(new LUDecomposition(spd).inverse());
+                assertGoodEstimate("Cholesky, n = " + n, new CholeskyDecomposition(spd).conditionEstimate(), exactSpd);
+            }
+        }
+        // Ill conditioned: cond1 of the 8 x 8 Hilbert matrix is about 3.4e10
+        Matrix h = hilbert(8);
+        double estimate = new CholeskyDecomposition(h).conditionEstimate();
+        assertTrue("Hilbert estimate " + estimate, estimate > 1e10 && estimate < 1e11);
+        assertEquals(1.0, new LUDecomposition(hilbert(1)).conditionEstimate(), 0.0);
+    }
+
+    @Test
+    public void choleskyFactorsAndSolves() {
+        Random random = new Random(3);
+        for (int n : SIZES) {
+            Matrix a = positiveDefinite(random, n);
+            CholeskyDecomposition cholesky = new CholeskyDecomposition(a);
+            Matrix l = cholesky.getL();
+            Matrix product = l.times(l.transpose());
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    assertEquals(a.getAt(i, j), product.getAt(i, j), 1e-9 * n);
+                    if (j > i) {
+                        assertEquals(0.0, l.getAt(i, j), 0.0);
+                    }
+                }
+            }
+            Vector x = random(random, n);
+            assertClose("n = " + n, x, cholesky.solve(a.times(x)), 1e-9);
+        }
+    }
+
+    @Test
+    public void choleskyRejectsIndefiniteMatrices() {
+        try {
+            new CholeskyDecomposition(new Matrix(new double[][]{{1, 2}, {2, 1}}));
+            fail("Factored an indefinite matrix");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Matrix is not positive definite.", e.getMessage());
+        }
+        try {
+            new CholeskyDecomposition(new Matrix(new double[][]{{1, 1}, {1, 1}}));
+            fail("Factored a singular matrix");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Matrix is not positive definite.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void qrSolvesSquareSystemsLikeLu() {
+        Random random = new Random(4);
+        for (int n : SIZES) {
+            Matrix a = random(random, n, n);
+            Vector x = random(random, n);
+            QRDecomposition qr = new QRDecomposition(a);
+            assertTrue(qr.isFullRank());
+            assertEquals(n, qr.rank());
+            assertClose("n = " + n, x, qr.solve(a.times(x)), 1e-9);
+
+            double exact = norm1(a) * norm1(new LUDecomposition(a).inverse());
+            double estimate = qr.conditionEstimate(); // Of R, within a factor of n of A's
+            assertTrue("n = " + n + ": " + estimate + " vs " + exact, estimate >= exact / (3.0 * n) && estimate <= exact * n);
+        }
+    }
+
+    @Test
+    public void qrGivesLeastSquaresSolutions() {
+        Random random = new Random(5);
+        for (int n : SIZES) {
+            int m = 3 * n + 2;
+            Matrix a = random(random, m, n);
+            Vector b = random(random, m);
+            Vector x = new QRDecomposition(a).solve(b);
+            // The residual is orthogonal to every column of A
+            Vector residual = b.minus(a.times(x));
+            Matrix r = new Matrix(m, 1);
+            for (int i = 0; i < m; i++) {
+                r.setAt(i, 0, residual.get(i));
+            }
+            Matrix normal = a.transposeTimes(r);
+            for (int j = 0; j < n; j++) {
+                assertEquals("n = " + n + ", column " + j, 0.0, normal.getAt(j, 0), 1e-9 * m);
+            }
+        }
+        try {
+            new QRDecomposition(new Matrix(2, 3));
+            fail("Factored a matrix with fewer rows than columns");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Matrix has fewer rows than columns.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void qrGivesDependentColumnsNoWeight() {
+        Random random = new Random(6);
+        int m = 30;
+        Matrix a = random(random, m, 4);
+        for (int i = 0; i < m; i++) { // Column 3 = column 0 + 2 column 1
+            a.setAt(i, 3, a.getAt(i, 0) + 2.0 * a.getAt(i, 1));
+        }
+        Vector truth = new Vector(new double[]{1.0, -2.0, 0.5, 0.0});
+        QRDecomposition qr = new QRDecomposition(a);
+        assertEquals(3, qr.rank());
+        assertFalse(qr.isFullRank());
+        assertEquals(Double.POSITIVE_INFINITY, qr.conditionEstimate(), 0.0);
+
+        Vector x = qr.solve(a.times(truth));
+        int zeros = 0;
+        for (int j = 0; j < 4; j++) {
+            assertFalse(Double.isNaN(x.get(j)) || Double.isInfinite(x.get(j)));
+            if (x.get(j) == 0.0) {
+                zeros++;
+            }
+        }
+        assertEquals(1, zeros);
+        assertClose("fitted values", a.times(truth), a.times(x), 1e-9);
+    }
+}
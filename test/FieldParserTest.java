@@ -0,0 +1,144 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+// FieldParser has to give exactly what the AustraliaWeather.parse* String
+// methods give: the same bits for every value, and the same exception for
+// every bad field. Each field is parsed from the middle of a larger char[] and
+// ByteBuffer, so the offsets are exercised too.
+public class FieldParserTest {
+
+    private static final String[] NUMBERS = {
+        "0", "-0", "+0", "0.0", "-0.0", "00", "000.000", ".5", "5.", "-.5", "+.5",
+        "12.5", "-12.5", "+12.5", "007.25", "-007.25", "0.1", "0.3", "2.675", "1013.2", "99.95",
+        "123456789012345", "-123456789012345", "12345678901234.5", "0.123456789012345",
+        "1234567890123456", "9007199254740993", "0.1234567890123456", "12345678901234567",
+        "000000000000000000001.5", "1.000000000000000000000",
+        "0.000000000000000000001", "0.0000000000000000000001", "0.00000000000000000000001",
+        "-40", "-40.0", "-40.1", "-100", "-100.0", "-100.1", "100", "100.0", "100.1", "24", "24.01",
+        "NA", "na", "Na", "N/A", "", " ", "-", "+", ".", "-.", "+-1", "--1", "1-", "1.2.3", "1,5",
+        " 12", "12 ", "1e3", "1E-2", "-1e400", "1e400", "0x1p3", "1d", "1f", "NaN", "-NaN", "Infinity", "-Infinity"
+    };
+
+    private interface StringParser {
+
+        double parse(String value);
+    }
+
+    private interface CharParser {
+
+        double parse(char[] text, int offset, int length);
+    }
+
+    private interface ByteParser {
+
+        double parse(ByteBuffer text, int offset, int length);
+    }
+
+    private static void check(String field, StringParser expected, CharParser chars, ByteParser bytes) {
+        Object want;
+        try {
+            want = expected.parse(field);
+        } catch (RuntimeException e) {
+            want = e.getClass().getName() + ": " + e.getMessage();
+        }
+
+        String padded = "1," + field + ",9";
+        char[] text = padded.toCharArray();
+        byte[] encoded = padded.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer heap = ByteBuffer.wrap(encoded);
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length);
+        direct.put(encoded);
+        int length = field.length();
+        assertSame(field, "char[]", want, () -> chars.parse(text, 2, length));
+        assertSame(field, "heap ByteBuffer", want, () -> bytes.parse(heap, 2, length));
+        assertSame(field, "direct ByteBuffer", want, () -> bytes.parse(direct, 2, length));
+    }
+
+    private interface Parse {
+
+        double parse();
+    }
+
+    private static void assertSame(String field, String source, Object want, Parse parse) {
+        Object got;
+        try {
+            got = parse.parse();
+        } catch (RuntimeException e) {
+            got = e.getClass().getName() + ": " + e.getMessage();
+        }
+        if (want instanceof Double && got instanceof Double) {
+            // Bit for bit: -0.0 must stay -0.0.
+            assertEquals("\"" + field + "\" from " + source, Double.doubleToLongBits((Double) want), Double.doubleToLongBits((Double) got));
+        } else {
+            assertEquals("\"" + field + "\" from " + source, want, got);
+        }
+    }
+
+    private static void checkEveryParser(String field) {
+        check(field, AustraliaWeather::parseTemperature, FieldParser::parseTemperature, FieldParser::parseTemperature);
+        check(field, AustraliaWeather::parseHumidity, FieldParser::parseHumidity, FieldParser::parseHumidity);
+        check(field, AustraliaWeather::parsePressure, FieldParser::parsePressure, FieldParser::parsePressure);
+        check(field, AustraliaWeather::parseWindSpeed, FieldParser::parseWindSpeed, FieldParser::parseWindSpeed);
+        check(field, AustraliaWeather::parseHoursOfSunshine, FieldParser::parseHoursOfSunshine, FieldParser::parseHoursOfSunshine);
+        check(field, AustraliaWeather::parseRainfall, FieldParser::parseRainfall, FieldParser::parseRainfall);
+        check(field, AustraliaWeather::parseEvaporationRate, FieldParser::parseEvaporationRate, FieldParser::parseEvaporationRate);
+    }
+
+    @Test
+    public void numbersMatchTheStringParsers() {
+        for (String field : NUMBERS) {
+            checkEveryParser(field);
+        }
+    }
+
+    @Test
+    public void randomDecimalsMatchTheStringParsers() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            int digits = 1 + random.nextInt(17); // Past the 15 the fast path takes
+            StringBuilder field = new StringBuilder();
+            if (random.nextBoolean()) {
+                field.append('-');
+            }
+            int point = random.nextInt(digits + 1);
+            for (int d = 0; d < digits; d++) {
+                if (d == point) {
+                    field.append('.');
+                }
+                field.append((char) ('0' + random.nextInt(10)));
+            }
+            check(field.toString(), AustraliaWeather::parseWindSpeed, FieldParser::parseWindSpeed, FieldParser::parseWindSpeed);
+            check(field.toString(), AustraliaWeather::parsePressure, FieldParser::parsePressure, FieldParser::parsePressure);
+        }
+    }
+
+    @Test
+    public void cloudCoverMatchesTheStringParser() {
+        for (String field : new String[]{"0", "8", "9", "10", "08", "+3", "-0", "-1", "4.0", "1234567890", "NA", "", "x"}) {
+            check(field, value -> AustraliaWeather.parseCloudCover(value),
+                    (text, offset, length) -> FieldParser.parseCloudCover(text, offset, length),
+                    (text, offset, length) -> FieldParser.parseCloudCover(text, offset, length));
+        }
+    }
+
+    @Test
+    public void badFieldsThrowLikeTheStringParsers() {
+        // The cases above compare exceptions too; make sure some really throw.
+        try {
+            FieldParser.parseTemperature("1,-100.1,9".toCharArray(), 2, 6);
+            fail("-100.1 is not a valid temperature");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Bad temperature: -100.1", e.getMessage());
+        }
+        try {
+            FieldParser.parseRainfall(ByteBuffer.wrap("1,,9".getBytes(StandardCharsets.US_ASCII)), 2, 0);
+            fail("An empty field is not a number");
+        } catch (NumberFormatException e) {
+            // As Double.parseDouble("")
+        }
+    }
+}
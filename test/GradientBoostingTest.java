@@ -0,0 +1,60 @@
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Boosting grows its rounds' trees on a pool of threads and may be handed
+// features binned for another model, and has to train the same model either
+// way.
+public class GradientBoostingTest {
+
+    private static final int ROWS = 20000; // Trees summed in more than one histogram chunk
+    private static final int ROUNDS = 30;
+
+    private static GradientBoosting boost(BinnedFeatures binned, WeatherFrame frame, GradientBoosting.Target target, int threads) {
+        return new GradientBoosting(binned, frame, target, ROUNDS, GradientBoosting.DEFAULT_LEARNING_RATE, GradientBoosting.DEFAULT_MAX_DEPTH,
+                GradientBoosting.DEFAULT_MIN_LEAF_SIZE, GradientBoosting.DEFAULT_LAMBDA, 5, GradientBoosting.DEFAULT_VALIDATION_FRACTION,
+                GradientBoosting.DEFAULT_SEED, threads);
+    }
+
+    private static void assertSameModel(String message, GradientBoosting expected, GradientBoosting actual, double[][] features) {
+        assertEquals(message, expected.numRounds(), actual.numRounds());
+        assertEquals(message, expected.validationLoss(), actual.validationLoss(), 0.0);
+        assertArrayEquals(message, expected.predict(features), actual.predict(features), 0.0);
+    }
+
+    @Test
+    public void modelsDoNotDependOnThreads() {
+        WeatherFrame frame = DecisionTreeTest.frame(ROWS, 41);
+        double[][] features = DecisionTreeTest.features(frame);
+        BinnedFeatures binned = BinnedFeatures.of(frame);
+        for (GradientBoosting.Target target : GradientBoosting.Target.values()) {
+            GradientBoosting expected = boost(binned, frame, target, 1);
+            assertTrue(target + ": " + expected.numRounds(), expected.numRounds() > 1);
+            for (int threads : new int[]{2, 3, 8}) {
+                assertSameModel(target + ", " + threads + " threads", expected, boost(binned, frame, target, threads), features);
+            }
+        }
+    }
+
+    @Test
+    public void sharedBinsTrainTheSameModels() {
+        WeatherFrame frame = DecisionTreeTest.frame(5000, 42);
+        double[][] features = DecisionTreeTest.features(frame);
+        BinnedFeatures binned = BinnedFeatures.of(frame);
+        for (GradientBoosting.Target target : GradientBoosting.Target.values()) {
+            GradientBoosting own = new GradientBoosting(frame, target, ROUNDS, GradientBoosting.DEFAULT_LEARNING_RATE,
+                    GradientBoosting.DEFAULT_MAX_DEPTH, GradientBoosting.DEFAULT_MIN_LEAF_SIZE, GradientBoosting.DEFAULT_LAMBDA, 5,
+                    GradientBoosting.DEFAULT_VALIDATION_FRACTION, GradientBoosting.DEFAULT_SEED, 1);
+            assertSameModel(target.toString(), own, boost(binned, frame, target, 1), features);
+        }
+
+        try {
+            boost(BinnedFeatures.of(DecisionTreeTest.frame(4999, 42)), frame, GradientBoosting.Target.RAIN_TOMORROW, 1);
+            fail("Bins of another frame");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Binned features of 4999 rows for 5000 data points", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Streaming gradient descent on a few thousand SyntheticWeather rows, with the
+// settings Main uses unless told otherwise.
+public class LinearRegressionTest {
+
+    // Main's defaults: -learn 0.1, -epochs 10, LASSO with -penalty 0.8, -batch 1, -shuffle 1024
+    private static final double LEARNING_RATE = 0.1;
+    private static final int EPOCHS = 10;
+    private static final double PENALTY = 0.8;
+    private static final int BATCH_SIZE = 1;
+    private static final int SHUFFLE_BUFFER = 1024;
+
+    private static final List<Weather.DataPoint> TRAIN = new ArrayList<>();
+    private static final List<Weather.DataPoint> TEST = new ArrayList<>();
+
+    static {
+        SyntheticWeather generator = new SyntheticWeather(11);
+        for (int i = 0; i < 4000; i++) {
+            TRAIN.add(generator.next());
+        }
+        for (int i = 0; i < 2000; i++) {
+            TEST.add(generator.next());
+        }
+    }
+
+    private static boolean[] predictions(LinearRegression model) {
+        boolean[] predictions = new boolean[TEST.size()];
+        for (int i = 0; i < predictions.length; i++) {
+            predictions[i] = model.rainTomorrow(TEST.get(i));
+        }
+        return predictions;
+    }
+
+    @Test
+    public void sgdTrainsWithTheDefaults() {
+        for (boolean oneHot : new boolean[]{false, true}) {
+            LinearRegression model = new LinearRegression(TRAIN, LEARNING_RATE, EPOCHS,
+                    LinearRegression.Regularization.LASSO, PENALTY, BATCH_SIZE, SHUFFLE_BUFFER, oneHot);
+            predictions(model); // Diverging would have thrown
+        }
+        new LinearRegression(TRAIN, LEARNING_RATE, EPOCHS, LinearRegression.Regularization.RIDGE, 0.0, BATCH_SIZE, SHUFFLE_BUFFER);
+    }
+
+    @Test
+    public void sgdLearnsTheSyntheticRain() {
+        // SyntheticWeather makes rain likelier with afternoon humidity and rain
+        // today, so the model should say rain more often on the days it rains.
+        LinearRegression model = new LinearRegression(TRAIN, LEARNING_RATE, EPOCHS,
+                LinearRegression.Regularization.RIDGE, 0.0, BATCH_SIZE, SHUFFLE_BUFFER);
+        boolean[] predictions = predictions(model);
+        int rainy = 0;
+        int hits = 0;
+        int falseAlarms = 0;
+        for (int i = 0; i < predictions.length; i++) {
+            if (TEST.get(i).rainTomorrow()) {
+                rainy++;
+                hits += predictions[i] ? 1 : 0;
+            } else {
+                falseAlarms += predictions[i] ? 1 : 0;
+            }
+        }
+        double hitRate = (double) hits / rainy;
+        double falseAlarmRate = (double) falseAlarms / (predictions.length - rainy);
+        assertTrue("hit rate " + hitRate + ", false alarm rate " + falseAlarmRate, hitRate > 1.5 * falseAlarmRate);
+    }
+
+    @Test
+    public void sgdRepeatsForTheSameSeed() {
+        boolean[] first = predictions(new LinearRegression(TRAIN, LEARNING_RATE, EPOCHS,
+                LinearRegression.Regularization.RIDGE, 0.0, BATCH_SIZE, SHUFFLE_BUFFER, false, 5));
+        boolean[] second = predictions(new LinearRegression(TRAIN, LEARNING_RATE, EPOCHS,
+                LinearRegression.Regularization.RIDGE, 0.0, BATCH_SIZE, SHUFFLE_BUFFER, false, 5));
+        for (int i = 0; i < first.length; i++) {
+            assertEquals("test point " + i, first[i], second[i]);
+        }
+    }
+
+    @Test
+    public void divergenceIsReported() {
+        try {
+            new LinearRegression(TRAIN, 4.0, EPOCHS, LinearRegression.Regularization.RIDGE, 0.0, BATCH_SIZE, SHUFFLE_BUFFER);
+            fail("A learning rate of 4 converged");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Gradient descent diverged"));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Location ids have to be the same however a file is read: new stations are
+// numbered in the order they first appear in the file, also when the file is
+// parsed in parallel chunks. The dictionary is shared by every test, so each
+// one makes up its own station names.
+public class LocationDictionaryTest {
+
+    private static final int ROWS = 60000; // About 7 MB, so 8 threads read it in several chunks
+    private static final int THREADS = 8;
+
+    // WeatherRows lines with the station of every 1500th row replaced by a
+    // new one. Each name is used twice, the second time a third of the file
+    // later, so names that come first in one chunk turn up again in another.
+    private static List<String> lines(String prefix, long seed) {
+        List<String> lines = WeatherRows.lines(ROWS, seed, 0.1);
+        for (int row = 700, station = 0; row < ROWS; row += 1500, station++) {
+            // Reverse alphabetical, so file order and name order disagree
+            String name = prefix + (char) ('Z' - station % 26) + station;
+            setLocation(lines, row, name);
+            setLocation(lines, (row + ROWS / 3) % ROWS + 1, name);
+        }
+        return lines;
+    }
+
+    private static void setLocation(List<String> lines, int row, String location) {
+        String[] fields = lines.get(row).split(",", -1);
+        fields[1] = location;
+        lines.set(row, String.join(",", fields));
+    }
+
+    // The names in lines[0..count-1] not yet in the dictionary, in file order.
+    private static List<String> newLocations(List<String> lines, int count) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String line : lines.subList(0, count)) {
+            String name = line.split(",", -1)[1];
+            if (LocationDictionary.find(name) == LocationDictionary.MISSING) {
+                names.add(name);
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    private static Path write(List<String> lines) throws IOException {
+        Path file = Files.createTempFile("locations", ".csv");
+        Files.write(file, lines, Charset.defaultCharset());
+        return file;
+    }
+
+    private static void assertIdsInFileOrder(List<String> names, int firstId) {
+        for (int i = 0; i < names.size(); i++) {
+            assertEquals(names.get(i), firstId + i, LocationDictionary.find(names.get(i)));
+            assertEquals(names.get(i), LocationDictionary.name(firstId + i));
+        }
+    }
+
+    private static List<Weather.DataPoint> readSequentially(Path file) throws IOException {
+        ArrayList<Weather.DataPoint> dataset = new ArrayList<>();
+        MappedDataReader.readDataFile(file.toString(), dataset, 0);
+        return dataset;
+    }
+
+    @Test
+    public void lookupsAgreeForEveryRepresentation() {
+        for (String name : new String[]{"Dictionary Test", "Dictionary-Test (2)", "Dictionary Test 3"}) {
+            assertEquals(LocationDictionary.MISSING, LocationDictionary.find(name));
+            int id = LocationDictionary.id(name);
+            assertEquals(LocationDictionary.size() - 1, id);
+            assertEquals(name, LocationDictionary.name(id));
+            assertEquals(id, LocationDictionary.find(name));
+            assertEquals(id, LocationDictionary.id(new String(name))); // Not the same instance
+
+            char[] chars = ("," + name + ",").toCharArray();
+            assertEquals(id, LocationDictionary.id(chars, 1, name.length()));
+            byte[] bytes = ("," + name + ",").getBytes(Charset.defaultCharset()); // As FieldParser.string() decodes
+            int length = bytes.length - 2;
+            assertEquals(id, LocationDictionary.find(ByteBuffer.wrap(bytes), 1, length));
+            assertEquals(id, LocationDictionary.id(ByteBuffer.wrap(bytes), 1, length));
+        }
+        assertEquals(LocationDictionary.MISSING, LocationDictionary.id((String) null));
+        assertEquals(null, LocationDictionary.name(LocationDictionary.MISSING));
+        for (int id = 0; id < Weather.locations.length; id++) {
+            assertEquals(id, LocationDictionary.find(Weather.locations[id]));
+        }
+    }
+
+    @Test
+    public void parallelReadsNumberNewLocationsInFileOrder() throws IOException {
+        List<String> lines = lines("List ", 1);
+        List<String> names = newLocations(lines, ROWS);
+        int firstId = LocationDictionary.size();
+        Path file = write(lines);
+        try {
+            ArrayList<Weather.DataPoint> dataset = new ArrayList<>();
+            MappedDataReader.readDataFile(file.toString(), dataset, 0, THREADS);
+            assertEquals(firstId + names.size(), LocationDictionary.size());
+            assertIdsInFileOrder(names, firstId);
+            WeatherRows.assertSameDataPoints("parallel", readSequentially(file), dataset);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void parallelFrameReadsNumberNewLocationsInFileOrder() throws IOException {
+        List<String> lines = lines("Frame ", 2);
+        List<String> names = newLocations(lines, ROWS);
+        int firstId = LocationDictionary.size();
+        Path file = write(lines);
+        try {
+            WeatherFrame frame = new WeatherFrame();
+            MappedDataReader.readDataFile(file.toString(), frame, 0, THREADS);
+            assertEquals(firstId + names.size(), LocationDictionary.size());
+            assertIdsInFileOrder(names, firstId);
+            List<Weather.DataPoint> rows = new ArrayList<>();
+            for (int row = 0; row < frame.size(); row++) {
+                rows.add(frame.get(row));
+            }
+            WeatherRows.assertSameDataPoints("parallel frame", readSequentially(file), rows);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void locationsPastTheLimitAreNotAdded() throws IOException {
+        List<String> lines = lines("Limit ", 3);
+        int limit = ROWS / 2;
+        List<String> names = newLocations(lines, limit);
+        List<String> later = newLocations(lines, ROWS);
+        later.removeAll(names);
+        assertTrue(!names.isEmpty() && !later.isEmpty());
+        int firstId = LocationDictionary.size();
+        Path file = write(lines);
+        try {
+            ArrayList<Weather.DataPoint> dataset = new ArrayList<>();
+            MappedDataReader.readDataFile(file.toString(), dataset, limit, THREADS);
+            assertEquals(limit, dataset.size());
+            assertEquals(firstId + names.size(), LocationDictionary.size());
+            assertIdsInFileOrder(names, firstId);
+            for (String name : later) {
+                assertEquals(name, LocationDictionary.MISSING, LocationDictionary.find(name));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// The char and memory-mapped readers, sequential and parallel, have to give
+// the rows and the error that BufferedReader.readLine() and
+// AustraliaWeather.processLine give, whatever the line endings and wherever
+// the mapped windows and parallel chunks fall.
+public class MappedDataReaderTest {
+
+    private static final int ROWS = 20000; // About 2.4 MB, so a parallel read has more than one chunk
+    private static final int THREADS = 4;
+
+    private interface DataFileReader {
+        void read(Path file, ArrayList<Weather.DataPoint> dataset, int limit) throws IOException;
+    }
+
+    // The rows a reader handed over, and the error that stopped it, if any.
+    private static final class Result {
+
+        private final ArrayList<Weather.DataPoint> rows = new ArrayList<>();
+        private Exception failure;
+    }
+
+    private static Result read(DataFileReader reader, Path file, int limit) {
+        Result result = new Result();
+        try {
+            reader.read(file, result.rows, limit);
+        } catch (IOException | RuntimeException e) {
+            result.failure = e;
+        }
+        return result;
+    }
+
+    // One line at a time through String.split(), as the program first did.
+    private static void readLines(Path file, ArrayList<Weather.DataPoint> dataset, int limit) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, Charset.defaultCharset())) {
+            String line;
+            while ((limit <= 0 || dataset.size() < limit) && (line = reader.readLine()) != null) {
+                dataset.add(AustraliaWeather.processLine(line));
+            }
+        }
+    }
+
+    private static Map<String, DataFileReader> readers() {
+        Map<String, DataFileReader> readers = new LinkedHashMap<>();
+        readers.put("char", (file, dataset, limit) -> {
+            try (BufferedReader reader = Files.newBufferedReader(file, Charset.defaultCharset())) {
+                AustraliaWeather.readDataFile(reader, dataset, limit);
+            }
+        });
+        readers.put("mapped", (file, dataset, limit) -> MappedDataReader.readDataFile(file.toString(), dataset, limit));
+        readers.put("parallel", (file, dataset, limit) -> MappedDataReader.readDataFile(file.toString(), dataset, limit, THREADS));
+        readers.put("parallel frame", (file, dataset, limit) -> {
+            WeatherFrame frame = new WeatherFrame();
+            try {
+                MappedDataReader.readDataFile(file.toString(), frame, limit, THREADS);
+            } finally {
+                for (int row = 0; row < frame.size(); row++) {
+                    dataset.add(frame.get(row));
+                }
+            }
+        });
+        return readers;
+    }
+
+    private static DataFileReader windowed(long windowSize) {
+        return (file, dataset, limit) -> {
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+                new MappedDataReader(raf.getChannel(), windowSize).read(0, raf.length(), dataset, limit);
+            }
+        };
+    }
+
+    private static void assertSameResult(String message, Result expected, Result actual) {
+        WeatherRows.assertSameDataPoints(message, expected.rows, actual.rows);
+        if (expected.failure == null) {
+            assertEquals(message + ": " + actual.failure, null, actual.failure);
+        } else {
+            assertEquals(message, String.valueOf(expected.failure), String.valueOf(actual.failure));
+        }
+    }
+
+    private static void assertSameReads(String text, int... limits) throws IOException {
+        Path file = Files.createTempFile("weather", ".csv");
+        try {
+            Files.write(file, text.getBytes(Charset.defaultCharset()));
+            for (int limit : limits) {
+                Result expected = read(MappedDataReaderTest::readLines, file, limit);
+                for (Map.Entry<String, DataFileReader> reader : readers().entrySet()) {
+                    assertSameResult(reader.getKey() + ", limit " + limit, expected, read(reader.getValue(), file, limit));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static String join(List<String> lines, String terminator) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append(terminator);
+        }
+        return text.toString();
+    }
+
+    private static String withField(String line, int field, String value) {
+        String[] fields = line.split(",", -1);
+        fields[field] = value;
+        return String.join(",", fields);
+    }
+
+    @Test
+    public void validRowsReadTheSame() throws IOException {
+        List<String> lines = WeatherRows.lines(ROWS, 1, 0.1);
+        assertSameReads(join(lines, "\n"), 0, 4999);
+        // No terminator after the last line
+        assertSameReads(String.join("\n", lines), 0);
+    }
+
+    @Test
+    public void invalidRowsFailTheSame() throws IOException {
+        // Every kind of error in a short file
+        List<String> lines = WeatherRows.lines(2000, 2, 0.1);
+        int bad = 1017;
+        String line = lines.get(bad);
+        String[] invalid = {
+            "garbage,line",
+            "",
+            withField(line, 0, "2017-13-45"),
+            withField(line, 2, "12.x"),
+            withField(line, 2, "-99"),
+            withField(line, 7, "NNNE"),
+            withField(line, 17, "9"),
+            withField(line, 21, "Maybe"),
+            line.substring(0, line.lastIndexOf(','))
+        };
+        for (String replacement : invalid) {
+            lines.set(bad, replacement);
+            assertSameReads(join(lines, "\n"), 0, bad);
+        }
+
+        // One in a file read in several chunks, so the error is met by a
+        // later chunk than the rows before it
+        lines = WeatherRows.lines(ROWS, 2, 0.1);
+        bad = ROWS / 2 + 17;
+        lines.set(bad, withField(lines.get(bad), 4, "1e"));
+        assertSameReads(join(lines, "\n"), 0, bad);
+    }
+
+    @Test
+    public void crlfAndMixedLineEndingsReadTheSame() throws IOException {
+        List<String> lines = WeatherRows.lines(ROWS, 3, 0.1);
+        assertSameReads(join(lines, "\r\n"), 0, 777);
+        assertSameReads(join(lines, "\r"), 0);
+
+        Random random = new Random(3);
+        String[] terminators = {"\n", "\r", "\r\n"};
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append(terminators[random.nextInt(terminators.length)]);
+        }
+        assertSameReads(text.toString(), 0, 1000);
+        text.setLength(text.length() - 1); // Ends in '\r' or a line without a terminator
+        assertSameReads(text.toString(), 0);
+    }
+
+    @Test
+    public void lineEndsAcrossWindowBoundariesReadTheSame() throws IOException {
+        List<String> lines = WeatherRows.lines(60, 4, 0.1);
+        String text = join(lines, "\r\n");
+        int longest = 0;
+        for (String line : lines) {
+            longest = Math.max(longest, line.length());
+        }
+        Path file = Files.createTempFile("weather", ".csv");
+        try {
+            Files.write(file, text.getBytes(Charset.defaultCharset()));
+            Result expected = read(MappedDataReaderTest::readLines, file, 0);
+            assertEquals(lines.size(), expected.rows.size());
+
+            // Windows ending between the '\r' and the '\n' of each of the first lines
+            List<Long> windows = new ArrayList<>();
+            for (int cr = text.indexOf('\r', longest); cr >= 0 && cr < 4 * longest; cr = text.indexOf('\r', cr + 1)) {
+                windows.add((long) cr + 1);
+            }
+            assertTrue(windows.size() > 1);
+            // Every window size that fits a line and its terminator, up to a few lines
+            for (long window = longest + 2; window < 3 * longest; window++) {
+                windows.add(window);
+            }
+            for (long window : windows) {
+                assertSameResult("window " + window, expected, read(windowed(window), file, 0));
+                assertSameResult("window " + window + ", limit 7", read(MappedDataReaderTest::readLines, file, 7),
+                        read(windowed(window), file, 7));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// A forest is grown and scored out of bag in parallel, but has to come out
+// the same for a given seed whatever the number of threads.
+public class RandomForestTest {
+
+    private static final int ROWS = 20000; // Several blocks of out-of-bag rows
+    private static final int TREES = 20;
+
+    private static RandomForest forest(WeatherFrame frame, long seed, int threads) {
+        return new RandomForest(frame, TREES, 8, RandomForest.DEFAULT_MIN_LEAF_SIZE, RandomForest.DEFAULT_FEATURE_FRACTION, seed, threads);
+    }
+
+    @Test
+    public void forestsDoNotDependOnThreads() {
+        WeatherFrame frame = DecisionTreeTest.frame(ROWS, 21);
+        double[][] features = DecisionTreeTest.features(frame);
+        RandomForest expected = forest(frame, 5, 1);
+        double[] probabilities = expected.probabilities(features);
+        double error = expected.outOfBagError();
+        assertTrue(error > 0.0 && error < 0.5);
+        for (int threads : new int[]{2, 3, 8}) {
+            String message = threads + " threads";
+            RandomForest forest = forest(frame, 5, threads);
+            assertEquals(message, TREES, forest.numTrees());
+            assertEquals(message, expected.numNodes(), forest.numNodes());
+            assertEquals(message, error, forest.outOfBagError(), 0.0);
+            assertArrayEquals(message, probabilities, forest.probabilities(features), 0.0);
+        }
+    }
+
+    @Test
+    public void seedsChooseTheForest() {
+        WeatherFrame frame = DecisionTreeTest.frame(5000, 22);
+        double[][] features = DecisionTreeTest.features(frame);
+        double[] expected = forest(frame, 5, 1).probabilities(features);
+        double[] other = forest(frame, 6, 1).probabilities(features);
+        boolean differs = false;
+        for (int row = 0; row < features.length; row++) {
+            differs |= expected[row] != other[row];
+        }
+        assertTrue(differs);
+
+        RandomForest forest = forest(frame, 5, 1);
+        for (int row = 0; row < features.length; row++) {
+            assertEquals(expected[row], forest.probability(features[row]), 1e-12);
+            assertTrue(expected[row] >= 0.0 && expected[row] <= 1.0);
+        }
+    }
+}
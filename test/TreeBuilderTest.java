@@ -0,0 +1,118 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// The histograms a tree is grown from are summed in chunks, handed from
+// parent to child, subtracted and reused, so each node has to come out as if
+// its own rows had been summed afresh: its count and value those of the rows
+// that reach it, and its split the best one over every feature and bin.
+public class TreeBuilderTest {
+
+    private static final int ROWS = 40000; // More than two histogram chunks at the root
+
+    private static WeatherFrame frame() {
+        return WeatherFrame.of(WeatherRows.dataPoints(ROWS, 7, 0.2));
+    }
+
+    private static DecisionTree.Node grow(BinnedFeatures data, double[] labels, int[] rows, int maxDepth, int threads) {
+        return new DecisionTree(data, labels, rows.clone(), maxDepth, DecisionTree.DEFAULT_MIN_LEAF_SIZE, threads).root();
+    }
+
+    private static boolean goesLeft(BinnedFeatures data, DecisionTree.Node node, int row) {
+        int bin = data.bin(node.feature - 1, row);
+        return bin == BinnedFeatures.MISSING ? node.missingLeft : bin <= node.bin;
+    }
+
+    @Test
+    public void nodesHoldTheRowsThatReachThem() {
+        WeatherFrame frame = frame();
+        BinnedFeatures data = BinnedFeatures.of(frame);
+        double[] labels = DecisionTree.labels(frame);
+        int[] rows = DecisionTree.labeledRows(frame);
+        for (int threads : new int[]{1, 4}) {
+            DecisionTree.Node root = grow(data, labels, rows, DecisionTree.DEFAULT_MAX_DEPTH, threads);
+            assertTrue(root.numLeaves() > 100);
+            Map<DecisionTree.Node, double[]> reached = new IdentityHashMap<>(); // Rows and rainy days per leaf
+            for (int row : rows) {
+                double[] sums = reached.computeIfAbsent(root.leaf(data, row), leaf -> new double[2]);
+                sums[0]++;
+                sums[1] += labels[row];
+            }
+            assertEquals(root.numLeaves(), reached.size());
+            for (Map.Entry<DecisionTree.Node, double[]> leaf : reached.entrySet()) {
+                double[] sums = leaf.getValue();
+                assertEquals(threads + " threads", (int) sums[0], leaf.getKey().count);
+                assertEquals(threads + " threads", sums[1] / sums[0], leaf.getKey().value, 1e-9);
+            }
+            assertEquals(rows.length, root.count);
+        }
+    }
+
+    @Test
+    public void splitsAreTheBestOverEveryBin() {
+        WeatherFrame frame = frame();
+        BinnedFeatures data = BinnedFeatures.of(frame);
+        double[] labels = DecisionTree.labels(frame);
+        int[] rows = DecisionTree.labeledRows(frame);
+        for (int threads : new int[]{1, 4}) {
+            DecisionTree.Node root = grow(data, labels, rows, 4, threads);
+            this.assertBestSplits(data, labels, root, rows);
+        }
+    }
+
+    // Checks node's split against every other split of its rows, and then its
+    // children's.
+    private void assertBestSplits(BinnedFeatures data, double[] labels, DecisionTree.Node node, int[] rows) {
+        assertEquals(rows.length, node.count);
+        if (node.isLeaf()) {
+            return;
+        }
+        assertEquals("gain", bestGain(data, labels, rows), node.gain, 1e-9 * node.gain);
+        List<Integer> left = new ArrayList<>();
+        List<Integer> right = new ArrayList<>();
+        for (int row : rows) {
+            (goesLeft(data, node, row) ? left : right).add(row);
+        }
+        this.assertBestSplits(data, labels, node.left, left.stream().mapToInt(Integer::intValue).toArray());
+        this.assertBestSplits(data, labels, node.right, right.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // The largest drop in squared error over every feature, bin and side for
+    // the missing values, from sums over the rows themselves.
+    private static double bestGain(BinnedFeatures data, double[] labels, int[] rows) {
+        double total = 0.0;
+        for (int row : rows) {
+            total += labels[row];
+        }
+        double best = 0.0;
+        for (int f = 0; f < data.numFeatures(); f++) {
+            int numBins = data.numBins(f);
+            double[] sums = new double[numBins];
+            int[] counts = new int[numBins];
+            for (int row : rows) {
+                sums[data.bin(f, row)] += labels[row];
+                counts[data.bin(f, row)]++;
+            }
+            for (int missingLeft = 0; missingLeft < 2; missingLeft++) {
+                double leftSum = missingLeft * sums[BinnedFeatures.MISSING];
+                int leftCount = missingLeft * counts[BinnedFeatures.MISSING];
+                for (int bin = 1; bin < numBins; bin++) {
+                    leftSum += sums[bin];
+                    leftCount += counts[bin];
+                    int rightCount = rows.length - leftCount;
+                    if (leftCount < DecisionTree.DEFAULT_MIN_LEAF_SIZE || rightCount < DecisionTree.DEFAULT_MIN_LEAF_SIZE) {
+                        continue;
+                    }
+                    double gain = leftSum * leftSum / leftCount + (total - leftSum) * (total - leftSum) / rightCount
+                            - total * total / rows.length;
+                    best = Math.max(best, gain);
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,191 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Weather.Date's epoch-day arithmetic has to agree with java.time.LocalDate
+// for every date it accepts, including across era and century boundaries and
+// at the ends of its range, and so do the date parsers and seasonal features
+// built on it.
+public class WeatherDateTest {
+
+    private static final int MAX_YEAR = 5000000;
+
+    private static void assertSameDay(LocalDate expected, int epochDay) {
+        String message = expected.toString();
+        assertEquals(message, expected.toEpochDay(), epochDay);
+        assertEquals(message, expected.getYear(), Weather.Date.year(epochDay));
+        assertEquals(message, expected.getMonthValue(), Weather.Date.month(epochDay));
+        assertEquals(message, expected.getDayOfMonth(), Weather.Date.dayOfMonth(epochDay));
+        assertEquals(message, expected.getDayOfYear(), Weather.Date.dayOfYear(epochDay));
+        assertEquals(message, epochDay, Weather.Date.epochDay(expected.getYear(), expected.getMonthValue(), expected.getDayOfMonth()));
+
+        Weather.Date date = Weather.Date.ofEpochDay(epochDay);
+        assertEquals(message, expected.getYear(), date.year());
+        assertEquals(message, expected.getMonthValue(), date.month());
+        assertEquals(message, expected.getDayOfMonth(), date.day());
+        assertEquals(message, epochDay, date.toEpochDay());
+        assertEquals(message, epochDay, date.toNumber());
+    }
+
+    @Test
+    public void everyDayMatchesLocalDate() {
+        // Across the 1600, 1900, 2000 and 2100 century rules and the eras
+        // starting in 1600 and 2000
+        long first = LocalDate.of(1599, 1, 1).toEpochDay();
+        long last = LocalDate.of(2401, 12, 31).toEpochDay();
+        for (long day = first; day <= last; day++) {
+            assertSameDay(LocalDate.ofEpochDay(day), (int) day);
+        }
+        assertEquals(0, Weather.Date.epochDay(1970, 1, 1));
+        assertEquals(-1, Weather.Date.epochDay(1969, 12, 31));
+    }
+
+    @Test
+    public void farDatesMatchLocalDate() {
+        for (int year : new int[]{-MAX_YEAR, -400001, -1, 0, 1, 400, 99999, MAX_YEAR}) {
+            for (int month = 1; month <= 12; month++) {
+                LocalDate start = LocalDate.of(year, month, 1);
+                assertSameDay(start, Weather.Date.epochDay(year, month, 1));
+                LocalDate end = start.withDayOfMonth(start.lengthOfMonth());
+                assertSameDay(end, Weather.Date.epochDay(year, month, end.getDayOfMonth()));
+            }
+        }
+    }
+
+    @Test
+    public void validityMatchesTheCalendar() {
+        for (int year = -1000; year <= 3000; year++) {
+            assertEquals(Integer.toString(year), Year.isLeap(year), Weather.Date.isLeapYear(year));
+            assertEquals(Integer.toString(year), Year.of(year).length(), Weather.Date.lengthOfYear(year));
+            for (int month = 1; month <= 12; month++) {
+                int days = LocalDate.of(year, month, 1).lengthOfMonth();
+                assertEquals(year + "-" + month, days, Weather.Date.daysInMonth(year, month));
+                assertTrue(Weather.Date.isValid(year, month, days));
+                assertFalse(Weather.Date.isValid(year, month, days + 1));
+                assertFalse(Weather.Date.isValid(year, month, 0));
+            }
+            assertFalse(Weather.Date.isValid(year, 0, 1));
+            assertFalse(Weather.Date.isValid(year, 13, 1));
+        }
+        assertTrue(Weather.Date.isValid(MAX_YEAR, 12, 31));
+        assertFalse(Weather.Date.isValid(MAX_YEAR + 1, 1, 1));
+        assertFalse(Weather.Date.isValid(-MAX_YEAR - 1, 12, 31));
+    }
+
+    @Test
+    public void distinctDatesHaveDistinctNumbers() {
+        // The old day + month + year gave these the same number
+        assertNotEquals(new Weather.Date(2010, 1, 2).toNumber(), new Weather.Date(2010, 2, 1).toNumber());
+        assertTrue(new Weather.Date(2010, 1, 31).toNumber() < new Weather.Date(2010, 2, 1).toNumber());
+        assertTrue(new Weather.Date(2009, 12, 31).toNumber() < new Weather.Date(2010, 1, 1).toNumber());
+        assertEquals(1, new Weather.Date(2016, 3, 1).toNumber() - new Weather.Date(2016, 2, 29).toNumber());
+    }
+
+    @Test
+    public void textRoundTrips() {
+        Weather.Date date = Weather.Date.valueOf("2008-12-01");
+        assertEquals(new Weather.Date(2008, 12, 1), date);
+        assertEquals("2008-12-1", date.toString());
+        assertEquals(date, Weather.Date.valueOf(date.toString()));
+        assertEquals(new Weather.Date(2008, 12, 1).hashCode(), date.hashCode());
+        for (String bad : new String[]{"2017-2-29", "2016-2-30", "2016-13-1", "2016-0-10"}) {
+            try {
+                Weather.Date.valueOf(bad);
+                fail(bad);
+            } catch (IllegalArgumentException e) {
+                assertEquals("Bad date: " + bad, e.getMessage());
+            }
+        }
+    }
+
+    private static int parseChars(String text) {
+        char[] chars = (" " + text + ",").toCharArray();
+        return FieldParser.parseEpochDay(chars, 1, text.length());
+    }
+
+    private static int parseBytes(String text) {
+        byte[] bytes = (" " + text + ",").getBytes(StandardCharsets.US_ASCII);
+        return FieldParser.parseEpochDay(ByteBuffer.wrap(bytes), 1, text.length());
+    }
+
+    @Test
+    public void parsersMatchValueOf() {
+        long first = LocalDate.of(2007, 1, 1).toEpochDay();
+        for (long day = first; day < first + 4000; day++) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            for (String text : new String[]{date.toString(), Weather.Date.ofEpochDay((int) day).toString()}) {
+                assertEquals(text, day, parseChars(text));
+                assertEquals(text, day, parseBytes(text));
+                assertEquals(text, day, Weather.Date.valueOf(text).toEpochDay());
+            }
+        }
+        for (String bad : new String[]{"2017-02-29", "2016-13-01", "2016-1", "20160101", "2016-01-x1"}) {
+            String expected = null;
+            try {
+                Weather.Date.valueOf(bad);
+                fail(bad);
+            } catch (RuntimeException e) {
+                expected = e.toString();
+            }
+            for (int parser = 0; parser < 2; parser++) {
+                try {
+                    int day = parser == 0 ? parseChars(bad) : parseBytes(bad);
+                    fail(bad + " parsed as " + day);
+                } catch (RuntimeException e) {
+                    assertEquals(bad, expected, e.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void seasonalFeaturesGoRoundTheYear() {
+        for (int year : new int[]{2015, 2016}) {
+            double[] newYear = features(Weather.Date.epochDay(year, 1, 1));
+            assertEquals(0.0, newYear[WeatherFeatures.DAY_OF_YEAR_SIN], 0.0);
+            assertEquals(1.0, newYear[WeatherFeatures.DAY_OF_YEAR_COS], 0.0);
+            assertEquals(1.0, newYear[WeatherFeatures.MONTH], 0.0);
+
+            // December 31st is one day short of the full circle
+            double step = 2.0 * Math.PI / Weather.Date.lengthOfYear(year);
+            double[] newYearsEve = features(Weather.Date.epochDay(year, 12, 31));
+            assertEquals(Math.sin(-step), newYearsEve[WeatherFeatures.DAY_OF_YEAR_SIN], 1e-12);
+            assertEquals(Math.cos(step), newYearsEve[WeatherFeatures.DAY_OF_YEAR_COS], 1e-12);
+            assertEquals(12.0, newYearsEve[WeatherFeatures.MONTH], 0.0);
+
+            double[] midYear = features(Weather.Date.epochDay(year, 7, 2));
+            assertEquals(7.0, midYear[WeatherFeatures.MONTH], 0.0);
+            assertTrue(midYear[WeatherFeatures.DAY_OF_YEAR_COS] < -0.99);
+        }
+        double[] missing = features(Weather.Date.MISSING);
+        assertTrue(Double.isNaN(missing[1]));
+        assertTrue(Double.isNaN(missing[WeatherFeatures.DAY_OF_YEAR_SIN]));
+        assertTrue(Double.isNaN(missing[WeatherFeatures.DAY_OF_YEAR_COS]));
+        assertTrue(Double.isNaN(missing[WeatherFeatures.MONTH]));
+    }
+
+    private static double[] features(int epochDay) {
+        Weather.DataPoint dataPoint = WeatherRows.dataPoints(1, epochDay, 0.0).get(0);
+        dataPoint = new Weather.DataPoint(epochDay, dataPoint.locationId(), dataPoint.minTemperature(), dataPoint.maxTemperature(),
+                dataPoint.rainfall(), dataPoint.hoursOfSunshine(), dataPoint.evaporationRate(), dataPoint.windGustSpeed(),
+                dataPoint.windGustDirection(), dataPoint.morningTemperature(), dataPoint.morningHumidity(),
+                dataPoint.morningPressure(), dataPoint.morningCloudCover(), dataPoint.morningWindSpeed(),
+                dataPoint.morningWindDirection(), dataPoint.afternoonTemperature(), dataPoint.afternoonHumidity(),
+                dataPoint.afternoonPressure(), dataPoint.afternoonCloudCover(), dataPoint.afternoonWindSpeed(),
+                dataPoint.afternoonWindDirection(), dataPoint.rainToday(), dataPoint.rainTomorrow(), dataPoint.rainfallTomorrow());
+        double[] features = WeatherFeatures.of(dataPoint);
+        double[] fromFrame = WeatherFeatures.of(WeatherFrame.of(Collections.singletonList(dataPoint)), 0);
+        for (int i = 0; i < features.length; i++) {
+            assertEquals(WeatherFeatures.NAMES[i], features[i], fromFrame[i], 0.0);
+        }
+        return features;
+    }
+}
@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// WeatherFrame has to give back exactly the data points it was built from:
+// every column, every missing value, across the 64-row words of the missing
+// bitmaps and through add, addAll, truncate, cullMissing and wrap.
+public class WeatherFrameTest {
+
+    private static final int ROWS = 1000; // Not a multiple of 64, so the last bitmap word is partly used
+
+    private static WeatherFrame frameOf(List<Weather.DataPoint> data, int from, int to) {
+        WeatherFrame frame = new WeatherFrame(1); // Grows several times
+        for (int i = from; i < to; i++) {
+            frame.add(data.get(i));
+        }
+        return frame;
+    }
+
+    private static List<Weather.DataPoint> rows(WeatherFrame frame) {
+        List<Weather.DataPoint> rows = new ArrayList<>(frame.size());
+        for (int row = 0; row < frame.size(); row++) {
+            rows.add(frame.get(row));
+        }
+        return rows;
+    }
+
+    private static double number(Weather.DataPoint dataPoint, int column) {
+        switch (column) {
+            case WeatherFrame.MIN_TEMPERATURE:
+                return dataPoint.minTemperature();
+            case WeatherFrame.MAX_TEMPERATURE:
+                return dataPoint.maxTemperature();
+            case WeatherFrame.RAINFALL:
+                return dataPoint.rainfall();
+            case WeatherFrame.SUNSHINE:
+                return dataPoint.hoursOfSunshine();
+            case WeatherFrame.EVAPORATION:
+                return dataPoint.evaporationRate();
+            case WeatherFrame.WIND_GUST_SPEED:
+                return dataPoint.windGustSpeed();
+            case WeatherFrame.MORNING_TEMPERATURE:
+                return dataPoint.morningTemperature();
+            case WeatherFrame.MORNING_HUMIDITY:
+                return dataPoint.morningHumidity();
+            case WeatherFrame.MORNING_PRESSURE:
+                return dataPoint.morningPressure();
+            case WeatherFrame.MORNING_CLOUD_COVER:
+                return dataPoint.morningCloudCover();
+            case WeatherFrame.MORNING_WIND_SPEED:
+                return dataPoint.morningWindSpeed();
+            case WeatherFrame.AFTERNOON_TEMPERATURE:
+                return dataPoint.afternoonTemperature();
+            case WeatherFrame.AFTERNOON_HUMIDITY:
+                return dataPoint.afternoonHumidity();
+            case WeatherFrame.AFTERNOON_PRESSURE:
+                return dataPoint.afternoonPressure();
+            case WeatherFrame.AFTERNOON_CLOUD_COVER:
+                return dataPoint.afternoonCloudCover();
+            case WeatherFrame.AFTERNOON_WIND_SPEED:
+                return dataPoint.afternoonWindSpeed();
+            case WeatherFrame.RAINFALL_TOMORROW:
+                return dataPoint.rainfallTomorrow();
+            default:
+                throw new IllegalArgumentException("Not a numeric column: " + column);
+        }
+    }
+
+    @Test
+    public void ofGivesBackEveryDataPoint() {
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(ROWS, 1, 0.2);
+        WeatherFrame frame = WeatherFrame.of(data);
+        assertEquals(ROWS, frame.size());
+        WeatherRows.assertSameDataPoints("of", data, rows(frame));
+        WeatherRows.assertSameDataPoints("add", data, rows(frameOf(data, 0, ROWS)));
+    }
+
+    @Test
+    public void missingBitmapsMatchTheValues() {
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(ROWS, 2, 0.3);
+        WeatherFrame frame = WeatherFrame.of(data);
+        int missing = 0;
+        for (int row = 0; row < ROWS; row++) {
+            Weather.DataPoint dataPoint = data.get(row);
+            for (int column = WeatherFrame.MIN_TEMPERATURE; column < WeatherFrame.NUM_COLUMNS; column++) {
+                boolean expected;
+                if (WeatherFrame.isNumeric(column)) {
+                    double value = number(dataPoint, column);
+                    expected = Double.isNaN(value) || value < 0 && !WeatherFrame.isDoubleColumn(column);
+                    if (!expected) {
+                        assertEquals("row " + row + ", " + Weather.fields[column], value, frame.getNumber(row, column), 0.0);
+                    }
+                } else if (column == WeatherFrame.RAIN_TODAY || column == WeatherFrame.RAIN_TOMORROW) {
+                    expected = frame.getBooleanValue(row, column) == null;
+                    assertEquals(column == WeatherFrame.RAIN_TODAY ? dataPoint.rainToday() : dataPoint.rainTomorrow(),
+                            frame.getBooleanValue(row, column));
+                } else {
+                    expected = frame.direction(row, column) == Weather.Direction.MISSING;
+                }
+                assertEquals("row " + row + ", " + Weather.fields[column], expected, frame.isMissing(row, column));
+                if (expected) {
+                    missing++;
+                }
+            }
+        }
+        assertTrue("Only " + missing + " missing values", missing > ROWS);
+    }
+
+    @Test
+    public void addAllAppendsInOrder() {
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(ROWS, 3, 0.2);
+        // Sizes that start the appended rows in the middle of a bitmap word
+        int[] cuts = {0, 70, 71, 200, 263, ROWS};
+        WeatherFrame frame = new WeatherFrame(1);
+        for (int i = 0; i + 1 < cuts.length; i++) {
+            frame.addAll(frameOf(data, cuts[i], cuts[i + 1]));
+            assertEquals(cuts[i + 1], frame.size());
+        }
+        WeatherRows.assertSameDataPoints("addAll", data, rows(frame));
+
+        frame.addAll(new WeatherFrame());
+        assertEquals(ROWS, frame.size());
+    }
+
+    @Test
+    public void truncateDropsTheTail() {
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(ROWS, 4, 0.3);
+        WeatherFrame frame = WeatherFrame.of(data);
+        frame.truncate(ROWS + 10); // Longer than the frame: no change
+        assertEquals(ROWS, frame.size());
+        frame.truncate(130);
+        assertEquals(130, frame.size());
+        WeatherRows.assertSameDataPoints("truncated", data.subList(0, 130), rows(frame));
+        try {
+            frame.get(130);
+            fail("Read a truncated row");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // As for any row past the end
+        }
+
+        // Rows added after truncating overwrite the old ones, missing bits included
+        List<Weather.DataPoint> other = WeatherRows.dataPoints(50, 5, 0.5);
+        for (Weather.DataPoint dataPoint : other) {
+            frame.add(dataPoint);
+        }
+        List<Weather.DataPoint> expected = new ArrayList<>(data.subList(0, 130));
+        expected.addAll(other);
+        WeatherRows.assertSameDataPoints("added after truncating", expected, rows(frame));
+
+        frame.truncate(-1);
+        assertEquals(0, frame.size());
+    }
+
+    @Test
+    public void cullMissingKeepsTheOtherRowsInOrder() {
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(ROWS, 6, 0.2);
+        WeatherFrame frame = WeatherFrame.of(data);
+        for (int column : new int[]{WeatherFrame.SUNSHINE, WeatherFrame.MORNING_CLOUD_COVER, WeatherFrame.RAIN_TOMORROW}) {
+            List<Weather.DataPoint> kept = new ArrayList<>();
+            for (int row = 0; row < frame.size(); row++) {
+                if (!frame.isMissing(row, column)) {
+                    kept.add(frame.get(row));
+                }
+            }
+            int before = frame.size();
+            assertEquals(before - kept.size(), frame.cullMissing(column));
+            assertTrue(kept.size() < before);
+            WeatherRows.assertSameDataPoints("culled " + Weather.fields[column], kept, rows(frame));
+            for (int row = 0; row < frame.size(); row++) {
+                assertFalse(frame.isMissing(row, column));
+            }
+        }
+        assertEquals(0, frame.cullMissing(WeatherFrame.SUNSHINE));
+    }
+
+    @Test
+    public void wrapMapsLocationNamesToDictionaryIds() {
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(ROWS, 7, 0.2);
+        WeatherFrame frame = WeatherFrame.of(data);
+
+        // A snapshot numbers its locations itself, here in reverse
+        List<String> names = new ArrayList<>();
+        for (int id = LocationDictionary.size() - 1; id >= 0; id--) {
+            names.add(LocationDictionary.name(id));
+        }
+        short[] locations = new short[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            int id = frame.locationId(row);
+            locations[row] = (short) (id == LocationDictionary.MISSING ? 0 : names.size() - 1 - id);
+        }
+        double[][] doubles = new double[WeatherFrame.NUM_COLUMNS][];
+        byte[][] bytes = new byte[WeatherFrame.NUM_COLUMNS][];
+        long[][] missing = new long[WeatherFrame.NUM_COLUMNS][];
+        for (int column = 1; column < WeatherFrame.NUM_COLUMNS; column++) {
+            if (WeatherFrame.isDoubleColumn(column)) {
+                doubles[column] = frame.doubleColumn(column).clone();
+            } else if (WeatherFrame.isByteColumn(column)) {
+                bytes[column] = frame.byteColumn(column).clone();
+            }
+            missing[column] = frame.missingBitmap(column).clone();
+        }
+        WeatherFrame wrapped = WeatherFrame.wrap(ROWS, frame.dateColumn().clone(), locations, doubles, bytes, missing, names);
+        WeatherRows.assertSameDataPoints("wrapped", data, rows(wrapped));
+    }
+
+    @Test
+    public void rowsBetweenFindsTheDates() {
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(ROWS, 8, 0.2);
+        WeatherFrame frame = WeatherFrame.of(data);
+        Weather.Date first = Weather.Date.ofEpochDay(data.get(100).epochDay());
+        Weather.Date last = Weather.Date.ofEpochDay(data.get(400).epochDay());
+        int[] rows = frame.rowsBetween(first, last);
+        int expected = 0;
+        for (int row = 0; row < ROWS; row++) {
+            int day = data.get(row).epochDay();
+            if (day != Weather.Date.MISSING && day >= first.toEpochDay() && day <= last.toEpochDay()) {
+                assertEquals(row, rows[expected++]);
+            }
+        }
+        assertEquals(expected, rows.length);
+    }
+}
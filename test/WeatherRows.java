@@ -0,0 +1,57 @@
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+// Rows and comparisons shared by the tests that check one representation of
+// the weather data against another.
+final class WeatherRows {
+
+    private WeatherRows() {
+    }
+
+    // SyntheticWeather lines, with RainToday and RainTomorrow also missing now
+    // and then, which the generator never does on its own.
+    static List<String> lines(int count, long seed, double missingRate) {
+        SyntheticWeather generator = new SyntheticWeather(seed, missingRate);
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String line = generator.nextLine();
+            if (i % 7 == 3) {
+                String[] fields = line.split(",");
+                fields[i % 2 == 0 ? 21 : 23] = "NA";
+                line = String.join(",", fields);
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    static List<Weather.DataPoint> dataPoints(int count, long seed, double missingRate) {
+        List<Weather.DataPoint> dataPoints = new ArrayList<>(count);
+        for (String line : lines(count, seed, missingRate)) {
+            dataPoints.add(AustraliaWeather.processLine(line));
+        }
+        return dataPoints;
+    }
+
+    // Every field, with NaN equal to NaN and -0.0 told apart from 0.0 (both
+    // through Double.toString).
+    static void assertSameDataPoint(String message, Weather.DataPoint expected, Weather.DataPoint actual) {
+        assertEquals(message, expected.epochDay(), actual.epochDay());
+        assertEquals(message, expected.locationId(), actual.locationId());
+        assertSame(message, expected.windGustDirection(), actual.windGustDirection());
+        assertSame(message, expected.morningWindDirection(), actual.morningWindDirection());
+        assertSame(message, expected.afternoonWindDirection(), actual.afternoonWindDirection());
+        assertEquals(message, expected.rainToday(), actual.rainToday());
+        assertEquals(message, expected.rainTomorrow(), actual.rainTomorrow());
+        assertEquals(message, expected.toString(), actual.toString());
+    }
+
+    static void assertSameDataPoints(String message, List<Weather.DataPoint> expected, List<Weather.DataPoint> actual) {
+        assertEquals(message + ": rows", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameDataPoint(message + ", row " + i, expected.get(i), actual.get(i));
+        }
+    }
+}
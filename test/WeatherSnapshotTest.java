@@ -0,0 +1,154 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// A snapshot has to load back exactly the frame that was written, and only
+// while the source file has the size and modification time it had then.
+public class WeatherSnapshotTest {
+
+    private static final int ROWS = 1000;
+
+    // A source file with the given lines, and where its snapshot goes. The
+    // caller deletes both.
+    private static File source(List<String> lines) throws IOException {
+        File source = File.createTempFile("weather", ".csv");
+        Files.write(source.toPath(), lines, Charset.defaultCharset());
+        return source;
+    }
+
+    private static void delete(File source) throws IOException {
+        Files.deleteIfExists(WeatherSnapshot.snapshotFile(source.getPath()).toPath());
+        Files.deleteIfExists(source.toPath());
+    }
+
+    private static List<Weather.DataPoint> rows(WeatherFrame frame) {
+        List<Weather.DataPoint> rows = new ArrayList<>(frame.size());
+        for (int row = 0; row < frame.size(); row++) {
+            rows.add(frame.get(row));
+        }
+        return rows;
+    }
+
+    // Column by column, for frames too large to compare a row at a time.
+    private static void assertSameColumns(WeatherFrame expected, WeatherFrame actual) {
+        int rows = expected.size();
+        assertEquals(rows, actual.size());
+        assertArrayEquals(Arrays.copyOf(expected.dateColumn(), rows), Arrays.copyOf(actual.dateColumn(), rows));
+        assertArrayEquals(Arrays.copyOf(expected.locationColumn(), rows), Arrays.copyOf(actual.locationColumn(), rows));
+        int words = (rows + 63) / 64;
+        for (int column = 1; column < WeatherFrame.NUM_COLUMNS; column++) {
+            String field = Weather.fields[column];
+            if (WeatherFrame.isDoubleColumn(column)) {
+                assertArrayEquals(field, Arrays.copyOf(expected.doubleColumn(column), rows), Arrays.copyOf(actual.doubleColumn(column), rows), 0.0);
+            } else if (WeatherFrame.isByteColumn(column)) {
+                assertArrayEquals(field, Arrays.copyOf(expected.byteColumn(column), rows), Arrays.copyOf(actual.byteColumn(column), rows));
+            }
+            assertArrayEquals(field, Arrays.copyOf(expected.missingBitmap(column), words), Arrays.copyOf(actual.missingBitmap(column), words));
+        }
+    }
+
+    @Test
+    public void snapshotsLoadBackTheFrame() throws IOException {
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(ROWS, 1, 0.2);
+        File source = source(WeatherRows.lines(ROWS, 1, 0.2));
+        File snapshot = WeatherSnapshot.snapshotFile(source.getPath());
+        try {
+            WeatherSnapshot.write(WeatherFrame.of(data), snapshot, source);
+            WeatherFrame loaded = WeatherSnapshot.load(snapshot, source);
+            assertNotNull(loaded);
+            WeatherRows.assertSameDataPoints("loaded", data, rows(loaded));
+
+            WeatherSnapshot.write(new WeatherFrame(), snapshot, source);
+            assertEquals(0, WeatherSnapshot.load(snapshot, source).size());
+        } finally {
+            delete(source);
+        }
+    }
+
+    @Test
+    public void largeFramesStreamThroughTheWriteBuffer() throws IOException {
+        // Each double column is several times the 1 MB write buffer, and no
+        // column ends on a buffer boundary
+        List<Weather.DataPoint> data = WeatherRows.dataPoints(ROWS, 2, 0.2);
+        WeatherFrame frame = new WeatherFrame();
+        for (int row = 0; row < 500001; row++) {
+            frame.add(data.get(row % ROWS));
+        }
+        File source = source(WeatherRows.lines(10, 2, 0.2));
+        File snapshot = WeatherSnapshot.snapshotFile(source.getPath());
+        try {
+            WeatherSnapshot.write(frame, snapshot, source);
+            assertTrue(!new File(snapshot.getPath() + ".tmp").exists());
+            assertSameColumns(frame, WeatherSnapshot.load(snapshot, source));
+        } finally {
+            delete(source);
+        }
+    }
+
+    @Test
+    public void changedSourcesMakeSnapshotsStale() throws IOException {
+        List<String> lines = WeatherRows.lines(ROWS, 3, 0.2);
+        File source = source(lines);
+        File snapshot = WeatherSnapshot.snapshotFile(source.getPath());
+        try {
+            assertNull(WeatherSnapshot.load(snapshot, source)); // None yet
+            WeatherFrame frame = AustraliaWeather.loadDataFile(source.getPath(), 1);
+            assertTrue(snapshot.isFile());
+            assertSameColumns(frame, WeatherSnapshot.load(snapshot, source));
+
+            long modified = source.lastModified();
+            assertTrue(source.setLastModified(modified - 60000));
+            assertNull("older source", WeatherSnapshot.load(snapshot, source));
+
+            // Same rows and time, different size
+            Files.write(source.toPath(), String.join("\r\n", lines).getBytes(Charset.defaultCharset()));
+            assertTrue(source.setLastModified(modified));
+            assertNull("resized source", WeatherSnapshot.load(snapshot, source));
+
+            // loadDataFile parses the changed source again and replaces the snapshot
+            WeatherFrame reloaded = AustraliaWeather.loadDataFile(source.getPath(), 1);
+            assertSameColumns(frame, reloaded);
+            assertSameColumns(frame, WeatherSnapshot.load(snapshot, source));
+        } finally {
+            delete(source);
+        }
+    }
+
+    @Test
+    public void damagedSnapshotsAreIgnored() throws IOException {
+        File source = source(WeatherRows.lines(ROWS, 4, 0.2));
+        File snapshot = WeatherSnapshot.snapshotFile(source.getPath());
+        try {
+            WeatherSnapshot.write(WeatherFrame.of(WeatherRows.dataPoints(ROWS, 4, 0.2)), snapshot, source);
+            byte[] bytes = Files.readAllBytes(snapshot.toPath());
+
+            // Cut short, too long, and with another version number
+            try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+                file.setLength(bytes.length - 1);
+            }
+            assertNull("cut short", WeatherSnapshot.load(snapshot, source));
+            try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+                file.setLength(bytes.length + 8);
+            }
+            assertNull("too long", WeatherSnapshot.load(snapshot, source));
+            bytes[4]++;
+            Files.write(snapshot.toPath(), bytes);
+            assertNull("version", WeatherSnapshot.load(snapshot, source));
+            Files.write(snapshot.toPath(), Arrays.copyOf(bytes, 10));
+            assertNull("no header", WeatherSnapshot.load(snapshot, source));
+        } finally {
+            delete(source);
+        }
+    }
+}